@@ -0,0 +1,91 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Compares the {@link SimpleDateFormat} that {@link SqlGenerator} used to share with {@link DateCodec}. Each
+ *     thread gets its own {@link SimpleDateFormat} because sharing one across threads corrupts its output. Run with
+ *     -prof gc to compare allocation and with -t to compare contention.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateFormattingBenchmark {
+
+    private static final DateCodec sharedCodec = new DateCodec();
+
+    private SimpleDateFormat simpleDateFormat;
+    private Date date;
+    private String formatted;
+    private char[] buf;
+
+    @Setup
+    public void setUp() {
+        simpleDateFormat = new SimpleDateFormat(DateCodec.PATTERN);
+        date = new Date(1489000000123L);
+        formatted = simpleDateFormat.format(date);
+        buf = new char[DateCodec.FORMATTED_LENGTH];
+    }
+
+    @Benchmark
+    public String simpleDateFormatFormat() {
+        return simpleDateFormat.format(date);
+    }
+
+    @Benchmark
+    public String dateCodecFormat() {
+        return sharedCodec.format(date);
+    }
+
+    @Benchmark
+    public char[] dateCodecFormatToBuffer() {
+        sharedCodec.formatTo(date.getTime(), buf, 0);
+        return buf;
+    }
+
+    @Benchmark
+    public Date simpleDateFormatParse() throws ParseException {
+        return simpleDateFormat.parse(formatted);
+    }
+
+    @Benchmark
+    public long dateCodecParseMillis() throws ParseException {
+        return sharedCodec.parseMillis(formatted);
+    }
+}
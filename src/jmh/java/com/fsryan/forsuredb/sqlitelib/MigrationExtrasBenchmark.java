@@ -0,0 +1,118 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Decodes the existing_column_names and current_foreign_keys extras of an UPDATE_FOREIGN_KEYS migration
+ *     whose table has foreignKeyCount foreign keys, both with {@link MigrationExtras} and with reflective Gson the way
+ *     {@link QueryGeneratorFactory} used to: a new {@link TypeToken} per call on one static {@link Gson}. The
+ *     warm benchmarks measure the steady state; the cold benchmarks measure the first decode in a fresh JVM, which
+ *     is what app startup pays. The JSON is built by hand so that setup does not warm up Gson.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MigrationExtrasBenchmark {
+
+    private static final Gson gson = new Gson();
+
+    @Param({"1", "100"})
+    public int foreignKeyCount;
+
+    private String existingColumnNamesJson;
+    private String currentForeignKeysJson;
+
+    @Setup
+    public void setUp() {
+        StringBuilder columns = new StringBuilder("[\"_id\", \"created\", \"modified\", \"deleted\"");
+        StringBuilder foreignKeys = new StringBuilder("[");
+        for (int i = 0; i < foreignKeyCount; i++) {
+            columns.append(", \"parent_").append(i).append("_id\"");
+            foreignKeys.append(i == 0 ? "" : ", ")
+                    .append("{\"foreign_table_api_class_name\": \"com.example.Parent").append(i).append("Table\", ")
+                    .append("\"foreign_table_name\": \"parent_").append(i).append("\", ")
+                    .append("\"local_to_foreign_column_map\": {\"parent_").append(i).append("_id\": \"_id\"}, ")
+                    .append("\"update_action\": \"CASCADE\", \"delete_action\": \"CASCADE\"}");
+        }
+        existingColumnNamesJson = columns.append(']').toString();
+        currentForeignKeysJson = foreignKeys.append(']').toString();
+    }
+
+    @Benchmark
+    public Set<String> warmStringSet() {
+        return MigrationExtras.stringSetOf(existingColumnNamesJson);
+    }
+
+    @Benchmark
+    public Set<String> warmReflectiveGsonStringSet() {
+        return gson.fromJson(existingColumnNamesJson, new TypeToken<Set<String>>() {}.getType());
+    }
+
+    @Benchmark
+    public Set<TableForeignKeyInfo> warmTableForeignKeyInfoSet() {
+        return MigrationExtras.tableForeignKeyInfoSetOf(currentForeignKeysJson);
+    }
+
+    @Benchmark
+    public Set<TableForeignKeyInfo> warmReflectiveGsonTableForeignKeyInfoSet() {
+        return gson.fromJson(currentForeignKeysJson, new TypeToken<Set<TableForeignKeyInfo>>() {}.getType());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Set<TableForeignKeyInfo> coldExtras() {
+        MigrationExtras.stringSetOf(existingColumnNamesJson);
+        return MigrationExtras.tableForeignKeyInfoSetOf(currentForeignKeysJson);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    @Fork(20)
+    public Set<TableForeignKeyInfo> coldReflectiveGsonExtras() {
+        gson.<Set<String>>fromJson(existingColumnNamesJson, new TypeToken<Set<String>>() {}.getType());
+        return gson.fromJson(currentForeignKeysJson, new TypeToken<Set<TableForeignKeyInfo>>() {}.getType());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Plans migration sets that create every table of a synthetic schema. Each table references up to
+ *     maxReferences randomly chosen tables that are created before it in dependency order, and the CREATE_TABLE
+ *     migrations are shuffled so that the planner has to move most of them. Every table also gets an
+ *     ALTER_TABLE_ADD_COLUMN migration.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MigrationPlanningBenchmark {
+
+    @Param({"1000", "5000", "20000"})
+    public int tableCount;
+
+    @Param({"3"})
+    public int maxReferences;
+
+    private MigrationPlanner planner;
+    private List<Migration> migrations;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42L);
+        final Gson gson = new Gson();
+        Map<String, TableInfo> schema = new HashMap<>(tableCount * 4 / 3 + 1);
+        List<Migration> creates = new ArrayList<>(tableCount);
+        List<Migration> alters = new ArrayList<>(tableCount);
+        for (int i = 0; i < tableCount; i++) {
+            final String tableName = "table_" + i;
+            TableInfo.Builder table = TableInfo.builder().tableName(tableName);
+            Map<String, ColumnInfo> columnMap = new HashMap<>();
+            Set<TableForeignKeyInfo> foreignKeys = new HashSet<>();
+            final int references = i == 0 ? 0 : random.nextInt(maxReferences + 1);
+            for (int r = 0; r < references; r++) {
+                final String referencedTableName = "table_" + random.nextInt(i);
+                final String columnName = referencedTableName + "_id";
+                columnMap.put(columnName, ColumnInfo.builder()
+                        .columnName(columnName)
+                        .qualifiedType(TypeTranslator.LONG.getQualifiedType())
+                        .build());
+                foreignKeys.add(new TableForeignKeyInfo.Builder()
+                        .foreignTableName(referencedTableName)
+                        .foreignTableApiClassName(MigrationPlanningBenchmark.class.getName())
+                        .mapLocalToForeignColumn(columnName, "_id")
+                        .updateChangeAction("CASCADE")
+                        .deleteChangeAction("CASCADE")
+                        .build());
+            }
+            columnMap.put("name", ColumnInfo.builder().columnName("name").qualifiedType(TypeTranslator.STRING.getQualifiedType()).build());
+            schema.put(tableName, table.columnMap(columnMap).foreignKeys(foreignKeys).build());
+            creates.add(gson.fromJson("{\"table_name\":\"" + tableName + "\",\"migration_type\":\"CREATE_TABLE\"}", Migration.class));
+            alters.add(gson.fromJson("{\"table_name\":\"" + tableName + "\",\"column_name\":\"name\",\"migration_type\":\"ALTER_TABLE_ADD_COLUMN\"}", Migration.class));
+        }
+        Collections.shuffle(creates, random);
+
+        migrations = new ArrayList<>(2 * tableCount);
+        migrations.addAll(creates);
+        migrations.addAll(alters);
+        planner = new MigrationPlanner(schema);
+    }
+
+    @Benchmark
+    public List<Migration> plan() {
+        return planner.plan(migrations);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Generates the migration SQL of the three table fixture scaled up to tableCount tables that are either as
+ *     narrow as the fixture's or 500 columns wide. The largest schemas need a large heap; select smaller ones with
+ *     -p tableCount=10,100.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MigrationSqlBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int tableCount;
+
+    @Param({ScaledFixture.NARROW, ScaledFixture.WIDE})
+    public String width;
+
+    private SqlGenerator sqlGenerator;
+    private MigrationSet migrationSet;
+    private List<Migration> migrations;
+    private Map<String, TableInfo> targetSchema;
+    private File planCacheDirectory;
+    private MigrationPlanCache planCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        sqlGenerator = new SqlGenerator();
+        migrationSet = ScaledFixture.load(ScaledFixture.THREE_TABLE_FIXTURE, tableCount, ScaledFixture.columnCountOf(width));
+        migrations = migrationSet.getOrderedMigrations();
+        targetSchema = migrationSet.getTargetSchema();
+
+        planCacheDirectory = File.createTempFile("migration_plans", "");
+        planCacheDirectory.delete();
+        planCache = new FileMigrationPlanCache(planCacheDirectory);
+        sqlGenerator.generateMigrationSql(migrationSet, planCache);
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] planFiles = planCacheDirectory.listFiles();
+        if (planFiles != null) {
+            for (File planFile : planFiles) {
+                planFile.delete();
+            }
+        }
+        planCacheDirectory.delete();
+    }
+
+    @Benchmark
+    public List<String> generateMigrationSql() {
+        return sqlGenerator.generateMigrationSql(migrationSet);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return MigrationSetFingerprint.of(migrationSet, GenerationOptions.DEFAULT);
+    }
+
+    /**
+     * <p>
+     *     What a cold start pays when the plan of the migration was generated before
+     * </p>
+     */
+    @Benchmark
+    public List<String> cachedMigrationSql() {
+        return sqlGenerator.generateMigrationSql(migrationSet, planCache);
+    }
+
+    /**
+     * <p>
+     *     Only creates the {@link QueryGenerator}s--without generating their SQL
+     * </p>
+     */
+    @Benchmark
+    public void queryGeneratorFactoryGetFor(Blackhole blackhole) {
+        QueryGeneratorFactory qgf = new QueryGeneratorFactory(migrationSet);
+        for (Migration migration : migrations) {
+            blackhole.consume(qgf.getFor(migration, targetSchema));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.Finder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Builds SELECT * FROM t WHERE t.a = ? AND t.b &gt; ? ORDER BY t.a ASC, t.b DESC; from {@link SqlGenerator}'s
+ *     fragment methods the way a query builder does. The String methods allocate a String per fragment; the append
+ *     methods write into one StringBuilder that is reused for every query. Run with -prof gc and compare
+ *     gc.alloc.rate.norm, the bytes allocated per query.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryFragmentBenchmark {
+
+    private static final String TABLE = "test_table";
+
+    private SqlGenerator sqlGenerator;
+    private StringBuilder buf;
+    private List<String> orderByList;
+
+    @Setup
+    public void setUp() {
+        sqlGenerator = new SqlGenerator();
+        buf = new StringBuilder(128);
+        orderByList = new ArrayList<>(2);
+    }
+
+    @Benchmark
+    public String stringFragments() {
+        orderByList.clear();
+        orderByList.add(sqlGenerator.orderByAsc(TABLE, "int_column"));
+        orderByList.add(sqlGenerator.orderByDesc(TABLE, "long_column"));
+        return "SELECT * FROM " + TABLE
+                + " WHERE " + sqlGenerator.whereOperation(TABLE, "int_column", Finder.OP_EQ) + " ?"
+                + " " + sqlGenerator.andKeyword()
+                + " " + sqlGenerator.whereOperation(TABLE, "long_column", Finder.OP_GT) + " ?"
+                + " ORDER BY " + sqlGenerator.combineOrderByExpressions(orderByList) + ";";
+    }
+
+    /**
+     * <p>
+     *     Only the String handed to SQLite is allocated
+     * </p>
+     */
+    @Benchmark
+    public String appendedFragments() {
+        buf.setLength(0);
+        buf.append("SELECT * FROM ").append(TABLE).append(" WHERE ");
+        sqlGenerator.appendWhereOperation(buf, TABLE, "int_column", Finder.OP_EQ).append(" ? ").append(sqlGenerator.andKeyword()).append(' ');
+        sqlGenerator.appendWhereOperation(buf, TABLE, "long_column", Finder.OP_GT).append(" ? ORDER BY ");
+        sqlGenerator.appendOrderByAsc(buf, TABLE, "int_column").append(", ");
+        sqlGenerator.appendOrderByDesc(buf, TABLE, "long_column");
+        return buf.append(';').toString();
+    }
+}
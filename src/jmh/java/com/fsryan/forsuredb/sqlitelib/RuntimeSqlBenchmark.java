@@ -0,0 +1,110 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     The SQL that is generated for every record rather than once per migration: insertions into a table of the
+ *     three table fixture that is either as narrow as the fixture's or 500 columns wide, date formatting and
+ *     parsing, and looking up the {@link TypeTranslator} of each column.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuntimeSqlBenchmark {
+
+    @Param({ScaledFixture.NARROW, ScaledFixture.WIDE})
+    public String width;
+
+    private SqlGenerator sqlGenerator;
+    private String tableName;
+    private Map<String, String> columnValueMap;
+    private String[] qualifiedTypes;
+    private Date date;
+    private String formattedDate;
+
+    @Setup
+    public void setUp() throws IOException {
+        sqlGenerator = new SqlGenerator();
+        MigrationSet migrationSet = ScaledFixture.load(ScaledFixture.THREE_TABLE_FIXTURE, 3, ScaledFixture.columnCountOf(width));
+        TableInfo table = migrationSet.getTargetSchema().get("profile_info_0");
+        tableName = table.getTableName();
+
+        Collection<ColumnInfo> columns = table.getColumns();
+        columnValueMap = new HashMap<>(columns.size() * 4 / 3 + 1);
+        qualifiedTypes = new String[columns.size()];
+        int i = 0;
+        for (ColumnInfo column : columns) {
+            columnValueMap.put(column.getColumnName(), "value_" + i);
+            qualifiedTypes[i++] = column.getQualifiedType();
+        }
+
+        date = new Date(1489000000123L);
+        formattedDate = sqlGenerator.formatDate(date);
+    }
+
+    @Benchmark
+    public String newSingleRowInsertionSql() {
+        return sqlGenerator.newSingleRowInsertionSql(tableName, columnValueMap);
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return sqlGenerator.formatDate(date);
+    }
+
+    @Benchmark
+    public Date parseDate() {
+        return sqlGenerator.parseDate(formattedDate);
+    }
+
+    @Benchmark
+    public int typeTranslatorFrom() {
+        int ret = 0;
+        for (String qualifiedType : qualifiedTypes) {
+            ret += TypeTranslator.from(qualifiedType).ordinal();
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Scales up the {@link MigrationSet} JSON fixtures of src/test/resources for the benchmarks. The tables of the
+ *     fixture are copied, with _&lt;copy&gt; appended to their names and to the tables their foreign keys reference,
+ *     until there are tableCount tables, and each table is widened with ALTER_TABLE_ADD_COLUMN columns until it
+ *     has at least columnCount columns.
+ * </p>
+ */
+/*package*/ class ScaledFixture {
+
+    /*package*/ static final String THREE_TABLE_FIXTURE = "three_table_zero_to_one_test_update_foreign_keys.json";
+    /*package*/ static final String NARROW = "narrow";
+    /*package*/ static final String WIDE = "wide";
+    /*package*/ static final int WIDE_COLUMN_COUNT = 500;
+
+    private static final String[] EXTRA_COLUMN_TYPES = {"java.lang.String", "long", "int", "double", "java.util.Date"};
+
+    /*package*/ static int columnCountOf(String width) {
+        return WIDE.equals(width) ? WIDE_COLUMN_COUNT : 0;
+    }
+
+    /*package*/ static MigrationSet load(String resourceName, int tableCount, int columnCount) throws IOException {
+        final JsonObject fixture = parse(resourceName);
+        final JsonObject fixtureSchema = fixture.getAsJsonObject("target_schema");
+        final JsonArray fixtureMigrations = fixture.getAsJsonArray("ordered_migrations");
+        final List<String> fixtureTableNames = new ArrayList<>();
+        for (Map.Entry<String, JsonElement> entry : fixtureSchema.entrySet()) {
+            fixtureTableNames.add(entry.getKey());
+        }
+
+        JsonObject schema = new JsonObject();
+        JsonArray migrations = new JsonArray();
+        for (int copy = 0; schema.size() < tableCount; copy++) {
+            for (String fixtureTableName : fixtureTableNames) {
+                if (schema.size() == tableCount) {
+                    break;
+                }
+                final String tableName = copyName(fixtureTableName, copy);
+                JsonObject table = renamed(copyOf(fixtureSchema.getAsJsonObject(fixtureTableName)), copy);
+                schema.add(tableName, table);
+                for (JsonElement migration : fixtureMigrations) {
+                    JsonObject m = migration.getAsJsonObject();
+                    if (fixtureTableName.equals(m.get("table_name").getAsString())) {
+                        JsonObject copied = copyOf(m);
+                        copied.addProperty("table_name", tableName);
+                        migrations.add(copied);
+                    }
+                }
+                widen(tableName, table.getAsJsonObject("column_info_map"), columnCount, migrations);
+            }
+        }
+
+        fixture.add("target_schema", schema);
+        fixture.add("ordered_migrations", migrations);
+        return new Gson().fromJson(fixture, MigrationSet.class);
+    }
+
+    private static JsonObject parse(String resourceName) throws IOException {
+        InputStream in = ScaledFixture.class.getClassLoader().getResourceAsStream(resourceName);
+        if (in == null) {
+            throw new IOException("Fixture not on the classpath: " + resourceName);
+        }
+        Reader reader = new InputStreamReader(in, "UTF-8");
+        try {
+            return new JsonParser().parse(reader).getAsJsonObject();
+        } finally {
+            reader.close();
+        }
+    }
+
+    // JsonObject.deepCopy() is not public in the gson version this project depends upon
+    private static JsonObject copyOf(JsonObject jsonObject) {
+        return new JsonParser().parse(jsonObject.toString()).getAsJsonObject();
+    }
+
+    private static JsonObject renamed(JsonObject table, int copy) {
+        table.addProperty("table_name", copyName(table.get("table_name").getAsString(), copy));
+        table.addProperty("qualified_class_name", table.get("qualified_class_name").getAsString() + copy);
+        if (table.has("foreign_keys")) {
+            for (JsonElement foreignKey : table.getAsJsonArray("foreign_keys")) {
+                JsonObject fk = foreignKey.getAsJsonObject();
+                fk.addProperty("foreign_table_name", copyName(fk.get("foreign_table_name").getAsString(), copy));
+            }
+        }
+        for (Map.Entry<String, JsonElement> entry : table.getAsJsonObject("column_info_map").entrySet()) {
+            JsonObject column = entry.getValue().getAsJsonObject();
+            if (column.has("foreign_key_info")) {
+                JsonObject fki = column.getAsJsonObject("foreign_key_info");
+                fki.addProperty("foreign_table_name", copyName(fki.get("foreign_table_name").getAsString(), copy));
+            }
+        }
+        return table;
+    }
+
+    private static void widen(String tableName, JsonObject columnInfoMap, int columnCount, JsonArray migrations) {
+        for (int i = 0; columnInfoMap.size() < columnCount; i++) {
+            final String columnName = "extra_column_" + i;
+            JsonObject column = new JsonObject();
+            column.addProperty("method_name", "extraColumn" + i);
+            column.addProperty("column_name", columnName);
+            column.addProperty("column_type", EXTRA_COLUMN_TYPES[i % EXTRA_COLUMN_TYPES.length]);
+            columnInfoMap.add(columnName, column);
+
+            JsonObject migration = new JsonObject();
+            migration.addProperty("table_name", tableName);
+            migration.addProperty("column_name", columnName);
+            migration.addProperty("migration_type", "ALTER_TABLE_ADD_COLUMN");
+            migrations.add(migration);
+        }
+    }
+
+    private static String copyName(String name, int copy) {
+        return name + "_" + copy;
+    }
+}
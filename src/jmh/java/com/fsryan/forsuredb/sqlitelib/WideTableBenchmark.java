@@ -0,0 +1,106 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Generates the SQL of the three table fixture with each table widened to columnCount columns. The time per
+ *     operation should grow linearly with columnCount.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WideTableBenchmark {
+
+    @Param({"500", "1000", "2000"})
+    public int columnCount;
+
+    private SqlGenerator sqlGenerator;
+    private MigrationSet migrationSet;
+    private Map<String, TableInfo> targetSchema;
+    private String tableName;
+    private Set<String> currentColumnNames;
+
+    @Setup
+    public void setUp() throws IOException {
+        sqlGenerator = new SqlGenerator();
+        migrationSet = ScaledFixture.load(ScaledFixture.THREE_TABLE_FIXTURE, 3, columnCount);
+        targetSchema = migrationSet.getTargetSchema();
+        tableName = targetSchema.keySet().iterator().next();
+
+        // every other column is added by the migration, so half of the columns are left out of the copy
+        currentColumnNames = new HashSet<>();
+        int i = 0;
+        for (ColumnInfo column : targetSchema.get(tableName).getColumns()) {
+            if (TableInfo.DEFAULT_COLUMNS.containsKey(column.getColumnName()) || i++ % 2 == 0) {
+                currentColumnNames.add(column.getColumnName());
+            }
+        }
+    }
+
+    @Benchmark
+    public List<String> generateMigrationSql() {
+        return sqlGenerator.generateMigrationSql(migrationSet);
+    }
+
+    /**
+     * <p>
+     *     Creates one of the wide tables from a freshly compiled schema, so that nothing is cached
+     * </p>
+     */
+    @Benchmark
+    public List<String> createTable() {
+        return new CreateTableGenerator(tableName, new CompiledSchema(targetSchema)).generate();
+    }
+
+    /**
+     * <p>
+     *     Rebuilds one of the wide tables when half of its columns do not exist yet
+     * </p>
+     */
+    @Benchmark
+    public List<String> recreateTable() {
+        return new UpdatePrimaryKeyGenerator(tableName, currentColumnNames, new CompiledSchema(targetSchema)).generate();
+    }
+}
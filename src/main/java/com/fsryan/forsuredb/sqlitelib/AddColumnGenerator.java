@@ -21,36 +21,34 @@ import com.fsryan.forsuredb.api.info.ColumnInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class AddColumnGenerator extends QueryGenerator {
 
     private final ColumnInfo column;
+    private final GenerationOptions options;
 
     public AddColumnGenerator(String tableName, ColumnInfo column) {
+        this(tableName, column, GenerationOptions.DEFAULT);
+    }
+
+    public AddColumnGenerator(String tableName, ColumnInfo column, GenerationOptions options) {
         super(tableName, Migration.Type.ALTER_TABLE_ADD_COLUMN);
         this.column = column;
+        this.options = options;
     }
 
     @Override
     public List<String> generate() {
-        List<String> queries = new LinkedList<>();
+        List<String> queries = new ArrayList<>();
         queries.add("ALTER TABLE " + getTableName()
                 + " ADD COLUMN " + column.getColumnName()
-                + " " + TypeTranslator.from(column.getQualifiedType()).getSqlString()
-                + (column.hasDefaultValue() ? " DEFAULT" + getDefaultValueFrom(column) : "") + ";");
+                + " " + options.getDateStorage().sqlTypeOf(column)
+                + (column.hasDefaultValue() ? " DEFAULT" + options.getDateStorage().defaultValueOf(column) : "") + ";");
         if (column.isIndex()) {
             queries.addAll(new AddIndexGenerator(getTableName(), column).generate());
         }
         return queries;
     }
-
-    private String getDefaultValueFrom(ColumnInfo column) {
-        TypeTranslator tt = TypeTranslator.from(column.getQualifiedType());
-        if (tt != TypeTranslator.DATE || !"CURRENT_TIMESTAMP".equals(column.getDefaultValue())) {
-            return " '" + column.getDefaultValue() + "'";
-        }
-        return "(" + SqlGenerator.CURRENT_UTC_TIME + ")";
-    }
 }
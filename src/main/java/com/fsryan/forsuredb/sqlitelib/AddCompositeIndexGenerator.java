@@ -0,0 +1,60 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Creates a composite, partial and/or covering index described by an {@link IndexInfo}
+ * </p>
+ */
+public class AddCompositeIndexGenerator extends QueryGenerator {
+
+    private final IndexInfo index;
+
+    public AddCompositeIndexGenerator(IndexInfo index) {
+        super(index.getTableName(), index.isUnique() ? Migration.Type.ADD_UNIQUE_INDEX : Migration.Type.ADD_INDEX);
+        this.index = index;
+    }
+
+    @Override
+    public List<String> generate() {
+        StringBuilder buf = new StringBuilder("CREATE").append(index.isUnique() ? " UNIQUE" : "")
+                .append(" INDEX IF NOT EXISTS ").append(index.getName())
+                .append(" ON ").append(getTableName()).append('(');
+        for (IndexInfo.Column column : index.getColumns()) {
+            buf.append(column.getName()).append(column.isDescending() ? " DESC" : "").append(", ");
+        }
+        for (String coveringColumn : index.getCoveringColumns()) {
+            buf.append(coveringColumn).append(", ");
+        }
+        buf.delete(buf.length() - 2, buf.length()).append(')');
+        if (index.getWhere() != null) {
+            buf.append(" WHERE ").append(index.getWhere());
+        }
+
+        List<String> ret = new ArrayList<>(1);
+        ret.add(buf.append(';').toString());
+        return ret;
+    }
+}
@@ -27,7 +27,9 @@ import java.util.*;
 /**
  * <p>
  *     For backwards compatibilty with forsuredbcompiler versions that produce
- *     {@link Migration.Type#ADD_FOREIGN_KEY_REFERENCE} migrations.
+ *     {@link Migration.Type#ADD_FOREIGN_KEY_REFERENCE} migrations. {@link QueryGeneratorFactory} no longer creates
+ *     it: those migrations rebuild the table with {@link UpdateForeignKeysGenerator}, because the target definition of
+ *     the table already has the new foreign keys.
  * </p>
  */
 @Deprecated
@@ -35,7 +37,10 @@ public class AddForeignKeyGenerator extends QueryGenerator {
 
     private final TableInfo table;
     private final List<ColumnInfo> newForeignKeyColumns;
-    private final Map<String, TableInfo> targetSchema;
+    private final Set<String> newForeignKeyColumnNames;
+    private final CompiledSchema compiledSchema;
+    private final CompiledTable compiledTable;
+    private final GenerationOptions options;
 
     /**
      * <p>
@@ -56,34 +61,52 @@ public class AddForeignKeyGenerator extends QueryGenerator {
      * @param newForeignKeyColumns a list of all new foreign key columns to add
      */
     public AddForeignKeyGenerator(TableInfo table, List<ColumnInfo> newForeignKeyColumns, Map<String, TableInfo> targetSchema) {
-        super(table.getTableName(), Migration.Type.ADD_FOREIGN_KEY_REFERENCE);
-        this.table = table;
+        this(table, newForeignKeyColumns, targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    public AddForeignKeyGenerator(TableInfo table,
+                                  List<ColumnInfo> newForeignKeyColumns,
+                                  Map<String, TableInfo> targetSchema,
+                                  GenerationOptions options) {
+        this(new CompiledSchema(targetSchema, options).table(table.getTableName()), newForeignKeyColumns);
+    }
+
+    /*package*/ AddForeignKeyGenerator(CompiledTable compiledTable, List<ColumnInfo> newForeignKeyColumns) {
+        super(compiledTable.getTableName(), Migration.Type.ADD_FOREIGN_KEY_REFERENCE);
+        this.table = compiledTable.getTable();
         this.newForeignKeyColumns = newForeignKeyColumns;
-        this.targetSchema = targetSchema;
+        this.newForeignKeyColumnNames = new HashSet<>();
+        for (ColumnInfo column : newForeignKeyColumns) {
+            newForeignKeyColumnNames.add(column.getColumnName());
+        }
+        this.compiledSchema = compiledTable.getSchema();
+        this.compiledTable = compiledTable;
+        this.options = compiledSchema.getOptions();
     }
 
     @Override
     public List<String> generate() {
-        List<String> retList = new LinkedList<>();
+        CreateTableGenerator createTableGenerator = new CreateTableGenerator(getTableName(), compiledSchema);
+        List<String> retList = new ArrayList<>();
 
-        retList.addAll(new CreateTempTableFromExisting(table, newForeignKeyColumns).generate());
+        retList.addAll(new CreateTempTableFromExisting(compiledTable, newForeignKeyColumns).generate());
         retList.addAll(new DropTableGenerator(getTableName()).generate());
-        retList.addAll(recreateTableWithAllForeignKeysQuery());
+        retList.add(recreateTableWithAllForeignKeysQuery(new LegacyCreateTableGenerator(getTableName(), compiledSchema).generate().get(0)));
         retList.addAll(allColumnAdditionQueries());
         retList.add(reinsertDataQuery());
         retList.addAll(new DropTableGenerator(tempTableName()).generate());
+        retList.addAll(createTableGenerator.indexQueries());    // <-- every index is built in one pass after the data are loaded
+        retList.addAll(createTableGenerator.modifiedTriggerQueries());
 
         return retList;
     }
 
-    private List<String> recreateTableWithAllForeignKeysQuery() {
-        final List<String> retList = new LinkedList<>();
-        List<String> normalCreationQueries = new LegacyCreateTableGenerator(getTableName(), targetSchema).generate();
-
+    private String recreateTableWithAllForeignKeysQuery(String normalCreateTableQuery) {
         // add the default columns to the normal TABLE CREATE query
-        StringBuffer buf = new StringBuffer(normalCreationQueries.remove(0));
+        StringBuilder buf = new StringBuilder(normalCreateTableQuery.length() + 128 * (compiledTable.getForeignKeyColumns().size() + newForeignKeyColumns.size()))
+                .append(normalCreateTableQuery);
         buf.delete(buf.length() - 2, buf.length());   // <-- removes );
-        List<ColumnInfo> foreignKeyColumns = table.getForeignKeyColumns();
+        List<ColumnInfo> foreignKeyColumns = compiledTable.getForeignKeyColumns();
         addColumnDefinitionsToBuffer(buf, foreignKeyColumns);
         for (ColumnInfo fKeyColumn : newForeignKeyColumns) {
             addColumnDefinitionToBuffer(buf, fKeyColumn);
@@ -92,35 +115,27 @@ public class AddForeignKeyGenerator extends QueryGenerator {
         for (ColumnInfo fKeyColumn : newForeignKeyColumns) {
             addForeignKeyDefinitionToBuffer(buf, fKeyColumn);
         }
-        retList.add(buf.append(");").toString());
-
-        // add all remaining table create queries
-        while (normalCreationQueries.size() > 0) {
-            retList.add(normalCreationQueries.remove(0));
-        }
-
-        return retList;
+        return buf.append(");").toString();
     }
 
     private List<String> allColumnAdditionQueries() {
-        List<String> retList = new LinkedList<>();
+        List<String> retList = new ArrayList<>();
         for (ColumnInfo columnInfo : table.getNonForeignKeyColumns()) {
             if (TableInfo.DEFAULT_COLUMNS.containsKey(columnInfo.getColumnName()) || columnInfo.isUnique()) {
                 continue;   // <-- these columns were added in the CREATE TABLE query
             }
 
-            retList.addAll(new AddColumnGenerator(getTableName(), columnInfo).generate());
+            retList.add(new AddColumnGenerator(getTableName(), columnInfo, options).generate().get(0));  // <-- without its index
         }
 
         return retList;
     }
 
     private String reinsertDataQuery() {
-        StringBuffer buf = new StringBuffer("INSERT INTO ").append(getTableName()).append(" SELECT ");
-        List<ColumnInfo> tableColumns = new LinkedList<>(table.getColumns());
-        Collections.sort(tableColumns);
-        for (ColumnInfo tableColumn : tableColumns) {
-            if (newForeignKeyColumns.contains(tableColumn)) {
+        StringBuilder buf = new StringBuilder(compiledTable.columnNamesLength() + 9 * newForeignKeyColumns.size() + 64)
+                .append("INSERT INTO ").append(getTableName()).append(" SELECT ");
+        for (ColumnInfo tableColumn : compiledTable.getSortedColumns()) {
+            if (newForeignKeyColumnNames.contains(tableColumn.getColumnName())) {
                 buf.append(", null AS ").append(tableColumn.getColumnName());
             } else {
                 buf.append("_id".equals(tableColumn.getColumnName()) ? "" : ", ").append(tableColumn.getColumnName());
@@ -133,28 +148,28 @@ public class AddForeignKeyGenerator extends QueryGenerator {
         return "temp_" + getTableName();
     }
 
-    private void addColumnDefinitionsToBuffer(StringBuffer buf, List<ColumnInfo> columns) {
+    private void addColumnDefinitionsToBuffer(StringBuilder buf, List<ColumnInfo> columns) {
         for (ColumnInfo column : columns) {
-            if (!newForeignKeyColumns.contains(column)) {
+            if (!newForeignKeyColumnNames.contains(column.getColumnName())) {
                 addColumnDefinitionToBuffer(buf, column);
             }
         }
     }
 
-    private void addColumnDefinitionToBuffer(StringBuffer buf, ColumnInfo column) {
+    private void addColumnDefinitionToBuffer(StringBuilder buf, ColumnInfo column) {
         buf.append(", ").append(column.getColumnName())
-                .append(" ").append(TypeTranslator.from(column.getQualifiedType()).getSqlString());
+                .append(" ").append(options.getDateStorage().sqlTypeOf(column));
     }
 
-    private void addForeignKeyDefinitionsToBuffer(StringBuffer buf, List<ColumnInfo> columns) {
+    private void addForeignKeyDefinitionsToBuffer(StringBuilder buf, List<ColumnInfo> columns) {
         for (ColumnInfo column : columns) {
-            if (!newForeignKeyColumns.contains(column)) {
+            if (!newForeignKeyColumnNames.contains(column.getColumnName())) {
                 addForeignKeyDefinitionToBuffer(buf, column);
             }
         }
     }
 
-    private void addForeignKeyDefinitionToBuffer(StringBuffer buf, ColumnInfo column) {
+    private void addForeignKeyDefinitionToBuffer(StringBuilder buf, ColumnInfo column) {
         buf.append(", FOREIGN KEY(").append(column.getColumnName())
                 .append(") REFERENCES ").append(column.getForeignKeyInfo().getTableName())
                 .append("(").append(column.getForeignKeyInfo().getColumnName())
@@ -21,7 +21,7 @@ import com.fsryan.forsuredb.api.info.ColumnInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class AddIndexGenerator extends QueryGenerator {
@@ -41,10 +41,14 @@ public class AddIndexGenerator extends QueryGenerator {
 
     @Override
     public List<String> generate() {
-        List<String> retList = new LinkedList<>();
+        List<String> retList = new ArrayList<>();
         retList.add("CREATE" + (unique ? " UNIQUE" : "") + " INDEX IF NOT EXISTS "
-                + getTableName() + "_" + column.getColumnName() +
+                + nameOf(getTableName(), column.getColumnName()) +
                 " ON " + getTableName() + "(" + column.getColumnName() + ");");
         return retList;
     }
+
+    /*package*/ static String nameOf(String tableName, String columnName) {
+        return tableName + "_" + columnName;
+    }
 }
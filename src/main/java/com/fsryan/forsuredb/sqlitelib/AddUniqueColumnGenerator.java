@@ -21,22 +21,28 @@ import com.fsryan.forsuredb.api.info.ColumnInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class AddUniqueColumnGenerator extends QueryGenerator {
 
     private final ColumnInfo column;
+    private final GenerationOptions options;
 
     public AddUniqueColumnGenerator(String tableName, ColumnInfo column) {
+        this(tableName, column, GenerationOptions.DEFAULT);
+    }
+
+    public AddUniqueColumnGenerator(String tableName, ColumnInfo column, GenerationOptions options) {
         super(tableName, Migration.Type.ALTER_TABLE_ADD_UNIQUE);
         this.column = column;
+        this.options = options;
     }
 
     @Override
     public List<String> generate() {
-        List<String> retList = new LinkedList<>();
-        retList.addAll(new AddColumnGenerator(getTableName(), column).generate());
+        List<String> retList = new ArrayList<>();
+        retList.addAll(new AddColumnGenerator(getTableName(), column, options).generate());
         retList.addAll(new AddIndexGenerator(getTableName(), column, true).generate());
         return retList;
     }
@@ -4,6 +4,7 @@ import com.fsryan.forsuredb.api.info.TableInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * <p>
@@ -14,6 +15,25 @@ import java.util.Map;
 public class ChangeDefaultValueGenerator extends RecreateTableGenerator {
 
     public ChangeDefaultValueGenerator(String tableName, Map<String, TableInfo> targetSchema) {
-        super(tableName, targetSchema, Migration.Type.CHANGE_DEFAULT_VALUE);
+        this(tableName, targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    public ChangeDefaultValueGenerator(String tableName, Map<String, TableInfo> targetSchema, GenerationOptions options) {
+        super(tableName, targetSchema, Migration.Type.CHANGE_DEFAULT_VALUE, options);
+    }
+
+    /**
+     * @param currentColumnNames the set of current column names. If you pass in an null/empty set, then the
+     *                           assumption is that all columns already exist
+     */
+    public ChangeDefaultValueGenerator(String tableName,
+                                       Set<String> currentColumnNames,
+                                       Map<String, TableInfo> targetSchema,
+                                       GenerationOptions options) {
+        this(tableName, currentColumnNames, new CompiledSchema(targetSchema, options));
+    }
+
+    public ChangeDefaultValueGenerator(String tableName, Set<String> currentColumnNames, CompiledSchema compiledSchema) {
+        super(tableName, currentColumnNames, compiledSchema, Migration.Type.CHANGE_DEFAULT_VALUE);
     }
 }
@@ -0,0 +1,228 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     Rebuilds a table by copying its rows into chunked_&lt;table&gt; in rowid order, at most
+ *     {@link #getChunkSize()} rows per transaction, so that the write lock is released between chunks and readers of
+ *     a database in WAL mode stay responsive. The rowid of the last copied row is stored in the
+ *     {@value #CHECKPOINT_TABLE_NAME} table in the same transaction as the chunk, so after a crash, running the
+ *     plan again resumes after the last committed chunk. The table must not be WITHOUT ROWID.
+ * </p>
+ * <p>
+ *     Unless the plan {@link #isMirroringWrites()}, the rows of the table must not be written while the chunks are
+ *     copied. A shadow rebuild plan also creates triggers that mirror each insert, update and delete of the table
+ *     into chunked_&lt;table&gt;, matching rows by the primary key of the rebuilt table, and its chunks replace the
+ *     rows that were already mirrored. So the application can keep reading and writing the table until the finish
+ *     SQL swaps the tables, which drops the triggers along with the old table.
+ * </p>
+ * <p>
+ *     Run {@link #getStartSql()} once, then {@link #getChunkSql()} until {@link #getHasRemainingRowsQuery()}
+ *     returns 0. The finish SQL swaps the tables, creates the indices and triggers and removes the checkpoint in one
+ *     transaction, which must be run the way a {@link MigrationTransaction} is run:
+ * </p>
+ * <ol>
+ *     <li>Read the current value of each of {@link #getChangedPragmaNames()} with PRAGMA &lt;name&gt;;</li>
+ *     <li>Run {@link #getFinishPragmaSql()} and then {@link #getFinishSql()}, which begins the transaction</li>
+ *     <li>Run each of {@link #getForeignKeyCheckQueries()}. If any returns a row, run
+ *     {@link MigrationTransaction#ROLLBACK}; otherwise run {@link MigrationTransaction#COMMIT}.</li>
+ *     <li>Restore the values read in the first step with PRAGMA &lt;name&gt;=&lt;value&gt;;</li>
+ * </ol>
+ * <p>
+ *     After a rollback, the copied rows and the checkpoint are kept, so the finish SQL can be run again once the
+ *     violating rows are fixed. Do not run the plan again after its finish SQL has committed.
+ * </p>
+ * @see GenerationOptions.Builder#chunkedRebuild(String)
+ * @see GenerationOptions.Builder#shadowRebuild(String)
+ * @see SqlGenerator#generateChunkedRebuildPlans(com.fsryan.forsuredb.api.migration.MigrationSet)
+ */
+public class ChunkedRebuildPlan {
+
+    public static final String CHECKPOINT_TABLE_NAME = "forsuredb_rebuild_checkpoint";
+
+    private final String tableName;
+    private final int chunkSize;
+    private final List<String> startSql;
+    private final List<String> chunkSql;
+    private final String hasRemainingRowsQuery;
+    private final List<String> changedPragmaNames;
+    private final List<String> finishPragmaSql;
+    private final List<String> finishSql;
+    private final List<String> foreignKeyCheckQueries;
+    private final boolean mirroringWrites;
+
+    /**
+     * @param tableName the name of the table to rebuild
+     * @param chunkSize the maximum number of rows to copy per chunk
+     * @param createTableQuery the query that creates chunked_&lt;table&gt; with the target definition
+     * @param columnList the columns of chunked_&lt;table&gt; into which rows are copied
+     * @param selectList the expressions that select the values of the columns from the table
+     * @param afterRenameSql the queries that recreate the indices and triggers of the table after it is swapped
+     * @param mirroredKeyColumnNames the primary key columns of the rebuilt table that identify mirrored rows, or
+     *                               null if writes to the table are not mirrored
+     */
+    /*package*/ ChunkedRebuildPlan(String tableName,
+                                   int chunkSize,
+                                   String createTableQuery,
+                                   String columnList,
+                                   String selectList,
+                                   List<String> afterRenameSql,
+                                   List<String> mirroredKeyColumnNames) {
+        this.tableName = tableName;
+        this.chunkSize = chunkSize;
+        mirroringWrites = mirroredKeyColumnNames != null;
+        final String chunkedTableName = chunkedTableNameOf(tableName);
+        final String tableNameLiteral = "'" + tableName + "'";
+        final String lastCopiedRowid = "(SELECT last_rowid FROM " + CHECKPOINT_TABLE_NAME + " WHERE table_name = " + tableNameLiteral + ")";
+        final String chunkRowids = "SELECT rowid AS copied_rowid FROM " + tableName + " WHERE rowid > " + lastCopiedRowid + " ORDER BY rowid LIMIT " + chunkSize;
+
+        final String copyRowQuery = (mirroringWrites ? "INSERT OR REPLACE INTO " : "INSERT INTO ") + chunkedTableName
+                + " (" + columnList + ") SELECT " + selectList + " FROM " + tableName;
+
+        List<String> start = new ArrayList<>(8);
+        start.add("CREATE TABLE IF NOT EXISTS " + CHECKPOINT_TABLE_NAME + "(table_name TEXT PRIMARY KEY, last_rowid INTEGER NOT NULL);");
+        start.add("BEGIN IMMEDIATE;");
+        start.add(createTableQuery.replaceFirst("^CREATE TABLE ", "CREATE TABLE IF NOT EXISTS "));
+        start.add("INSERT OR IGNORE INTO " + CHECKPOINT_TABLE_NAME + "(table_name, last_rowid) SELECT " + tableNameLiteral + ", IFNULL(MIN(rowid), 1) - 1 FROM " + tableName + ";");
+        if (mirroringWrites) {
+            StringBuilder deleteMirroredRow = new StringBuilder("DELETE FROM ").append(chunkedTableName).append(" WHERE ");
+            for (int i = 0; i < mirroredKeyColumnNames.size(); i++) {
+                final String columnName = mirroredKeyColumnNames.get(i);
+                deleteMirroredRow.append(i == 0 ? "" : " AND ").append(columnName).append(" = OLD.").append(columnName);
+            }
+            deleteMirroredRow.append(';');
+            final String mirrorRow = copyRowQuery + " WHERE rowid = NEW.rowid;";
+            start.add("CREATE TRIGGER IF NOT EXISTS " + shadowTriggerNameOf(tableName, "insert") + " AFTER INSERT ON " + tableName
+                    + " BEGIN " + mirrorRow + " END;");
+            start.add("CREATE TRIGGER IF NOT EXISTS " + shadowTriggerNameOf(tableName, "update") + " AFTER UPDATE ON " + tableName
+                    + " BEGIN " + deleteMirroredRow + " " + mirrorRow + " END;");
+            start.add("CREATE TRIGGER IF NOT EXISTS " + shadowTriggerNameOf(tableName, "delete") + " AFTER DELETE ON " + tableName
+                    + " BEGIN " + deleteMirroredRow + " END;");
+        }
+        start.add("COMMIT;");
+        startSql = Collections.unmodifiableList(start);
+
+        List<String> chunk = new ArrayList<>(4);
+        chunk.add("BEGIN IMMEDIATE;");
+        chunk.add(copyRowQuery + " WHERE rowid > " + lastCopiedRowid + " ORDER BY rowid LIMIT " + chunkSize + ";");
+        chunk.add("UPDATE " + CHECKPOINT_TABLE_NAME + " SET last_rowid = IFNULL((SELECT MAX(copied_rowid) FROM (" + chunkRowids + ")), last_rowid)"
+                + " WHERE table_name = " + tableNameLiteral + ";");
+        chunk.add("COMMIT;");
+        chunkSql = Collections.unmodifiableList(chunk);
+
+        hasRemainingRowsQuery = "SELECT EXISTS(SELECT 1 FROM " + tableName + " WHERE rowid > " + lastCopiedRowid + ");";
+
+        // DROP TABLE deletes every row first, which would cascade to the child tables if foreign keys were enforced
+        changedPragmaNames = Collections.unmodifiableList(Arrays.asList("foreign_keys"));
+        finishPragmaSql = Collections.unmodifiableList(Arrays.asList("PRAGMA foreign_keys=OFF;"));
+        List<String> finish = new ArrayList<>(afterRenameSql.size() + 4);
+        finish.add(MigrationTransaction.BEGIN);
+        finish.add("DROP TABLE IF EXISTS " + tableName + ";");
+        finish.add("ALTER TABLE " + chunkedTableName + " RENAME TO " + tableName + ";");
+        finish.addAll(afterRenameSql);
+        finish.add("DELETE FROM " + CHECKPOINT_TABLE_NAME + " WHERE table_name = " + tableNameLiteral + ";");
+        finishSql = Collections.unmodifiableList(finish);
+        foreignKeyCheckQueries = Collections.unmodifiableList(Arrays.asList("PRAGMA foreign_key_check(" + tableName + ");"));
+    }
+
+    /*package*/ static String chunkedTableNameOf(String tableName) {
+        return "chunked_" + tableName;
+    }
+
+    private static String shadowTriggerNameOf(String tableName, String operation) {
+        return tableName + "_shadow_" + operation + "_trigger";
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return whether the writes to the table are mirrored into the shadow table while the rows are copied
+     */
+    public boolean isMirroringWrites() {
+        return mirroringWrites;
+    }
+
+    /**
+     * <p>
+     *     Creates the checkpoint table and chunked_&lt;table&gt; unless they exist and records that no rows have
+     *     been copied unless a checkpoint for the table exists, so running it again after a crash keeps the progress.
+     *     If the plan {@link #isMirroringWrites()}, it also creates the mirroring triggers in the same transaction.
+     * </p>
+     * @return the SQL to run once before the chunks are copied
+     */
+    public List<String> getStartSql() {
+        return startSql;
+    }
+
+    /**
+     * @return the SQL that copies the next chunk of rows and advances the checkpoint in one transaction
+     */
+    public List<String> getChunkSql() {
+        return chunkSql;
+    }
+
+    /**
+     * @return a query that returns 1 while rows remain to be copied and 0 afterward
+     */
+    public String getHasRemainingRowsQuery() {
+        return hasRemainingRowsQuery;
+    }
+
+    /**
+     * @return the names of the PRAGMAs that {@link #getFinishPragmaSql()} changes, whose values should be read
+     * before and restored after the finish transaction
+     */
+    public List<String> getChangedPragmaNames() {
+        return changedPragmaNames;
+    }
+
+    /**
+     * @return the PRAGMAs to run before the finish transaction begins
+     */
+    public List<String> getFinishPragmaSql() {
+        return finishPragmaSql;
+    }
+
+    /**
+     * @return {@link MigrationTransaction#BEGIN} followed by the SQL to run after the last chunk is copied, without
+     * the COMMIT
+     */
+    public List<String> getFinishSql() {
+        return finishSql;
+    }
+
+    /**
+     * @return the queries that return a row for each foreign key violation in the rebuilt table; if any of them
+     * returns a row, the finish transaction must be rolled back
+     */
+    public List<String> getForeignKeyCheckQueries() {
+        return foreignKeyCheckQueries;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.ForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ *     The target schema of a {@link com.fsryan.forsuredb.api.migration.MigrationSet} together with the data the
+ *     generators derive from it: sorted columns, primary and foreign key sets, column definitions and the
+ *     CREATE TABLE, index and trigger DDL of each table. {@link SqlGenerator} compiles the target schema once per
+ *     {@link com.fsryan.forsuredb.api.migration.MigrationSet}, and every generator it creates reads from the same
+ *     {@link CompiledTable}s rather than recomputing them from the raw {@link TableInfo}s.
+ * </p>
+ * <p>
+ *     Every table is compiled when the CompiledSchema is constructed, and the result is immutable, so it can be
+ *     shared among threads. The derived data depend on the {@link GenerationOptions}, so a CompiledSchema can only be
+ *     shared by generators that have the same options. Changes to the target schema after construction are not
+ *     reflected; compile it again instead.
+ * </p>
+ */
+public class CompiledSchema {
+
+    private final Map<String, TableInfo> targetSchema;
+    private final GenerationOptions options;
+    private final Set<String> idReferencedTableNames;
+    private final Map<String, CompiledTable> compiledTables;
+
+    public CompiledSchema(Map<String, TableInfo> targetSchema) {
+        this(targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the options name a table as WITHOUT ROWID but its primary key is empty or
+     * includes _id
+     */
+    public CompiledSchema(Map<String, TableInfo> targetSchema, GenerationOptions options) {
+        if (targetSchema == null) {
+            throw new IllegalArgumentException("targetSchema must not be null");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null");
+        }
+        this.targetSchema = targetSchema;
+        this.options = options;
+        idReferencedTableNames = Collections.unmodifiableSet(findIdReferencedTableNames(targetSchema));
+
+        // the tables read the options and idReferencedTableNames of this CompiledSchema, which are already set
+        Map<String, CompiledTable> tables = new HashMap<>(targetSchema.size());
+        for (Map.Entry<String, TableInfo> entry : targetSchema.entrySet()) {
+            tables.put(entry.getKey(), new CompiledTable(this, entry.getValue()));
+        }
+        compiledTables = Collections.unmodifiableMap(tables);
+    }
+
+    public Map<String, TableInfo> getTargetSchema() {
+        return targetSchema;
+    }
+
+    public GenerationOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * @param tableName the name of a table of the target schema
+     * @return the {@link CompiledTable} or null if the target schema has no such table
+     */
+    public CompiledTable table(String tableName) {
+        return compiledTables.get(tableName);
+    }
+
+    /**
+     * @return whether a foreign key of any table in the target schema references the _id column of the table
+     */
+    /*package*/ boolean isIdReferenced(String tableName) {
+        return idReferencedTableNames.contains(tableName);
+    }
+
+    private static Set<String> findIdReferencedTableNames(Map<String, TableInfo> targetSchema) {
+        Set<String> ret = new HashSet<>();
+        for (TableInfo referencingTable : targetSchema.values()) {
+            if (referencingTable.getForeignKeys() == null) {
+                for (ColumnInfo column : referencingTable.getForeignKeyColumns()) {
+                    ForeignKeyInfo foreignKey = column.getForeignKeyInfo();
+                    if (foreignKey != null && TableInfo.DEFAULT_PRIMARY_KEY_COLUMN.equals(foreignKey.getColumnName())) {
+                        ret.add(foreignKey.getTableName());
+                    }
+                }
+                continue;
+            }
+            for (TableForeignKeyInfo foreignKey : referencingTable.getForeignKeys()) {
+                if (foreignKey.getLocalToForeignColumnMap().containsValue(TableInfo.DEFAULT_PRIMARY_KEY_COLUMN)) {
+                    ret.add(foreignKey.getForeignTableName());
+                }
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,493 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.ForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+
+import java.util.*;
+
+/**
+ * <p>
+ *     A table of a {@link CompiledSchema}: the data that the generators derive from its {@link TableInfo} and the
+ *     CREATE TABLE, index and trigger DDL of the table, all computed when the {@link CompiledSchema} is constructed.
+ *     The lists are sorted the way the generated SQL lists columns, and the sets answer membership in constant time.
+ *     A CompiledTable is immutable, and every collection it returns is unmodifiable.
+ * </p>
+ */
+public class CompiledTable {
+
+    private final CompiledSchema schema;
+    private final TableInfo table;
+    private final List<String> sortedPrimaryKeyColumnNames;
+    private final Set<String> primaryKeyColumnNames;
+    private final List<ColumnInfo> foreignKeyColumns;
+    private final Set<String> foreignKeyColumnNames;
+    private final Set<String> referencedTableNames;
+    private final List<ColumnInfo> sortedColumns;
+    private final List<ColumnInfo> sortedColumnsToCreate;
+    private final List<String> columnDefinitions;
+    private final int columnNamesLength;
+    private final boolean withoutRowid;
+    private final String tableDefinition;
+    private final String createTableQuery;
+    private final List<String> foreignKeyIndexQueries;
+    private final List<String> indexQueries;
+    private final List<String> modifiedTriggerQueries;
+
+    /**
+     * @throws IllegalArgumentException if the options name the table as WITHOUT ROWID but its primary key is empty
+     * or includes _id, or if an index from the options has the name of another index of the table, which
+     * CREATE INDEX IF NOT EXISTS would silently skip
+     */
+    /*package*/ CompiledTable(CompiledSchema schema, TableInfo table) {
+        this.schema = schema;
+        this.table = table;
+
+        final Set<String> primaryKey = table.getPrimaryKey();
+        List<String> sortedPrimaryKey = primaryKey == null ? new ArrayList<String>(0) : new ArrayList<>(primaryKey);
+        Collections.sort(sortedPrimaryKey);
+        sortedPrimaryKeyColumnNames = Collections.unmodifiableList(sortedPrimaryKey);
+        primaryKeyColumnNames = Collections.unmodifiableSet(new HashSet<>(sortedPrimaryKey));
+
+        foreignKeyColumns = Collections.unmodifiableList(new ArrayList<>(table.getForeignKeyColumns()));
+        Set<String> fkColumnNames = new HashSet<>();
+        Set<String> referenced = new LinkedHashSet<>();
+        if (table.getForeignKeys() == null) {
+            for (ColumnInfo column : foreignKeyColumns) {
+                fkColumnNames.add(column.getColumnName());
+                final ForeignKeyInfo foreignKey = column.getForeignKeyInfo();
+                if (foreignKey != null) {
+                    referenced.add(foreignKey.getTableName());
+                }
+            }
+        } else {
+            for (TableForeignKeyInfo foreignKey : table.getForeignKeys()) {
+                fkColumnNames.addAll(foreignKey.getLocalToForeignColumnMap().keySet());
+                referenced.add(foreignKey.getForeignTableName());
+            }
+        }
+        referenced.remove(table.getTableName());
+        foreignKeyColumnNames = Collections.unmodifiableSet(fkColumnNames);
+        referencedTableNames = Collections.unmodifiableSet(referenced);
+
+        List<ColumnInfo> columns = new ArrayList<>(table.getColumns());
+        Collections.sort(columns);
+        sortedColumns = Collections.unmodifiableList(columns);
+        int namesLength = 0;
+        for (ColumnInfo column : sortedColumns) {
+            namesLength += column.getColumnName().length() + 2;
+        }
+        columnNamesLength = namesLength;
+
+        List<ColumnInfo> columnsToCreate = new ArrayList<>(sortedColumns.size() + TableInfo.DEFAULT_COLUMNS.size());
+        columnsToCreate.addAll(TableInfo.DEFAULT_COLUMNS.values());
+        for (ColumnInfo column : sortedColumns) {
+            if (!TableInfo.DEFAULT_COLUMNS.containsKey(column.getColumnName())) {
+                columnsToCreate.add(column);
+            }
+        }
+        Collections.sort(columnsToCreate);  // <-- only the default columns are out of order
+        sortedColumnsToCreate = Collections.unmodifiableList(columnsToCreate);
+        List<String> definitions = new ArrayList<>(sortedColumnsToCreate.size());
+        for (ColumnInfo column : sortedColumnsToCreate) {
+            definitions.add(columnDefinitionOf(column));
+        }
+        columnDefinitions = Collections.unmodifiableList(definitions);
+
+        withoutRowid = determineWithoutRowid();
+        tableDefinition = createTableDefinition();
+        createTableQuery = createTableQueryOf(table.getTableName());
+        List<IndexInfo> foreignKeyIndices = createForeignKeyIndices();
+        foreignKeyIndexQueries = Collections.unmodifiableList(queriesOf(foreignKeyIndices));
+        indexQueries = Collections.unmodifiableList(createIndexQueries(foreignKeyIndices));
+        modifiedTriggerQueries = Collections.unmodifiableList(schema.getOptions().getModifiedTimestampMode()
+                .createTriggerQueries(getTableName(), primaryKeyWhere(), schema.getOptions().getDateStorage().getCurrentTimeSql()));
+    }
+
+    public CompiledSchema getSchema() {
+        return schema;
+    }
+
+    public TableInfo getTable() {
+        return table;
+    }
+
+    public String getTableName() {
+        return table.getTableName();
+    }
+
+    /**
+     * @return the columns of the table in their natural order
+     */
+    public List<ColumnInfo> getSortedColumns() {
+        return sortedColumns;
+    }
+
+    /**
+     * @return the columns of the CREATE TABLE query in their natural order: the default columns and every other
+     * column of the table
+     */
+    public List<ColumnInfo> getSortedColumnsToCreate() {
+        return sortedColumnsToCreate;
+    }
+
+    /**
+     * @return the column definitions of the CREATE TABLE query, in the order of
+     * {@link #getSortedColumnsToCreate()}
+     */
+    public List<String> getColumnDefinitions() {
+        return columnDefinitions;
+    }
+
+    /**
+     * @return the length of the comma-separated list of the names of all columns of the table, which is used to
+     * size the buffers of the queries that list them
+     */
+    /*package*/ int columnNamesLength() {
+        return columnNamesLength;
+    }
+
+    public List<String> getSortedPrimaryKeyColumnNames() {
+        return sortedPrimaryKeyColumnNames;
+    }
+
+    public boolean isPrimaryKeyColumn(String columnName) {
+        return primaryKeyColumnNames.contains(columnName);
+    }
+
+    public boolean isCompositePrimaryKey() {
+        return sortedPrimaryKeyColumnNames.size() > 1;
+    }
+
+    /**
+     * @return {@link TableInfo#getForeignKeyColumns()}, the columns that declare a {@link ForeignKeyInfo}
+     */
+    public List<ColumnInfo> getForeignKeyColumns() {
+        return foreignKeyColumns;
+    }
+
+    /**
+     * @return whether the column is a local column of a foreign key of the table
+     */
+    public boolean isForeignKeyColumn(String columnName) {
+        return foreignKeyColumnNames.contains(columnName);
+    }
+
+    /**
+     * @return the names of the other tables that the foreign keys of the table reference, in declaration order
+     */
+    public Set<String> getReferencedTableNames() {
+        return referencedTableNames;
+    }
+
+    /**
+     * @return whether the table is created WITHOUT ROWID
+     */
+    public boolean isWithoutRowid() {
+        return withoutRowid;
+    }
+
+    /**
+     * @return the query that creates the table
+     */
+    public String getCreateTableQuery() {
+        return createTableQuery;
+    }
+
+    /**
+     * @param createdTableName the name of the table to create, which differs from the name of the table when it is
+     *                         rebuilt
+     * @return the query that creates a table with the definition of this table
+     */
+    /*package*/ String createTableQueryOf(String createdTableName) {
+        return new StringBuilder(13 + createdTableName.length() + tableDefinition.length())
+                .append("CREATE TABLE ").append(createdTableName).append(tableDefinition)
+                .toString();
+    }
+
+    /**
+     * @return the queries that create the unique indices, the non-unique indices, the indices from the options and
+     * then the foreign key indices of the table
+     */
+    public List<String> getIndexQueries() {
+        return indexQueries;
+    }
+
+    /**
+     * <p>
+     *     SQLite looks up the child rows of a foreign key whenever a parent row is updated or deleted. These indices
+     *     keep those lookups from scanning the whole table.
+     * </p>
+     * @return the queries that create an index on each foreign key that is not already led by the primary key or
+     * another index, or no queries if the options do not index foreign keys
+     */
+    public List<String> getForeignKeyIndexQueries() {
+        return foreignKeyIndexQueries;
+    }
+
+    /**
+     * @return the query that creates the trigger that sets the modified column, or no queries if the options'
+     * {@link ModifiedTimestampMode} has no trigger
+     */
+    public List<String> getModifiedTriggerQueries() {
+        return modifiedTriggerQueries;
+    }
+
+    private boolean determineWithoutRowid() {
+        final GenerationOptions options = schema.getOptions();
+        final boolean hasRowidFreePrimaryKey = !sortedPrimaryKeyColumnNames.isEmpty()
+                && !primaryKeyColumnNames.contains(TableInfo.DEFAULT_PRIMARY_KEY_COLUMN);
+        if (options.getWithoutRowidTableNames().contains(getTableName())) {
+            if (!hasRowidFreePrimaryKey) {
+                throw new IllegalArgumentException("WITHOUT ROWID table " + getTableName() + " must have a primary key that does not include " + TableInfo.DEFAULT_PRIMARY_KEY_COLUMN + "; was " + sortedPrimaryKeyColumnNames);
+            }
+            return true;
+        }
+        return options.withoutRowidForCompositePrimaryKeys()
+                && isCompositePrimaryKey()
+                && hasRowidFreePrimaryKey
+                && !schema.isIdReferenced(getTableName());
+    }
+
+    private String columnDefinitionOf(ColumnInfo column) {
+        final DateStorage dateStorage = schema.getOptions().getDateStorage();
+        final String primaryKeyOnConflict = table.getPrimaryKeyOnConflict();
+        StringBuilder buf = new StringBuilder(column.getColumnName()).append(' ').append(dateStorage.sqlTypeOf(column));
+        if (!isCompositePrimaryKey() && primaryKeyColumnNames.contains(column.getColumnName())) {
+            buf.append(" PRIMARY KEY");
+            if (primaryKeyOnConflict != null && !primaryKeyOnConflict.isEmpty()) {
+                buf.append(" ON CONFLICT ").append(primaryKeyOnConflict);
+            }
+        }
+        if (column.isUnique()) {
+            buf.append(" UNIQUE");
+        }
+        if (column.hasDefaultValue()) {
+            buf.append(" DEFAULT").append(dateStorage.defaultValueOf(column));
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @return the part of the CREATE TABLE query that follows the name of the table
+     */
+    private String createTableDefinition() {
+        int capacity = 64;
+        for (String columnDefinition : columnDefinitions) {
+            capacity += columnDefinition.length() + 2;
+        }
+        StringBuilder buf = new StringBuilder(capacity).append("(");
+        for (String columnDefinition : columnDefinitions) {
+            buf.append(columnDefinition).append(", ");
+        }
+        buf.delete(buf.length() - 2, buf.length());
+
+        if (isCompositePrimaryKey()) {
+            buf.append(", PRIMARY KEY(");
+            for (String primaryKeyColumnName : sortedPrimaryKeyColumnNames) {
+                buf.append(primaryKeyColumnName).append(", ");
+            }
+            buf.delete(buf.length() - 2, buf.length()).append(')');
+            if (table.getPrimaryKeyOnConflict() != null && !table.getPrimaryKeyOnConflict().isEmpty()) {
+                buf.append(" ON CONFLICT ").append(table.getPrimaryKeyOnConflict());
+            }
+        }
+
+        if (table.getForeignKeys() == null) {
+            for (ColumnInfo column : foreignKeyColumns) {
+                addForeignKeyReferenceTo(buf, column.getForeignKeyInfo(), column.getColumnName());
+            }
+        } else {
+            for (TableForeignKeyInfo foreignKey : table.getForeignKeys()) {
+                addForeignKeyReferenceTo(buf, foreignKey);
+            }
+        }
+
+        return buf.append(withoutRowid ? ") WITHOUT ROWID;" : ");").toString();
+    }
+
+    private void addForeignKeyReferenceTo(StringBuilder buf, TableForeignKeyInfo foreignKey) {
+        buf.append(", FOREIGN KEY(");
+
+        StringBuilder foreignColumnBuf = new StringBuilder();
+        List<Map.Entry<String, String>> sortedEntries = new ArrayList<>(foreignKey.getLocalToForeignColumnMap().entrySet());
+        Collections.sort(sortedEntries, new Comparator<Map.Entry<String, String>>() {
+            @Override
+            public int compare(Map.Entry<String, String> entry1, Map.Entry<String, String> entry2) {
+                // sorts the entries by their keys
+                return entry1.getKey().compareTo(entry2.getKey());
+            }
+        });
+        for (Map.Entry<String, String> entry : sortedEntries) {
+            buf.append(entry.getKey()).append(", ");
+            foreignColumnBuf.append(entry.getValue()).append(", ");
+        }
+        buf.delete(buf.length() - 2, buf.length())
+                .append(") REFERENCES ").append(foreignKey.getForeignTableName())
+                .append("(").append(foreignColumnBuf.delete(foreignColumnBuf.length() - 2, foreignColumnBuf.length()))
+                .append(")");
+        if (foreignKey.getUpdateChangeAction() != null && !foreignKey.getUpdateChangeAction().isEmpty()) {
+            buf.append(" ON UPDATE ").append(foreignKey.getUpdateChangeAction());
+        }
+        if (foreignKey.getDeleteChangeAction() != null && !foreignKey.getDeleteChangeAction().isEmpty()) {
+            buf.append(" ON DELETE ").append(foreignKey.getDeleteChangeAction());
+        }
+    }
+
+    private void addForeignKeyReferenceTo(StringBuilder buf, ForeignKeyInfo foreignKey, String localColumn) {
+        buf.append(", FOREIGN KEY(").append(localColumn)
+                .append(") REFERENCES ").append(foreignKey.getTableName())
+                .append("(").append(foreignKey.getColumnName())
+                .append(")");
+        if (foreignKey.getUpdateAction() != null) {
+            buf.append(" ON UPDATE ").append(foreignKey.getUpdateAction().toString());
+        }
+        if (foreignKey.getDeleteAction() != null) {
+            buf.append(" ON DELETE ").append(foreignKey.getDeleteAction().toString());
+        }
+    }
+
+    private List<String> createIndexQueries(List<IndexInfo> foreignKeyIndices) {
+        List<String> ret = new ArrayList<>();
+        Set<String> otherIndexNames = new HashSet<>();
+        for (ColumnInfo column : table.getColumns()) {
+            if (column.isUnique()) {
+                ret.addAll(new AddIndexGenerator(getTableName(), column).generate());
+                otherIndexNames.add(AddIndexGenerator.nameOf(getTableName(), column.getColumnName()));
+            }
+        }
+        for (ColumnInfo column : sortedColumnsToCreate) {
+            if (column.isIndex() && !column.isUnique()) {
+                ret.addAll(new AddIndexGenerator(getTableName(), column).generate());
+                otherIndexNames.add(AddIndexGenerator.nameOf(getTableName(), column.getColumnName()));
+            }
+        }
+        for (IndexInfo index : foreignKeyIndices) {
+            otherIndexNames.add(index.getName());
+        }
+        for (IndexInfo index : schema.getOptions().getIndicesOf(getTableName())) {
+            if (otherIndexNames.contains(index.getName())) {
+                throw new IllegalArgumentException("Index name " + index.getName() + " of " + index + " is already used by another index of " + getTableName());
+            }
+            ret.addAll(new AddCompositeIndexGenerator(index).generate());
+        }
+        ret.addAll(foreignKeyIndexQueries);
+        return ret;
+    }
+
+    private List<IndexInfo> createForeignKeyIndices() {
+        List<IndexInfo> ret = new ArrayList<>();
+        if (!schema.getOptions().indexForeignKeys()) {
+            return ret;
+        }
+        for (List<String> columnNames : foreignKeyColumnNameLists()) {
+            if (isIndexed(columnNames)) {
+                continue;
+            }
+            IndexInfo.Builder builder = IndexInfo.builder(getTableName());
+            StringBuilder name = new StringBuilder(getTableName());
+            for (String columnName : columnNames) {
+                builder.column(columnName);
+                name.append('_').append(columnName);
+            }
+            ret.add(builder.name(name.append("_fk_index").toString()).build());
+        }
+        return ret;
+    }
+
+    private static List<String> queriesOf(List<IndexInfo> indices) {
+        List<String> ret = new ArrayList<>(indices.size());
+        for (IndexInfo index : indices) {
+            ret.addAll(new AddCompositeIndexGenerator(index).generate());
+        }
+        return ret;
+    }
+
+    private List<List<String>> foreignKeyColumnNameLists() {
+        List<List<String>> ret = new ArrayList<>();
+        if (table.getForeignKeys() == null) {
+            for (ColumnInfo column : foreignKeyColumns) {
+                ret.add(Collections.singletonList(column.getColumnName()));
+            }
+            return ret;
+        }
+
+        Set<List<String>> distinctColumnNames = new HashSet<>();
+        for (TableForeignKeyInfo foreignKey : table.getForeignKeys()) {
+            List<String> columnNames = new ArrayList<>(foreignKey.getLocalToForeignColumnMap().keySet());
+            Collections.sort(columnNames);  // <-- the order of the columns in the FOREIGN KEY clause
+            if (distinctColumnNames.add(columnNames)) {
+                ret.add(columnNames);
+            }
+        }
+        Collections.sort(ret, new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> columnNames1, List<String> columnNames2) {
+                return columnNames1.toString().compareTo(columnNames2.toString());
+            }
+        });
+        return ret;
+    }
+
+    private boolean isIndexed(List<String> columnNames) {
+        for (String columnName : columnNames) {
+            ColumnInfo column = table.getColumn(columnName);
+            if (column != null && column.isUnique()) {
+                return true;    // <-- at most one child row, which the unique index finds
+            }
+        }
+        if (columnNames.size() == 1) {
+            ColumnInfo column = table.getColumn(columnNames.get(0));
+            if (column != null && column.isIndex()) {
+                return true;
+            }
+        }
+        if (leads(sortedPrimaryKeyColumnNames, columnNames)) {
+            return true;
+        }
+        for (IndexInfo index : schema.getOptions().getIndicesOf(getTableName())) {
+            if (index.getWhere() != null) {
+                continue;   // <-- a partial index cannot be used for every lookup
+            }
+            List<String> indexColumnNames = new ArrayList<>(index.getColumns().size());
+            for (IndexInfo.Column column : index.getColumns()) {
+                indexColumnNames.add(column.getName());
+            }
+            if (leads(indexColumnNames, columnNames)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean leads(List<String> indexColumnNames, List<String> columnNames) {
+        return indexColumnNames.size() >= columnNames.size()
+                && new HashSet<>(indexColumnNames.subList(0, columnNames.size())).equals(new HashSet<>(columnNames));
+    }
+
+    private String primaryKeyWhere() {
+        StringBuilder buf = new StringBuilder();
+        for (String columnName : sortedPrimaryKeyColumnNames) {
+            buf.append(columnName).append("=NEW.").append(columnName).append(" AND ");
+        }
+        return buf.delete(buf.length() - 5, buf.length()).toString();
+    }
+}
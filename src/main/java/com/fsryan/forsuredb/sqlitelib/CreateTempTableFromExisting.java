@@ -22,15 +22,16 @@ import com.fsryan.forsuredb.api.info.TableInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 public class CreateTempTableFromExisting extends QueryGenerator {
 
     private final TableInfo table;
+    private final List<ColumnInfo> sortedColumns;
     private final Map<String, ColumnInfo> excludedColumnsMap = new HashMap<>();
 
     public CreateTempTableFromExisting(TableInfo table, List<ColumnInfo> excludedColumns) {
@@ -38,8 +39,17 @@ public class CreateTempTableFromExisting extends QueryGenerator {
     }
 
     public CreateTempTableFromExisting(TableInfo table, ColumnInfo... excludedColumns) {
+        this(table, sortedColumnsOf(table), excludedColumns);
+    }
+
+    public CreateTempTableFromExisting(CompiledTable compiledTable, List<ColumnInfo> excludedColumns) {
+        this(compiledTable.getTable(), compiledTable.getSortedColumns(), excludedColumns.toArray(new ColumnInfo[excludedColumns.size()]));
+    }
+
+    private CreateTempTableFromExisting(TableInfo table, List<ColumnInfo> sortedColumns, ColumnInfo... excludedColumns) {
         super(table.getTableName(), Migration.Type.ADD_FOREIGN_KEY_REFERENCE);
         this.table = table;
+        this.sortedColumns = sortedColumns;
         for (ColumnInfo column : excludedColumns) {
             this.excludedColumnsMap.put(column.getColumnName(), column);
         }
@@ -47,17 +57,19 @@ public class CreateTempTableFromExisting extends QueryGenerator {
 
     @Override
     public List<String> generate() {
-        List<String> retList = new LinkedList<>();
+        List<String> retList = new ArrayList<>(2);
         retList.addAll(new DropTableGenerator(tempTableName()).generate());
         retList.add(getCopyTableQuery());
         return retList;
     }
 
     private String getCopyTableQuery() {
-        StringBuffer buf = new StringBuffer("CREATE TEMP TABLE ").append(tempTableName()).append(" AS SELECT ");
-        List<ColumnInfo> columns = new LinkedList<>(table.getColumns());
-        Collections.sort(columns);
-        for (ColumnInfo column : columns) {
+        int capacity = 64 + 2 * getTableName().length();
+        for (ColumnInfo column : sortedColumns) {
+            capacity += column.getColumnName().length() + 2;
+        }
+        StringBuilder buf = new StringBuilder(capacity).append("CREATE TEMP TABLE ").append(tempTableName()).append(" AS SELECT ");
+        for (ColumnInfo column : sortedColumns) {
             if (excludedColumnsMap.containsKey(column.getColumnName())) {
                 continue;
             }
@@ -66,6 +78,12 @@ public class CreateTempTableFromExisting extends QueryGenerator {
         return buf.append(" FROM ").append(getTableName()).append(";").toString();
     }
 
+    private static List<ColumnInfo> sortedColumnsOf(TableInfo table) {
+        List<ColumnInfo> ret = new ArrayList<>(table.getColumns());
+        Collections.sort(ret);
+        return ret;
+    }
+
     private String tempTableName() {
         return "temp_" + table.getTableName();
     }
@@ -0,0 +1,272 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>
+ *     Formats and parses dates in the fixed yyyy-MM-dd HH:mm:ss.SSS layout used by {@link SqlGenerator}. Unlike
+ *     {@link SimpleDateFormat}, instances hold no mutable state, so a single instance may be shared across threads
+ *     without locking, and {@link #formatTo(long, char[], int)}, {@link #appendTo(StringBuilder, long)} and
+ *     {@link #parseMillis(CharSequence)} do not allocate.
+ * </p>
+ * <p>
+ *     Output is identical to {@link SimpleDateFormat} with the same pattern and {@link TimeZone}. Dates before the
+ *     Gregorian cutover (year 1583) or after year 9999 and strings that are not exactly in the layout (which
+ *     {@link SimpleDateFormat} leniently accepts) are rare, so they are handed off to a new {@link SimpleDateFormat}
+ *     rather than reimplementing the Julian calendar and lenient parsing here.
+ * </p>
+ */
+public class DateCodec {
+
+    public static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    public static final int FORMATTED_LENGTH = 23;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    private static final int MIN_FAST_PATH_YEAR = 1583;
+    private static final int MAX_FAST_PATH_YEAR = 9999;
+    private static final long MIN_FAST_PATH_LOCAL_MILLIS = MILLIS_PER_DAY * daysFromCivil(MIN_FAST_PATH_YEAR, 1, 1);
+    private static final long MAX_FAST_PATH_LOCAL_MILLIS = MILLIS_PER_DAY * daysFromCivil(MAX_FAST_PATH_YEAR + 1, 1, 1) - 1;
+
+    private final TimeZone timeZone;
+
+    /**
+     * <p>
+     *     Creates a DateCodec for the default {@link TimeZone} as of the time of construction
+     * </p>
+     */
+    public DateCodec() {
+        this(TimeZone.getDefault());
+    }
+
+    public DateCodec(TimeZone timeZone) {
+        this.timeZone = (TimeZone) timeZone.clone();  // <-- TimeZone is mutable, so a private copy is never changed
+    }
+
+    public String format(Date date) {
+        final long localMillis = toLocalMillis(date.getTime());
+        if (!isInFastPathRange(localMillis)) {
+            return legacyFormat().format(date);
+        }
+        char[] buf = new char[FORMATTED_LENGTH];
+        writeLocal(localMillis, buf, 0);
+        return new String(buf);
+    }
+
+    /**
+     * <p>
+     *     Writes the formatted date to dest, starting at offset
+     * </p>
+     * @param epochMillis the milliseconds since the epoch
+     * @param dest the destination buffer, which must have at least {@link #FORMATTED_LENGTH} chars after offset (more
+     *             for years after 9999)
+     * @param offset the index into dest of the first char to write
+     * @return the index into dest after the last char written
+     */
+    public int formatTo(long epochMillis, char[] dest, int offset) {
+        final long localMillis = toLocalMillis(epochMillis);
+        if (isInFastPathRange(localMillis)) {
+            return writeLocal(localMillis, dest, offset);
+        }
+        final String formatted = legacyFormat().format(new Date(epochMillis));
+        formatted.getChars(0, formatted.length(), dest, offset);
+        return offset + formatted.length();
+    }
+
+    public StringBuilder appendTo(StringBuilder buf, long epochMillis) {
+        final long localMillis = toLocalMillis(epochMillis);
+        if (!isInFastPathRange(localMillis)) {
+            return buf.append(legacyFormat().format(new Date(epochMillis)));
+        }
+
+        final long days = floorDiv(localMillis, MILLIS_PER_DAY);
+        final int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+        final int yearMonthDay = civilFromDays(days);
+        appendDigits(buf, yearMonthDay / 10000, 4).append('-');
+        appendDigits(buf, yearMonthDay / 100 % 100, 2).append('-');
+        appendDigits(buf, yearMonthDay % 100, 2).append(' ');
+        appendDigits(buf, millisOfDay / 3600000, 2).append(':');
+        appendDigits(buf, millisOfDay / 60000 % 60, 2).append(':');
+        appendDigits(buf, millisOfDay / 1000 % 60, 2).append('.');
+        return appendDigits(buf, millisOfDay % 1000, 3);
+    }
+
+    public Date parse(CharSequence dateStr) throws ParseException {
+        return new Date(parseMillis(dateStr));
+    }
+
+    /**
+     * @param dateStr a date in the yyyy-MM-dd HH:mm:ss.SSS layout
+     * @return the milliseconds since the epoch
+     * @throws ParseException if dateStr could not be parsed
+     */
+    public long parseMillis(CharSequence dateStr) throws ParseException {
+        if (dateStr.length() != FORMATTED_LENGTH
+                || dateStr.charAt(4) != '-' || dateStr.charAt(7) != '-' || dateStr.charAt(10) != ' '
+                || dateStr.charAt(13) != ':' || dateStr.charAt(16) != ':' || dateStr.charAt(19) != '.') {
+            return legacyParse(dateStr);
+        }
+
+        final int year = digits(dateStr, 0, 4);
+        final int month = digits(dateStr, 5, 2);
+        final int day = digits(dateStr, 8, 2);
+        final int hour = digits(dateStr, 11, 2);
+        final int minute = digits(dateStr, 14, 2);
+        final int second = digits(dateStr, 17, 2);
+        final int millis = digits(dateStr, 20, 3);
+        if (year < MIN_FAST_PATH_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || millis < 0) {
+            return legacyParse(dateStr);  // <-- also handles the lenient rolling over of out of range fields
+        }
+
+        final long localMillis = daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * 3600000L + minute * 60000L + second * 1000L + millis;
+        return toEpochMillis(localMillis);
+    }
+
+    private int writeLocal(long localMillis, char[] dest, int offset) {
+        final long days = floorDiv(localMillis, MILLIS_PER_DAY);
+        final int millisOfDay = (int) (localMillis - days * MILLIS_PER_DAY);
+        final int yearMonthDay = civilFromDays(days);
+        offset = writeDigits(dest, offset, yearMonthDay / 10000, 4);
+        dest[offset++] = '-';
+        offset = writeDigits(dest, offset, yearMonthDay / 100 % 100, 2);
+        dest[offset++] = '-';
+        offset = writeDigits(dest, offset, yearMonthDay % 100, 2);
+        dest[offset++] = ' ';
+        offset = writeDigits(dest, offset, millisOfDay / 3600000, 2);
+        dest[offset++] = ':';
+        offset = writeDigits(dest, offset, millisOfDay / 60000 % 60, 2);
+        dest[offset++] = ':';
+        offset = writeDigits(dest, offset, millisOfDay / 1000 % 60, 2);
+        dest[offset++] = '.';
+        return writeDigits(dest, offset, millisOfDay % 1000, 3);
+    }
+
+    private long toLocalMillis(long epochMillis) {
+        return epochMillis + timeZone.getOffset(epochMillis);
+    }
+
+    /**
+     * <p>
+     *     Resolves local wall-clock time as {@link java.util.GregorianCalendar} does: a time skipped by a transition
+     *     is interpreted using the offset from before the transition, and a time that occurs twice is interpreted as
+     *     the later of the two instants.
+     * </p>
+     */
+    private long toEpochMillis(long localMillis) {
+        final int offsetBefore = timeZone.getOffset(localMillis - MILLIS_PER_DAY);
+        final int offsetAfter = timeZone.getOffset(localMillis + MILLIS_PER_DAY);
+        if (offsetBefore == offsetAfter) {
+            return localMillis - offsetAfter;
+        }
+        final long afterCandidate = localMillis - offsetAfter;
+        return timeZone.getOffset(afterCandidate) == offsetAfter ? afterCandidate : localMillis - offsetBefore;
+    }
+
+    private SimpleDateFormat legacyFormat() {
+        SimpleDateFormat ret = new SimpleDateFormat(PATTERN);
+        ret.setTimeZone(timeZone);
+        return ret;
+    }
+
+    private long legacyParse(CharSequence dateStr) throws ParseException {
+        return legacyFormat().parse(dateStr.toString()).getTime();
+    }
+
+    private static boolean isInFastPathRange(long localMillis) {
+        return localMillis >= MIN_FAST_PATH_LOCAL_MILLIS && localMillis <= MAX_FAST_PATH_LOCAL_MILLIS;
+    }
+
+    // returns -1 if any char is not a digit so that the field fails range checks
+    private static int digits(CharSequence s, int start, int count) {
+        int ret = 0;
+        for (int i = start; i < start + count; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            ret = ret * 10 + digit;
+        }
+        return ret;
+    }
+
+    private static int writeDigits(char[] dest, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            dest[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + count;
+    }
+
+    private static StringBuilder appendDigits(StringBuilder buf, int value, int count) {
+        for (int divisor = count == 4 ? 1000 : count == 3 ? 100 : 10; divisor > 0; divisor /= 10) {
+            buf.append((char) ('0' + value / divisor % 10));
+        }
+        return buf;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+            case 4:
+                // intentionally falling through
+            case 6:
+                // intentionally falling through
+            case 9:
+                // intentionally falling through
+            case 11:
+                return 30;
+        }
+        return 31;
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+    }
+
+    // proleptic Gregorian days since 1970-01-01; see http://howardhinnant.github.io/date_algorithms.html
+    private static long daysFromCivil(int year, int month, int day) {
+        final long y = month <= 2 ? year - 1 : year;
+        final long era = (y >= 0 ? y : y - 399) / 400;
+        final long yearOfEra = y - era * 400;
+        final long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // the inverse of daysFromCivil, packed as year * 10000 + month * 100 + day
+    private static int civilFromDays(long days) {
+        final long z = days + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final long dayOfEra = z - era * 146097;
+        final long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        final long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        final long mp = (5 * dayOfYear + 2) / 153;
+        final int day = (int) (dayOfYear - (153 * mp + 2) / 5 + 1);
+        final int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        final int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+        return year * 10000 + month * 100 + day;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+
+import java.text.ParseException;
+import java.util.Date;
+
+/**
+ * <p>
+ *     How {@link java.util.Date} columns (including the created and modified columns of every table) are stored
+ * </p>
+ */
+public enum DateStorage {
+    /**
+     * <p>
+     *     DATETIME text in the yyyy-MM-dd HH:mm:ss.SSS layout. This is the default.
+     * </p>
+     */
+    TEXT("DATETIME", SqlGenerator.CURRENT_UTC_TIME),
+    /**
+     * <p>
+     *     INTEGER milliseconds since the epoch. Rows and indices are smaller, and comparisons are integer comparisons
+     *     rather than string comparisons.
+     * </p>
+     */
+    EPOCH_MILLIS("INTEGER", SqlGenerator.CURRENT_UTC_TIME_MILLIS);
+
+    private static final DateCodec dateCodec = new DateCodec();
+
+    private final String sqlType;
+    private final String currentTimeSql;
+
+    DateStorage(String sqlType, String currentTimeSql) {
+        this.sqlType = sqlType;
+        this.currentTimeSql = currentTimeSql;
+    }
+
+    /**
+     * @return the SQL type of date columns
+     */
+    public String getSqlType() {
+        return sqlType;
+    }
+
+    /**
+     * @return an SQL expression that evaluates to the current time
+     */
+    public String getCurrentTimeSql() {
+        return currentTimeSql;
+    }
+
+    /*package*/ String sqlTypeOf(ColumnInfo column) {
+        TypeTranslator tt = TypeTranslator.from(column.getQualifiedType());
+        return tt == TypeTranslator.DATE ? sqlType : tt.getSqlString();
+    }
+
+    /**
+     * @return the text that follows DEFAULT in a column definition
+     */
+    /*package*/ String defaultValueOf(ColumnInfo column) {
+        TypeTranslator tt = TypeTranslator.from(column.getQualifiedType());
+        if (tt != TypeTranslator.DATE) {
+            return " '" + column.getDefaultValue() + "'";
+        }
+        if ("CURRENT_TIMESTAMP".equals(column.getDefaultValue())) {
+            return "(" + currentTimeSql + ")";
+        }
+        if (this == EPOCH_MILLIS) {
+            try {
+                return " '" + dateCodec.parseMillis(column.getDefaultValue()) + "'";
+            } catch (ParseException pe) {
+                // the default value is not in the text layout; so use it as-is
+            }
+        }
+        return " '" + column.getDefaultValue() + "'";
+    }
+
+    /*package*/ String format(Date date) {
+        return this == EPOCH_MILLIS ? Long.toString(date.getTime()) : dateCodec.format(date);
+    }
+
+    /**
+     * <p>
+     *     When dates are stored as {@link #EPOCH_MILLIS}, text dates are still accepted so that values written before
+     *     the conversion from {@link #TEXT} can be read.
+     * </p>
+     */
+    /*package*/ Date parse(String dateStr) throws ParseException {
+        if (this == EPOCH_MILLIS && isInteger(dateStr)) {
+            return new Date(Long.parseLong(dateStr));
+        }
+        return dateCodec.parse(dateStr);
+    }
+
+    private static boolean isInteger(String s) {
+        if (s.isEmpty() || s.length() > 19) {
+            return false;
+        }
+        for (int i = s.charAt(0) == '-' && s.length() > 1 ? 1 : 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+
+import java.util.Map;
+
+/**
+ * <p>
+ *     Recreates a table whose date columns are stored as {@link DateStorage#TEXT} so that they are stored as
+ *     {@link DateStorage#EPOCH_MILLIS}. Text values in columns that default to CURRENT_TIMESTAMP were written by
+ *     SQLite, so they are read as UTC. Text values in other date columns were written by
+ *     {@link SqlGenerator#formatDate(java.util.Date)}, so they are read in the local time zone of the database
+ *     connection. Values that are not text (such as NULL) are copied as-is.
+ * </p>
+ */
+public class DateStorageConversionGenerator extends RecreateTableGenerator {
+
+    public DateStorageConversionGenerator(String tableName, Map<String, TableInfo> targetSchema) {
+        super(tableName, targetSchema, Migration.Type.CHANGE_DEFAULT_VALUE, GenerationOptions.builder()
+                .dateStorage(DateStorage.EPOCH_MILLIS)
+                .build());
+    }
+
+    public DateStorageConversionGenerator(String tableName, Map<String, TableInfo> targetSchema, GenerationOptions options) {
+        this(tableName, new CompiledSchema(targetSchema, options));
+    }
+
+    public DateStorageConversionGenerator(String tableName, CompiledSchema compiledSchema) {
+        super(tableName, compiledSchema, Migration.Type.CHANGE_DEFAULT_VALUE);
+        if (options.getDateStorage() != DateStorage.EPOCH_MILLIS) {
+            throw new IllegalArgumentException("Can only convert to " + DateStorage.EPOCH_MILLIS + "; options had " + options.getDateStorage());
+        }
+    }
+
+    @Override
+    protected String reinsertExpressionOf(ColumnInfo column) {
+        if (TypeTranslator.from(column.getQualifiedType()) != TypeTranslator.DATE) {
+            return super.reinsertExpressionOf(column);
+        }
+        final String columnName = column.getColumnName();
+        final String modifiers = "CURRENT_TIMESTAMP".equals(column.getDefaultValue()) ? "" : ", 'utc'";
+        return "CASE WHEN TYPEOF(" + columnName + ")='text'"
+                + " THEN CAST(STRFTIME('%s', " + columnName + modifiers + ") AS INTEGER) * 1000"
+                + " + CAST(SUBSTR(STRFTIME('%f', " + columnName + modifiers + "), 4) AS INTEGER)"
+                + " ELSE " + columnName + " END";
+    }
+}
@@ -20,7 +20,7 @@ package com.fsryan.forsuredb.sqlitelib;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DropTableGenerator extends QueryGenerator {
@@ -31,7 +31,7 @@ public class DropTableGenerator extends QueryGenerator {
 
     @Override
     public List<String> generate() {
-        List<String> retList = new LinkedList<>();
+        List<String> retList = new ArrayList<>();
         retList.add("DROP TABLE IF EXISTS " + getTableName() + ";");
         return retList;
     }
@@ -0,0 +1,129 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     A {@link MigrationPlanCache} that stores each plan in its own file, named by the hexadecimal fingerprint, in a
+ *     directory such as an application's cache directory. A plan is written to a temporary file that is then renamed,
+ *     so a crash never leaves a partially written plan under the fingerprint's name, and it is read through a
+ *     memory-mapped buffer. Plans that cannot be read are treated as missing, and plans that cannot be written are
+ *     not cached.
+ * </p>
+ * <p>
+ *     The format is the magic number 0x46535150, the fingerprint, the number of statements and then each statement
+ *     as its length in bytes followed by its UTF-8 bytes.
+ * </p>
+ */
+public class FileMigrationPlanCache implements MigrationPlanCache {
+
+    private static final int MAGIC = 0x46535150;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String FILE_EXTENSION = ".plan";
+
+    private final File directory;
+
+    /**
+     * @param directory the directory in which to store the plans; it is created if it does not exist
+     */
+    public FileMigrationPlanCache(File directory) {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory must not be null");
+        }
+        this.directory = directory;
+    }
+
+    @Override
+    public List<String> get(long fingerprint) {
+        File planFile = planFileOf(fingerprint);
+        if (!planFile.isFile()) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(planFile);
+            try {
+                FileChannel channel = in.getChannel();
+                return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), fingerprint);
+            } finally {
+                in.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;    // <-- a truncated or corrupt plan is regenerated
+        }
+    }
+
+    @Override
+    public void put(long fingerprint, List<String> migrationSql) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        File tempFile = new File(directory, Long.toHexString(fingerprint) + FILE_EXTENSION + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeLong(fingerprint);
+                out.writeInt(migrationSql.size());
+                for (String sql : migrationSql) {
+                    byte[] bytes = sql.getBytes(UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(planFileOf(fingerprint))) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            tempFile.delete();   // <-- the plan will be generated again next time
+        }
+    }
+
+    private File planFileOf(long fingerprint) {
+        return new File(directory, Long.toHexString(fingerprint) + FILE_EXTENSION);
+    }
+
+    private static List<String> read(ByteBuffer buf, long fingerprint) throws IOException {
+        if (buf.getInt() != MAGIC || buf.getLong() != fingerprint) {
+            return null;
+        }
+        final int size = buf.getInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> ret = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            ret.add(new String(bytes, UTF_8));
+        }
+        if (buf.hasRemaining()) {
+            return null;
+        }
+        return Collections.unmodifiableList(ret);
+    }
+}
@@ -0,0 +1,402 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>
+ *     Immutable options that control the SQL that {@link SqlGenerator} and the query generators produce. Use
+ *     {@link #builder()} to create options that differ from {@link #DEFAULT}. The same options must be used for
+ *     schema migrations and for runtime SQL generation so that they agree with each other.
+ * </p>
+ */
+public class GenerationOptions {
+
+    public static final GenerationOptions DEFAULT = builder().build();
+
+    private final DateStorage dateStorage;
+    private final RebuildStrategy rebuildStrategy;
+    private final boolean wrapMigrationsInTransaction;
+    private final int rebuildCacheSizeKiB;
+    private final boolean indexForeignKeys;
+    private final ModifiedTimestampMode modifiedTimestampMode;
+    private final Set<String> withoutRowidTableNames;
+    private final boolean withoutRowidForCompositePrimaryKeys;
+    private final Map<String, List<IndexInfo>> tableIndices;
+    private final Set<String> chunkedRebuildTableNames;
+    private final Set<String> shadowRebuildTableNames;
+    private final int rebuildChunkSize;
+
+    private GenerationOptions(Builder builder) {
+        dateStorage = builder.dateStorage;
+        rebuildStrategy = builder.rebuildStrategy;
+        wrapMigrationsInTransaction = builder.wrapMigrationsInTransaction;
+        rebuildCacheSizeKiB = builder.rebuildCacheSizeKiB;
+        indexForeignKeys = builder.indexForeignKeys;
+        modifiedTimestampMode = builder.modifiedTimestampMode;
+        withoutRowidTableNames = Collections.unmodifiableSet(new HashSet<>(builder.withoutRowidTableNames));
+        withoutRowidForCompositePrimaryKeys = builder.withoutRowidForCompositePrimaryKeys;
+        tableIndices = new HashMap<>(builder.tableIndices.size());
+        for (Map.Entry<String, List<IndexInfo>> entry : builder.tableIndices.entrySet()) {
+            tableIndices.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        chunkedRebuildTableNames = Collections.unmodifiableSet(new HashSet<>(builder.chunkedRebuildTableNames));
+        shadowRebuildTableNames = Collections.unmodifiableSet(new HashSet<>(builder.shadowRebuildTableNames));
+        rebuildChunkSize = builder.rebuildChunkSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return how {@link java.util.Date} columns are stored
+     */
+    public DateStorage getDateStorage() {
+        return dateStorage;
+    }
+
+    /**
+     * @return how tables are rebuilt when ALTER TABLE cannot perform a migration
+     */
+    public RebuildStrategy getRebuildStrategy() {
+        return rebuildStrategy;
+    }
+
+    /**
+     * @return whether {@link SqlGenerator#generateMigrationSql(com.fsryan.forsuredb.api.migration.MigrationSet)}
+     * wraps the migration in a transaction
+     */
+    public boolean wrapMigrationsInTransaction() {
+        return wrapMigrationsInTransaction;
+    }
+
+    /**
+     * @return the page cache size, in KiB, that {@link MigrationTransaction#getPragmaSql()} sets while tables are
+     * rebuilt
+     */
+    public int getRebuildCacheSizeKiB() {
+        return rebuildCacheSizeKiB;
+    }
+
+    /**
+     * @return whether tables are created with an index on each of their foreign keys
+     */
+    public boolean indexForeignKeys() {
+        return indexForeignKeys;
+    }
+
+    /**
+     * @return how the modified column is kept current
+     */
+    public ModifiedTimestampMode getModifiedTimestampMode() {
+        return modifiedTimestampMode;
+    }
+
+    /**
+     * @return the names of the tables that are created WITHOUT ROWID
+     */
+    public Set<String> getWithoutRowidTableNames() {
+        return withoutRowidTableNames;
+    }
+
+    /**
+     * @return whether tables that have a composite primary key are created WITHOUT ROWID when they can be
+     */
+    public boolean withoutRowidForCompositePrimaryKeys() {
+        return withoutRowidForCompositePrimaryKeys;
+    }
+
+    /**
+     * @param tableName the name of a table
+     * @return the composite, partial and covering indices of the table, in the order they were added, which are
+     * created along with the table whenever it is created or rebuilt
+     */
+    public List<IndexInfo> getIndicesOf(String tableName) {
+        List<IndexInfo> ret = tableIndices.get(tableName);
+        return ret == null ? Collections.<IndexInfo>emptyList() : ret;
+    }
+
+    /**
+     * @return the names of the tables that are rebuilt by a {@link ChunkedRebuildPlan}
+     */
+    public Set<String> getChunkedRebuildTableNames() {
+        return chunkedRebuildTableNames;
+    }
+
+    /**
+     * @return the names of the tables whose {@link ChunkedRebuildPlan} mirrors the writes to the table while the
+     * rows are copied; these are also in {@link #getChunkedRebuildTableNames()}
+     */
+    public Set<String> getShadowRebuildTableNames() {
+        return shadowRebuildTableNames;
+    }
+
+    /**
+     * @return the maximum number of rows that each chunk of a {@link ChunkedRebuildPlan} copies
+     */
+    public int getRebuildChunkSize() {
+        return rebuildChunkSize;
+    }
+
+    public static class Builder {
+
+        private DateStorage dateStorage = DateStorage.TEXT;
+        private RebuildStrategy rebuildStrategy = RebuildStrategy.TEMP_TABLE_COPY;
+        private boolean wrapMigrationsInTransaction = false;
+        private int rebuildCacheSizeKiB = 32768;
+        private boolean indexForeignKeys = true;
+        private ModifiedTimestampMode modifiedTimestampMode = ModifiedTimestampMode.TRIGGER;
+        private final Set<String> withoutRowidTableNames = new HashSet<>();
+        private boolean withoutRowidForCompositePrimaryKeys = false;
+        private final Map<String, List<IndexInfo>> tableIndices = new HashMap<>();
+        private final Set<String> chunkedRebuildTableNames = new HashSet<>();
+        private final Set<String> shadowRebuildTableNames = new HashSet<>();
+        private int rebuildChunkSize = 10000;
+
+        private Builder() {}
+
+        /**
+         * @param dateStorage how {@link java.util.Date} columns should be stored; defaults to {@link DateStorage#TEXT}
+         * @return this Builder
+         */
+        public Builder dateStorage(DateStorage dateStorage) {
+            if (dateStorage == null) {
+                throw new IllegalArgumentException("dateStorage must not be null");
+            }
+            this.dateStorage = dateStorage;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Either strategy drops the rebuilt table, so foreign key enforcement must be off while the migration
+         *     SQL runs; see {@link RebuildStrategy}.
+         * </p>
+         * @param rebuildStrategy how tables should be rebuilt; defaults to {@link RebuildStrategy#TEMP_TABLE_COPY}
+         * @return this Builder
+         */
+        public Builder rebuildStrategy(RebuildStrategy rebuildStrategy) {
+            if (rebuildStrategy == null) {
+                throw new IllegalArgumentException("rebuildStrategy must not be null");
+            }
+            this.rebuildStrategy = rebuildStrategy;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     When true, the migration SQL is run in one BEGIN IMMEDIATE ... COMMIT transaction rather than
+         *     committing each statement on its own. The wrapped SQL neither changes PRAGMAs nor checks foreign keys:
+         *     when tables are rebuilt, foreign key enforcement must be off before BEGIN, or dropping the old table
+         *     deletes or nulls the rows that reference it. Use
+         *     {@link SqlGenerator#generateMigrationTransaction(com.fsryan.forsuredb.api.migration.MigrationSet)}
+         *     to get those PRAGMAs and the foreign key checks separately. Do not use this when the migration SQL is
+         *     run inside a transaction that is already open, such as in Android's SQLiteOpenHelper.onUpgrade.
+         *     Defaults to false.
+         * </p>
+         * @param wrapMigrationsInTransaction whether to wrap the migration SQL in a transaction
+         * @return this Builder
+         */
+        public Builder wrapMigrationsInTransaction(boolean wrapMigrationsInTransaction) {
+            this.wrapMigrationsInTransaction = wrapMigrationsInTransaction;
+            return this;
+        }
+
+        /**
+         * @param rebuildCacheSizeKiB the page cache size, in KiB, that {@link MigrationTransaction#getPragmaSql()}
+         *                            sets while tables are rebuilt; defaults to 32768
+         * @return this Builder
+         */
+        public Builder rebuildCacheSizeKiB(int rebuildCacheSizeKiB) {
+            if (rebuildCacheSizeKiB < 1) {
+                throw new IllegalArgumentException("rebuildCacheSizeKiB must be positive; was " + rebuildCacheSizeKiB);
+            }
+            this.rebuildCacheSizeKiB = rebuildCacheSizeKiB;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     SQLite does not index the child columns of a foreign key, so without an index, every update or delete
+         *     of a parent row scans the child table. When true, tables are created and rebuilt with an index on each
+         *     foreign key unless its columns already lead the primary key or an index or one of them is unique.
+         *     Defaults to true.
+         * </p>
+         * @param indexForeignKeys whether to index the columns of each foreign key
+         * @return this Builder
+         */
+        public Builder indexForeignKeys(boolean indexForeignKeys) {
+            this.indexForeignKeys = indexForeignKeys;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Switching an existing database to {@link ModifiedTimestampMode#GUARDED_TRIGGER} requires running
+         *     {@link SqlGenerator#generateModifiedTriggerSql(java.util.Map)} once; switching to
+         *     {@link ModifiedTimestampMode#INLINE} happens in the next migration.
+         * </p>
+         * @param modifiedTimestampMode how the modified column should be kept current; defaults to
+         *                              {@link ModifiedTimestampMode#TRIGGER}
+         * @return this Builder
+         */
+        public Builder modifiedTimestampMode(ModifiedTimestampMode modifiedTimestampMode) {
+            if (modifiedTimestampMode == null) {
+                throw new IllegalArgumentException("modifiedTimestampMode must not be null");
+            }
+            this.modifiedTimestampMode = modifiedTimestampMode;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     A WITHOUT ROWID table stores its rows in its primary key index rather than in a rowid B-tree plus a
+         *     separate primary key index. The table must have a primary key that does not include _id, which is
+         *     then an ordinary column that is not assigned on insertion. Creating or rebuilding the table fails
+         *     with an {@link IllegalArgumentException} otherwise. WITHOUT ROWID requires SQLite 3.8.2 or later.
+         * </p>
+         * @param tableName the name of a table to create WITHOUT ROWID
+         * @return this Builder
+         */
+        public Builder withoutRowid(String tableName) {
+            if (tableName == null || tableName.isEmpty()) {
+                throw new IllegalArgumentException("tableName must not be empty");
+            }
+            withoutRowidTableNames.add(tableName);
+            return this;
+        }
+
+        /**
+         * <p>
+         *     When true, each table that has a composite primary key that does not include _id is created WITHOUT
+         *     ROWID (see {@link #withoutRowid(String)}) unless a foreign key of the schema references its _id column.
+         *     Defaults to false.
+         * </p>
+         * @param withoutRowidForCompositePrimaryKeys whether to create composite primary key tables WITHOUT ROWID
+         * @return this Builder
+         */
+        public Builder withoutRowidForCompositePrimaryKeys(boolean withoutRowidForCompositePrimaryKeys) {
+            this.withoutRowidForCompositePrimaryKeys = withoutRowidForCompositePrimaryKeys;
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Adds an index that {@link com.fsryan.forsuredb.api.info.ColumnInfo} cannot describe to the schema.
+         *     The index is created along with its table whenever the table is created or rebuilt, so a table rebuild
+         *     does not lose it. To add it to a table that already exists, also add an ADD_INDEX migration with the
+         *     index definition in its {@link IndexInfo#MIGRATION_EXTRA_KEY} extra.
+         * </p>
+         * @param index the index
+         * @return this Builder
+         * @throws IllegalArgumentException if a different index with the same name was already added, which
+         * CREATE INDEX IF NOT EXISTS would silently skip. For the same reason, compiling a schema in which the index
+         * has the name of the index of a column or foreign key of its table throws an IllegalArgumentException.
+         */
+        public Builder index(IndexInfo index) {
+            if (index == null) {
+                throw new IllegalArgumentException("index must not be null");
+            }
+            for (List<IndexInfo> added : tableIndices.values()) {
+                for (IndexInfo addedIndex : added) {
+                    if (addedIndex.getName().equals(index.getName()) && !addedIndex.equals(index)) {
+                        throw new IllegalArgumentException("Index name " + index.getName() + " is already used by " + addedIndex);
+                    }
+                }
+            }
+            List<IndexInfo> indices = tableIndices.get(index.getTableName());
+            if (indices == null) {
+                indices = new ArrayList<>();
+                tableIndices.put(index.getTableName(), indices);
+            }
+            indices.add(index);
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Rebuilding a table in one INSERT ... SELECT holds the write lock for the whole copy, and a crash
+         *     loses all of its progress. When a migration would rebuild this table,
+         *     {@link SqlGenerator#generateMigrationSql(com.fsryan.forsuredb.api.migration.MigrationSet)} leaves the
+         *     rebuild out, and {@link SqlGenerator#generateChunkedRebuildPlans(com.fsryan.forsuredb.api.migration.MigrationSet)}
+         *     returns a {@link ChunkedRebuildPlan} that copies the rows in resumable chunks instead. The chunks are
+         *     copied in rowid order, so the table must not be WITHOUT ROWID.
+         * </p>
+         * @param tableName the name of a table to rebuild in chunks
+         * @return this Builder
+         */
+        public Builder chunkedRebuild(String tableName) {
+            if (tableName == null || tableName.isEmpty()) {
+                throw new IllegalArgumentException("tableName must not be empty");
+            }
+            chunkedRebuildTableNames.add(tableName);
+            return this;
+        }
+
+        /**
+         * <p>
+         *     Like {@link #chunkedRebuild(String)}, but the table stays writable while its rows are copied: the
+         *     {@link ChunkedRebuildPlan} also installs triggers that mirror each insert, update and delete of the table
+         *     into the shadow table, and the chunks replace rows that were already mirrored. The primary key columns of
+         *     the rebuilt table, which identify the mirrored rows, must already exist in the table.
+         * </p>
+         * @param tableName the name of a table to rebuild in chunks while it is written
+         * @return this Builder
+         */
+        public Builder shadowRebuild(String tableName) {
+            chunkedRebuild(tableName);
+            shadowRebuildTableNames.add(tableName);
+            return this;
+        }
+
+        /**
+         * @param rebuildChunkSize the maximum number of rows that each chunk of a {@link ChunkedRebuildPlan}
+         *                         copies in its own transaction; defaults to 10000
+         * @return this Builder
+         */
+        public Builder rebuildChunkSize(int rebuildChunkSize) {
+            if (rebuildChunkSize < 1) {
+                throw new IllegalArgumentException("rebuildChunkSize must be positive; was " + rebuildChunkSize);
+            }
+            this.rebuildChunkSize = rebuildChunkSize;
+            return this;
+        }
+
+        /**
+         * @return the GenerationOptions
+         * @throws IllegalArgumentException if a table is both WITHOUT ROWID and rebuilt in chunks, which are copied
+         * in rowid order
+         */
+        public GenerationOptions build() {
+            for (String tableName : chunkedRebuildTableNames) {
+                if (withoutRowidTableNames.contains(tableName)) {
+                    throw new IllegalArgumentException("Cannot rebuild WITHOUT ROWID table " + tableName + " in chunks: the chunks are copied in rowid order");
+                }
+            }
+            return new GenerationOptions(this);
+        }
+    }
+}
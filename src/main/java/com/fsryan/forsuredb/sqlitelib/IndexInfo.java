@@ -0,0 +1,391 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     Describes an index that {@link AddIndexGenerator} cannot describe: one that has multiple key columns, each
+ *     sorted ASC or DESC, a WHERE predicate that makes it a partial index, or extra columns that make it a covering
+ *     index. SQLite has no INCLUDE clause, so covering columns are appended to the key after the key columns. For that
+ *     reason, a unique index cannot have covering columns: they would become part of the unique key.
+ * </p>
+ * <p>
+ *     Index definitions come from the "index" extra of {@link com.fsryan.forsuredb.api.migration.Migration.Type#ADD_INDEX}
+ *     and {@link com.fsryan.forsuredb.api.migration.Migration.Type#ADD_UNIQUE_INDEX} migrations (see
+ *     {@link #fromJson(String, String)}) and from {@link GenerationOptions.Builder#index(IndexInfo)}.
+ * </p>
+ */
+public class IndexInfo {
+
+    /**
+     * <p>
+     *     The key of the {@link com.fsryan.forsuredb.api.migration.Migration} extra that holds the JSON index
+     *     definition
+     * </p>
+     */
+    public static final String MIGRATION_EXTRA_KEY = "index";
+
+    // sets default names apart from the names of the indices of ColumnInfo columns, which are <table>_<column>
+    /*package*/ static final String DEFAULT_NAME_PREFIX = "idx_";
+
+    private final String tableName;
+    private final String name;
+    private final boolean unique;
+    private final List<Column> columns;
+    private final String where;
+    private final List<String> coveringColumns;
+
+    private IndexInfo(Builder builder) {
+        tableName = builder.tableName;
+        unique = builder.unique;
+        columns = Collections.unmodifiableList(new ArrayList<>(builder.columns));
+        where = builder.where;
+        coveringColumns = Collections.unmodifiableList(new ArrayList<>(builder.coveringColumns));
+        name = builder.name == null || builder.name.isEmpty() ? defaultName() : builder.name;
+    }
+
+    public static Builder builder(String tableName) {
+        return new Builder(tableName);
+    }
+
+    /**
+     * <p>
+     *     Parses the JSON form of an index definition, for example:
+     * </p>
+     * <pre>
+     * {"index_name": "orders_by_customer", "unique": false,
+     *  "columns": [{"column_name": "customer_id"}, {"column_name": "placed", "descending": true}],
+     *  "where": "deleted = 0", "covering_columns": ["total"]}
+     * </pre>
+     * <p>
+     *     Only columns is required.
+     * </p>
+     * @param tableName the name of the indexed table
+     * @param json the JSON index definition
+     * @return the {@link IndexInfo}
+     * @throws IllegalArgumentException if the JSON is not an index definition
+     */
+    public static IndexInfo fromJson(String tableName, String json) {
+        return fromJson(tableName, json, false);
+    }
+
+    /*package*/ static IndexInfo fromJson(String tableName, String json, boolean forceUnique) {
+        if (json == null) {
+            throw new IllegalArgumentException("Not an index definition: null");
+        }
+        Builder builder = builder(tableName).unique(forceUnique);
+        boolean hasColumns = false;
+        JsonReader reader = MigrationExtras.readerOf(json);
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                throw new IllegalArgumentException("Not an index definition: " + json);
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "index_name":
+                        builder.name(MigrationExtras.readString(reader));
+                        break;
+                    case "unique":
+                        builder.unique(forceUnique || MigrationExtras.readBoolean(reader));
+                        break;
+                    case "columns":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            break;
+                        }
+                        hasColumns = true;
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            readColumn(reader, builder);
+                        }
+                        reader.endArray();
+                        break;
+                    case "where":
+                        builder.where(MigrationExtras.readString(reader));
+                        break;
+                    case "covering_columns":
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            break;
+                        }
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            builder.coveringColumn(MigrationExtras.readString(reader));
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Not an index definition: " + json, e);
+        }
+        if (!hasColumns) {
+            throw new IllegalArgumentException("Not an index definition: " + json);
+        }
+        return builder.build();
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the name of the index. Unless set, this is idx_ and the table name followed by the key column names, each
+     * followed by _desc if it is sorted DESC, then by _covering and the covering column names if there are any, all
+     * separated by underscores, and finally by _partial if the index has a WHERE predicate.
+     */
+    public String getName() {
+        return name;
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * @return the key columns, in order
+     */
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the WHERE predicate of a partial index or null if the index is not partial
+     */
+    public String getWhere() {
+        return where;
+    }
+
+    /**
+     * @return the columns appended to the key so that queries can be answered from the index alone
+     */
+    public List<String> getCoveringColumns() {
+        return coveringColumns;
+    }
+
+    private String defaultName() {
+        StringBuilder buf = new StringBuilder(DEFAULT_NAME_PREFIX).append(tableName);
+        for (Column column : columns) {
+            buf.append('_').append(column.getName());
+            if (column.isDescending()) {
+                buf.append("_desc");
+            }
+        }
+        if (!coveringColumns.isEmpty()) {
+            buf.append("_covering");
+            for (String coveringColumn : coveringColumns) {
+                buf.append('_').append(coveringColumn);
+            }
+        }
+        return where == null ? buf.toString() : buf.append("_partial").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        IndexInfo indexInfo = (IndexInfo) o;
+
+        if (unique != indexInfo.unique) return false;
+        if (!tableName.equals(indexInfo.tableName)) return false;
+        if (!name.equals(indexInfo.name)) return false;
+        if (!columns.equals(indexInfo.columns)) return false;
+        if (where != null ? !where.equals(indexInfo.where) : indexInfo.where != null) return false;
+        return coveringColumns.equals(indexInfo.coveringColumns);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = tableName.hashCode();
+        result = 31 * result + name.hashCode();
+        result = 31 * result + (unique ? 1 : 0);
+        result = 31 * result + columns.hashCode();
+        result = 31 * result + (where != null ? where.hashCode() : 0);
+        result = 31 * result + coveringColumns.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "IndexInfo{tableName=" + tableName + ", name=" + name + ", unique=" + unique + ", columns=" + columns
+                + ", where=" + where + ", coveringColumns=" + coveringColumns + "}";
+    }
+
+    /**
+     * <p>
+     *     A key column of an index and its sort order
+     * </p>
+     */
+    public static class Column {
+
+        private final String name;
+        private final boolean descending;
+
+        public Column(String name, boolean descending) {
+            this.name = name;
+            this.descending = descending;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDescending() {
+            return descending;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Column column = (Column) o;
+            return descending == column.descending && name.equals(column.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * name.hashCode() + (descending ? 1 : 0);
+        }
+
+        @Override
+        public String toString() {
+            return name + (descending ? " DESC" : " ASC");
+        }
+    }
+
+    public static class Builder {
+
+        private final String tableName;
+        private final List<Column> columns = new ArrayList<>();
+        private final List<String> coveringColumns = new ArrayList<>();
+        private String name;
+        private boolean unique;
+        private String where;
+
+        private Builder(String tableName) {
+            if (tableName == null || tableName.isEmpty()) {
+                throw new IllegalArgumentException("tableName must not be empty");
+            }
+            this.tableName = tableName;
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder unique(boolean unique) {
+            this.unique = unique;
+            return this;
+        }
+
+        /**
+         * @param columnName the name of the next key column, which is sorted ASC
+         * @return this Builder
+         */
+        public Builder column(String columnName) {
+            return column(columnName, false);
+        }
+
+        /**
+         * @param columnName the name of the next key column
+         * @param descending whether the column is sorted DESC
+         * @return this Builder
+         */
+        public Builder column(String columnName, boolean descending) {
+            if (columnName == null || columnName.isEmpty()) {
+                throw new IllegalArgumentException("columnName must not be empty");
+            }
+            columns.add(new Column(columnName, descending));
+            return this;
+        }
+
+        /**
+         * @param where the WHERE predicate, without the WHERE keyword, of a partial index
+         * @return this Builder
+         */
+        public Builder where(String where) {
+            this.where = where == null || where.isEmpty() ? null : where;
+            return this;
+        }
+
+        /**
+         * @param columnName a column to append to the key so that the index covers queries that read it. Columns
+         *                   that are already in the key are ignored.
+         * @return this Builder
+         */
+        public Builder coveringColumn(String columnName) {
+            if (columnName == null || columnName.isEmpty()) {
+                throw new IllegalArgumentException("columnName must not be empty");
+            }
+            coveringColumns.add(columnName);
+            return this;
+        }
+
+        /**
+         * @return the IndexInfo
+         * @throws IllegalArgumentException if the index has no key columns or if it is unique and has covering
+         * columns, which SQLite would make part of the unique key
+         */
+        public IndexInfo build() {
+            if (columns.isEmpty()) {
+                throw new IllegalArgumentException("An index must have at least one column");
+            }
+            for (Column column : columns) {
+                coveringColumns.remove(column.getName());
+            }
+            if (unique && !coveringColumns.isEmpty()) {
+                throw new IllegalArgumentException("Unique index on " + tableName + " cannot have covering columns " + coveringColumns + ": SQLite would enforce uniqueness on them as well");
+            }
+            return new IndexInfo(this);
+        }
+    }
+
+    private static void readColumn(JsonReader reader, Builder builder) throws IOException {
+        String name = null;
+        boolean descending = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "column_name":
+                    name = MigrationExtras.readString(reader);
+                    break;
+                case "descending":
+                    descending = MigrationExtras.readBoolean(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        builder.column(name, descending);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     Keyset (seek) pagination for an ORDER BY list. Rather than skipping the rows of earlier pages with OFFSET,
+ *     which reads and discards every skipped row, each page after the first is selected with a predicate that seeks
+ *     past the last row of the previous page, so a page deep into a table costs the same as the first page when an
+ *     index matches the ORDER BY.
+ * </p>
+ * <p>
+ *     The ORDER BY is extended with the primary key columns as a tie-breaker so that the key of every row is
+ *     unique. When all keys sort in the same direction, the predicate is a row value comparison such as
+ *     (a, b) &gt; (?, ?), which requires SQLite 3.15.0 or later. Otherwise, it is expanded into
+ *     a &gt;= ? AND (a &gt; ? OR (a = ? AND b &lt; ?)). Comparisons with NULL are never true, so the key columns
+ *     must not be NULL.
+ * </p>
+ * <p>
+ *     Select the first page with ORDER BY {@link #getOrderBy()} LIMIT n and each later page with
+ *     WHERE {@link #getSeekPredicate()} ORDER BY {@link #getOrderBy()} LIMIT n, binding
+ *     {@link #seekArgsOf(String...)} of the key values of the last row of the previous page.
+ * </p>
+ * @see SqlGenerator#newKeysetPagination(com.fsryan.forsuredb.api.info.TableInfo, List)
+ */
+public class KeysetPagination {
+
+    private final List<String> keyExpressions;
+    private final String orderBy;
+    private final String seekPredicate;
+    private final int[] seekArgKeyIndices;
+
+    /**
+     * @param keyExpressions the expressions of the ORDER BY, including the tie-breaker
+     * @param descending whether each key expression is sorted DESC
+     */
+    /*package*/ KeysetPagination(List<String> keyExpressions, List<Boolean> descending) {
+        this.keyExpressions = Collections.unmodifiableList(new ArrayList<>(keyExpressions));
+
+        StringBuilder orderByBuf = new StringBuilder();
+        boolean mixedDirections = false;
+        for (int i = 0; i < keyExpressions.size(); i++) {
+            orderByBuf.append(i == 0 ? "" : ", ").append(keyExpressions.get(i)).append(descending.get(i) ? " DESC" : " ASC");
+            mixedDirections |= descending.get(i).booleanValue() != descending.get(0).booleanValue();
+        }
+        orderBy = orderByBuf.toString();
+
+        List<Integer> argKeyIndices = new ArrayList<>();
+        seekPredicate = mixedDirections
+                ? expandedPredicate(keyExpressions, descending, argKeyIndices)
+                : rowValuePredicate(keyExpressions, descending.get(0), argKeyIndices);
+        seekArgKeyIndices = new int[argKeyIndices.size()];
+        for (int i = 0; i < seekArgKeyIndices.length; i++) {
+            seekArgKeyIndices[i] = argKeyIndices.get(i);
+        }
+    }
+
+    /**
+     * @return the expressions whose values, in this order, identify the last row of a page
+     */
+    public List<String> getKeyExpressions() {
+        return keyExpressions;
+    }
+
+    /**
+     * @return the ORDER BY clause, without the ORDER BY keywords
+     */
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * @return the WHERE clause, without the WHERE keyword, that selects the rows after the last row of a page
+     */
+    public String getSeekPredicate() {
+        return seekPredicate;
+    }
+
+    /**
+     * @param lastRowKeyValues the values of the {@link #getKeyExpressions()} of the last row of the previous page
+     * @return the values to bind, in order, to the placeholders of the {@link #getSeekPredicate()}
+     * @throws IllegalArgumentException if there is not exactly one value per key expression
+     */
+    public String[] seekArgsOf(String... lastRowKeyValues) {
+        if (lastRowKeyValues == null || lastRowKeyValues.length != keyExpressions.size()) {
+            throw new IllegalArgumentException("Expected " + keyExpressions.size() + " key values " + keyExpressions
+                    + "; got " + (lastRowKeyValues == null ? 0 : lastRowKeyValues.length));
+        }
+        String[] ret = new String[seekArgKeyIndices.length];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = lastRowKeyValues[seekArgKeyIndices[i]];
+        }
+        return ret;
+    }
+
+    private static String rowValuePredicate(List<String> keyExpressions, boolean descending, List<Integer> argKeyIndices) {
+        if (keyExpressions.size() == 1) {
+            argKeyIndices.add(0);
+            return keyExpressions.get(0) + (descending ? " < ?" : " > ?");
+        }
+
+        StringBuilder buf = new StringBuilder("(");
+        StringBuilder placeholderBuf = new StringBuilder("(");
+        for (int i = 0; i < keyExpressions.size(); i++) {
+            buf.append(i == 0 ? "" : ", ").append(keyExpressions.get(i));
+            placeholderBuf.append(i == 0 ? "?" : ", ?");
+            argKeyIndices.add(i);
+        }
+        return buf.append(descending ? ") < " : ") > ").append(placeholderBuf).append(')').toString();
+    }
+
+    /**
+     * <p>
+     *     The leading bound lets SQLite use a range scan of an index on the first key; the disjunction then
+     *     excludes the rows that are not after the last row.
+     * </p>
+     */
+    private static String expandedPredicate(List<String> keyExpressions, List<Boolean> descending, List<Integer> argKeyIndices) {
+        StringBuilder buf = new StringBuilder(keyExpressions.get(0)).append(descending.get(0) ? " <= ?" : " >= ?").append(" AND (");
+        argKeyIndices.add(0);
+        for (int term = 0; term < keyExpressions.size(); term++) {
+            buf.append(term == 0 ? "" : " OR ").append(term == 0 ? "" : "(");
+            for (int i = 0; i < term; i++) {
+                buf.append(keyExpressions.get(i)).append(" = ? AND ");
+                argKeyIndices.add(i);
+            }
+            buf.append(keyExpressions.get(term)).append(descending.get(term) ? " < ?" : " > ?").append(term == 0 ? "" : ")");
+            argKeyIndices.add(term);
+        }
+        return buf.append(')').toString();
+    }
+}
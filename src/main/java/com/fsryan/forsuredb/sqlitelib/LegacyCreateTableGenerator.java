@@ -24,8 +24,6 @@ import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
 import java.util.*;
 
-import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
-
 /**
  * <p>
  *     Depends upon foreign keys and primary key being marked on the columns.
@@ -35,36 +33,47 @@ import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
 @Deprecated
 public class LegacyCreateTableGenerator extends QueryGenerator {
 
-    private final Map<String, TableInfo> targetSchema;
+    private final CompiledTable compiledTable;
     private final Set<String> primaryKey;
     private final String primaryKeyOnConflict;
     private final List<String> sortedPrimaryKeyColumnNames;
+    private final GenerationOptions options;
 
     public LegacyCreateTableGenerator(String tableName, Map<String, TableInfo> targetSchema) {
+        this(tableName, targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    public LegacyCreateTableGenerator(String tableName, Map<String, TableInfo> targetSchema, GenerationOptions options) {
+        this(tableName, new CompiledSchema(targetSchema, options));
+    }
+
+    public LegacyCreateTableGenerator(String tableName, CompiledSchema compiledSchema) {
         super(tableName, Migration.Type.CREATE_TABLE);
-        this.targetSchema = targetSchema;
-        TableInfo table = targetSchema.get(tableName);
+        this.options = compiledSchema.getOptions();
+        compiledTable = compiledSchema.table(tableName);
+        TableInfo table = compiledTable.getTable();
         primaryKey = table.getPrimaryKey();
         primaryKeyOnConflict = table.getPrimaryKeyOnConflict();
-        sortedPrimaryKeyColumnNames = new ArrayList<>(primaryKey);
-        Collections.sort(sortedPrimaryKeyColumnNames);
+        sortedPrimaryKeyColumnNames = compiledTable.getSortedPrimaryKeyColumnNames();
     }
 
     @Override
     public List<String> generate() {
-        List<String> queries = new LinkedList<>();
+        List<String> queries = new ArrayList<>();
         queries.add(createTableQuery());
-        queries.add(modifiedTriggerQuery());
+        queries.addAll(options.getModifiedTimestampMode()
+                .createTriggerQueries(getTableName(), primaryKeyWhere(), options.getDateStorage().getCurrentTimeSql()));
         queries.addAll(uniqueIndexQueries());
         return queries;
     }
 
     private String createTableQuery() {
-        StringBuilder buf = new StringBuilder("CREATE TABLE ").append(getTableName()).append("(");
         List<ColumnInfo> columnsToAdd = determineColumnsToAdd();
         Collections.sort(columnsToAdd);
+        StringBuilder buf = new StringBuilder(64 * (columnsToAdd.size() + 1)).append("CREATE TABLE ").append(getTableName()).append("(");
         for (ColumnInfo column : columnsToAdd) {
-            buf.append(columnDefinition(column)).append(", ");
+            appendColumnDefinition(buf, column);
+            buf.append(", ");
         }
         buf.delete(buf.length() - 2, buf.length());
         if (primaryKey.size() > 1) {
@@ -82,7 +91,7 @@ public class LegacyCreateTableGenerator extends QueryGenerator {
 
     private List<ColumnInfo> determineColumnsToAdd() {
         List<ColumnInfo> ret = new ArrayList<>(TableInfo.DEFAULT_COLUMNS.values());
-        for (ColumnInfo column : targetSchema.get(getTableName()).getColumns()) {
+        for (ColumnInfo column : compiledTable.getSortedColumns()) {
             if (column.getColumnName().equals(TableInfo.DEFAULT_PRIMARY_KEY_COLUMN)) {
                 continue;
             }
@@ -95,7 +104,7 @@ public class LegacyCreateTableGenerator extends QueryGenerator {
 
     private List<String> uniqueIndexQueries() {
         List<String> ret = new ArrayList<>();
-        for (ColumnInfo column : targetSchema.get(getTableName()).getColumns()) {
+        for (ColumnInfo column : compiledTable.getTable().getColumns()) {
             if (!column.isUnique()) {
                 continue;
             }
@@ -104,26 +113,20 @@ public class LegacyCreateTableGenerator extends QueryGenerator {
         return ret;
     }
 
-    private String columnDefinition(ColumnInfo column) {
-        return column.getColumnName()
-                + " " + TypeTranslator.from(column.getQualifiedType()).getSqlString()
-                + (primaryKey.size() == 1 && primaryKey.contains(column.getColumnName()) ? " PRIMARY KEY" + (primaryKeyOnConflict == null || primaryKeyOnConflict.isEmpty() ? "" : " ON CONFLICT " + primaryKeyOnConflict): "")
-                + (column.isUnique() ? " UNIQUE" : "")
-                + (column.hasDefaultValue() ? " DEFAULT" + getDefaultValueFrom(column) : "");
-    }
-
-    private String getDefaultValueFrom(ColumnInfo column) {
-        TypeTranslator tt = TypeTranslator.from(column.getQualifiedType());
-        if (tt != TypeTranslator.DATE || !"CURRENT_TIMESTAMP".equals(column.getDefaultValue())) {
-            return " '" + column.getDefaultValue() + "'";
+    private void appendColumnDefinition(StringBuilder buf, ColumnInfo column) {
+        buf.append(column.getColumnName()).append(' ').append(options.getDateStorage().sqlTypeOf(column));
+        if (primaryKey.size() == 1 && primaryKey.contains(column.getColumnName())) {
+            buf.append(" PRIMARY KEY");
+            if (primaryKeyOnConflict != null && !primaryKeyOnConflict.isEmpty()) {
+                buf.append(" ON CONFLICT ").append(primaryKeyOnConflict);
+            }
+        }
+        if (column.isUnique()) {
+            buf.append(" UNIQUE");
+        }
+        if (column.hasDefaultValue()) {
+            buf.append(" DEFAULT").append(options.getDateStorage().defaultValueOf(column));
         }
-        return "(" + CURRENT_UTC_TIME + ")";
-    }
-
-    private String modifiedTriggerQuery() {
-        return "CREATE TRIGGER "
-                + getTableName() + "_updated_trigger AFTER UPDATE ON " + getTableName()
-                + " BEGIN UPDATE " + getTableName() + " SET modified=" + CURRENT_UTC_TIME + " WHERE " + primaryKeyWhere() + "; END;";
     }
 
     private String primaryKeyWhere() {
@@ -0,0 +1,166 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ *     Decodes the JSON {@link com.fsryan.forsuredb.api.migration.Migration} extras with a streaming
+ *     {@link JsonReader} rather than reflective Gson, which has to build a {@link com.google.gson.reflect.TypeToken}
+ *     and a type adapter before it can decode anything. Unknown object members are skipped and JSON null decodes to
+ *     null, as with Gson.
+ * </p>
+ */
+/*package*/ class MigrationExtras {
+
+    /*package*/ static final String EXISTING_COLUMN_NAMES_KEY = "existing_column_names";
+    /*package*/ static final String CURRENT_FOREIGN_KEYS_KEY = "current_foreign_keys";
+
+    private MigrationExtras() {}
+
+    /**
+     * @param json a JSON array of strings, for example ["_id", "created"]
+     * @return the set of strings or null if json is null or JSON null
+     * @throws IllegalArgumentException if json is not a JSON array of strings
+     */
+    /*package*/ static Set<String> stringSetOf(String json) {
+        if (json == null) {
+            return null;
+        }
+        JsonReader reader = readerOf(json);
+        try {
+            return readStringSet(reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Not a JSON array of strings: " + json, e);
+        }
+    }
+
+    /**
+     * @param json a JSON array of foreign keys, for example
+     *             [{"foreign_table_name": "user", "foreign_table_api_class_name": "com.example.UserTable",
+     *             "local_to_foreign_column_map": {"user_id": "_id"}, "update_action": "CASCADE",
+     *             "delete_action": "CASCADE"}]
+     * @return the set of {@link TableForeignKeyInfo} or null if json is null or JSON null
+     * @throws IllegalArgumentException if json is not a JSON array of foreign keys
+     */
+    /*package*/ static Set<TableForeignKeyInfo> tableForeignKeyInfoSetOf(String json) {
+        if (json == null) {
+            return null;
+        }
+        JsonReader reader = readerOf(json);
+        try {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            Set<TableForeignKeyInfo> ret = new HashSet<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                ret.add(readTableForeignKeyInfo(reader));
+            }
+            reader.endArray();
+            return ret;
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("Not a JSON array of foreign keys: " + json, e);
+        }
+    }
+
+    /*package*/ static JsonReader readerOf(String json) {
+        JsonReader ret = new JsonReader(new StringReader(json));
+        ret.setLenient(true);   // <-- as Gson.fromJson does
+        return ret;
+    }
+
+    /*package*/ static Set<String> readStringSet(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Set<String> ret = new HashSet<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ret.add(readString(reader));
+        }
+        reader.endArray();
+        return ret;
+    }
+
+    /*package*/ static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /*package*/ static boolean readBoolean(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return false;
+            case STRING:
+                return Boolean.parseBoolean(reader.nextString());
+            default:
+                return reader.nextBoolean();
+        }
+    }
+
+    private static TableForeignKeyInfo readTableForeignKeyInfo(JsonReader reader) throws IOException {
+        TableForeignKeyInfo.Builder builder = new TableForeignKeyInfo.Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "foreign_table_api_class_name":
+                    builder.foreignTableApiClassName(readString(reader));
+                    break;
+                case "foreign_table_name":
+                    builder.foreignTableName(readString(reader));
+                    break;
+                case "local_to_foreign_column_map":
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        builder.mapLocalToForeignColumn(reader.nextName(), readString(reader));
+                    }
+                    reader.endObject();
+                    break;
+                case "update_action":
+                    builder.updateChangeAction(readString(reader));
+                    break;
+                case "delete_action":
+                    builder.deleteChangeAction(readString(reader));
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return builder.build();
+    }
+}
@@ -0,0 +1,45 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.List;
+
+/**
+ * <p>
+ *     Stores the migration SQL generated for a {@link com.fsryan.forsuredb.api.migration.MigrationSet} under its
+ *     {@link MigrationSetFingerprint} so that
+ *     {@link SqlGenerator#generateMigrationSql(com.fsryan.forsuredb.api.migration.MigrationSet, MigrationPlanCache)}
+ *     does not plan the same migration again. Implementations may store plans in files, as
+ *     {@link FileMigrationPlanCache} does, or in a table of the database. They must treat a plan they cannot read as
+ *     missing rather than throwing.
+ * </p>
+ */
+public interface MigrationPlanCache {
+
+    /**
+     * @param fingerprint the {@link MigrationSetFingerprint} of the migration
+     * @return the migration SQL stored for the fingerprint or null if there is none
+     */
+    List<String> get(long fingerprint);
+
+    /**
+     * @param fingerprint the {@link MigrationSetFingerprint} of the migration
+     * @param migrationSql the migration SQL generated for the migration
+     */
+    void put(long fingerprint, List<String> migrationSql);
+}
@@ -0,0 +1,229 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     Writes the source of a Java class that holds the migration SQL of each {@link MigrationSet} as string
+ *     constants, so that an annotation processor can plan the migrations once at build time (for example, through
+ *     {@code Filer.createSourceFile(...).openWriter()}) and the application does not parse, plan or build any SQL
+ *     at startup. The generated class has one method:
+ * </p>
+ * <pre>
+ *     public static List&lt;String&gt; migrationSql(int dbVersion)
+ * </pre>
+ * <p>
+ *     which returns the SQL of the {@link MigrationSet} of the database version or null if it was not precompiled.
+ *     The {@link SqlGenerator} must have the same {@link GenerationOptions} as the one used at runtime.
+ * </p>
+ * <p>
+ *     A class file limits each string constant to 65535 bytes of modified UTF-8, each method to 64KiB of bytecode
+ *     and its constant pool to 65535 entries. So the statements of each version are assigned in nested classes of at
+ *     most {@value #STATEMENTS_PER_PART} statements, and a longer statement is split into constants that are joined
+ *     when it is loaded. Constant expressions would be folded back into one constant by javac, so they are not used
+ *     for this.
+ * </p>
+ */
+public class MigrationPlanSourceWriter {
+
+    /*package*/ static final int STATEMENTS_PER_PART = 500;
+    /*package*/ static final int MAX_CONSTANT_UTF_LENGTH = 65535;
+
+    private final String packageName;
+    private final String className;
+    private final SqlGenerator sqlGenerator;
+
+    /**
+     * @param packageName the package of the generated class; may be empty for the default package
+     * @param className the simple name of the generated class
+     * @param sqlGenerator generates the migration SQL of each {@link MigrationSet}
+     */
+    public MigrationPlanSourceWriter(String packageName, String className, SqlGenerator sqlGenerator) {
+        if (packageName == null) {
+            throw new IllegalArgumentException("packageName must not be null");
+        }
+        if (className == null || className.isEmpty()) {
+            throw new IllegalArgumentException("className must not be empty");
+        }
+        if (sqlGenerator == null) {
+            throw new IllegalArgumentException("sqlGenerator must not be null");
+        }
+        this.packageName = packageName;
+        this.className = className;
+        this.sqlGenerator = sqlGenerator;
+    }
+
+    /**
+     * @param out the writer of the source file, which is not closed
+     * @param migrationSets the {@link MigrationSet} of each database version to precompile
+     * @throws IOException if out throws
+     * @throws IllegalArgumentException if two {@link MigrationSet}s have the same database version
+     */
+    public void write(Writer out, List<MigrationSet> migrationSets) throws IOException {
+        List<Integer> dbVersions = new ArrayList<>(migrationSets.size());
+        for (MigrationSet migrationSet : migrationSets) {
+            if (dbVersions.contains(migrationSet.getDbVersion())) {
+                throw new IllegalArgumentException("More than one MigrationSet for dbVersion " + migrationSet.getDbVersion());
+            }
+            dbVersions.add(migrationSet.getDbVersion());
+        }
+
+        if (!packageName.isEmpty()) {
+            out.write("package " + packageName + ";\n\n");
+        }
+        out.write("import java.util.Arrays;\n");
+        out.write("import java.util.List;\n\n");
+        out.write("/**\n * Generated by " + MigrationPlanSourceWriter.class.getName() + ". Do not edit.\n */\n");
+        out.write("public final class " + className + " {\n\n");
+        out.write("    private " + className + "() {}\n\n");
+        out.write("    /**\n");
+        out.write("     * @return the migration SQL of the database version or null if it was not precompiled\n");
+        out.write("     */\n");
+        out.write("    public static List<String> migrationSql(int dbVersion) {\n");
+        out.write("        switch (dbVersion) {\n");
+        for (int dbVersion : dbVersions) {
+            out.write("            case " + dbVersion + ": return Arrays.asList(" + versionMethodNameOf(dbVersion) + "());\n");
+        }
+        out.write("        }\n");
+        out.write("        return null;\n");
+        out.write("    }\n");
+
+        boolean joinsConstants = false;
+        for (MigrationSet migrationSet : migrationSets) {
+            joinsConstants |= writeVersion(out, migrationSet);
+        }
+        if (joinsConstants) {
+            out.write("\n    private static String join(String... parts) {\n");
+            out.write("        StringBuilder buf = new StringBuilder();\n");
+            out.write("        for (String part : parts) {\n");
+            out.write("            buf.append(part);\n");
+            out.write("        }\n");
+            out.write("        return buf.toString();\n");
+            out.write("    }\n");
+        }
+        out.write("}\n");
+    }
+
+    /**
+     * @return whether any statement of the version is joined from more than one constant
+     */
+    private boolean writeVersion(Writer out, MigrationSet migrationSet) throws IOException {
+        final int dbVersion = migrationSet.getDbVersion();
+        final List<String> sqlList = sqlGenerator.generateMigrationSql(migrationSet);
+        final int partCount = (sqlList.size() + STATEMENTS_PER_PART - 1) / STATEMENTS_PER_PART;
+
+        out.write("\n    private static String[] " + versionMethodNameOf(dbVersion) + "() {\n");
+        out.write("        String[] sql = new String[" + sqlList.size() + "];\n");
+        for (int part = 0; part < partCount; part++) {
+            out.write("        " + partClassNameOf(dbVersion, part) + ".assign(sql);\n");
+        }
+        out.write("        return sql;\n");
+        out.write("    }\n");
+
+        boolean joinsConstants = false;
+        for (int part = 0; part < partCount; part++) {
+            out.write("\n    private static final class " + partClassNameOf(dbVersion, part) + " {\n");
+            out.write("        static void assign(String[] sql) {\n");
+            final int end = Math.min(sqlList.size(), (part + 1) * STATEMENTS_PER_PART);
+            for (int i = part * STATEMENTS_PER_PART; i < end; i++) {
+                List<String> constants = constantsOf(sqlList.get(i));
+                out.write("            sql[" + i + "] = ");
+                if (constants.size() == 1) {
+                    writeLiteral(out, constants.get(0));
+                } else {
+                    joinsConstants = true;
+                    out.write("join(");
+                    for (int j = 0; j < constants.size(); j++) {
+                        out.write(j == 0 ? "" : ", ");
+                        writeLiteral(out, constants.get(j));
+                    }
+                    out.write(")");
+                }
+                out.write(";\n");
+            }
+            out.write("        }\n");
+            out.write("    }\n");
+        }
+        return joinsConstants;
+    }
+
+    /**
+     * @return the pieces of the string, each of which fits in a string constant and none of which ends between the
+     * chars of a surrogate pair
+     */
+    /*package*/ static List<String> constantsOf(String s) {
+        List<String> ret = new ArrayList<>(1);
+        int start = 0;
+        int utfLength = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            final int charUtfLength = c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+            if (utfLength + charUtfLength > MAX_CONSTANT_UTF_LENGTH) {
+                final int end = Character.isLowSurrogate(c) ? i - 1 : i;
+                ret.add(s.substring(start, end));
+                start = end;
+                utfLength = 0;
+                i = end - 1;
+                continue;
+            }
+            utfLength += charUtfLength;
+        }
+        ret.add(s.substring(start));
+        return ret;
+    }
+
+    private static void writeLiteral(Writer out, String s) throws IOException {
+        out.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20 || c > 0x7E) {
+                        out.write(String.format("\\u%04x", (int) c));   // <-- the source stays ASCII
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    private static String versionMethodNameOf(int dbVersion) {
+        return "version" + versionSuffixOf(dbVersion);
+    }
+
+    private static String partClassNameOf(int dbVersion, int part) {
+        return "Version" + versionSuffixOf(dbVersion) + "Part" + part;
+    }
+
+    private static String versionSuffixOf(int dbVersion) {
+        return dbVersion < 0 ? "Minus" + -dbVersion : Integer.toString(dbVersion);
+    }
+}
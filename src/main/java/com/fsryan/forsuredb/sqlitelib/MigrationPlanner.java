@@ -0,0 +1,165 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+
+import java.util.*;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.TYPES_REQUIRING_TABLE_RECREATION;
+
+/**
+ * <p>
+ *     Orders the migrations of a {@link com.fsryan.forsuredb.api.migration.MigrationSet} so that they can be run
+ *     in sequence. The result has three parts, and each part keeps the original relative order of its migrations
+ *     except where noted:
+ * </p>
+ * <ol>
+ *     <li>
+ *         {@link Migration.Type#CREATE_TABLE} migrations, in dependency order. A table is created after every
+ *         table it references with a foreign key. Referenced tables are moved forward only as far as necessary.
+ *     </li>
+ *     <li>other migrations that recreate a table</li>
+ *     <li>all remaining migrations</li>
+ * </ol>
+ * <p>
+ *     The foreign key graph is built once from the target schema, and the ordering is linear in the number of
+ *     migrations plus foreign keys.
+ * </p>
+ */
+/*package*/ class MigrationPlanner {
+
+    private final CompiledSchema compiledSchema;
+
+    public MigrationPlanner(Map<String, TableInfo> targetSchema) {
+        this(new CompiledSchema(targetSchema));
+    }
+
+    public MigrationPlanner(CompiledSchema compiledSchema) {
+        this.compiledSchema = compiledSchema;
+    }
+
+    /**
+     * @param migrations the migrations to order; this list is not modified
+     * @return a new list containing the migrations in the order in which they should be run
+     * @throws IllegalStateException if the tables to create reference each other in a cycle. A table that
+     * references itself is not a cycle.
+     */
+    public List<Migration> plan(List<Migration> migrations) {
+        List<Migration> creates = new ArrayList<>();
+        List<Migration> recreations = new ArrayList<>();
+        List<Migration> remaining = new ArrayList<>();
+        for (Migration migration : migrations) {
+            if (migration.getType() == Migration.Type.CREATE_TABLE) {
+                creates.add(migration);
+            } else if (TYPES_REQUIRING_TABLE_RECREATION.contains(migration.getType())) {
+                recreations.add(migration);
+            } else {
+                remaining.add(migration);
+            }
+        }
+
+        List<Migration> ret = new ArrayList<>(migrations.size());
+        ret.addAll(dependencyOrder(creates));
+        ret.addAll(recreations);
+        ret.addAll(remaining);
+        return ret;
+    }
+
+    private List<Migration> dependencyOrder(List<Migration> creates) {
+        final int count = creates.size();
+        Map<String, Integer> createIndex = new HashMap<>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+            final String tableName = creates.get(i).getTableName();
+            if (!createIndex.containsKey(tableName)) {
+                createIndex.put(tableName, i);
+            }
+        }
+
+        // dependencies[i] holds the indices of the created tables that creates.get(i) references
+        int[][] dependencies = new int[count][];
+        for (int i = 0; i < count; i++) {
+            dependencies[i] = dependenciesOf(creates.get(i).getTableName(), createIndex);
+        }
+
+        // iterative depth-first search so that deep reference chains cannot overflow the stack
+        final byte unvisited = 0, visiting = 1, visited = 2;
+        byte[] state = new byte[count];
+        int[] stack = new int[count];
+        int[] nextDependency = new int[count];
+        List<Migration> ret = new ArrayList<>(count);
+        for (int root = 0; root < count; root++) {
+            if (state[root] != unvisited) {
+                continue;
+            }
+            int depth = 0;
+            stack[depth++] = root;
+            state[root] = visiting;
+            while (depth > 0) {
+                final int current = stack[depth - 1];
+                if (nextDependency[current] < dependencies[current].length) {
+                    final int dependency = dependencies[current][nextDependency[current]++];
+                    if (state[dependency] == visiting) {
+                        throw new IllegalStateException("Foreign key cycle among created tables: " + describeCycle(creates, stack, depth, dependency));
+                    }
+                    if (state[dependency] == unvisited) {
+                        state[dependency] = visiting;
+                        stack[depth++] = dependency;
+                    }
+                    continue;
+                }
+                state[current] = visited;
+                ret.add(creates.get(current));
+                depth--;
+            }
+        }
+        return ret;
+    }
+
+    private int[] dependenciesOf(String tableName, Map<String, Integer> createIndex) {
+        final CompiledTable table = compiledSchema.table(tableName);
+        if (table == null) {
+            return new int[0];
+        }
+
+        final Set<String> referencedTableNames = table.getReferencedTableNames();
+
+        int[] buf = new int[referencedTableNames.size()];
+        int size = 0;
+        for (String referencedTableName : referencedTableNames) {
+            final Integer index = createIndex.get(referencedTableName);
+            if (index != null) {    // <-- tables that are not created in this migration set already exist
+                buf[size++] = index;
+            }
+        }
+        return size == buf.length ? buf : Arrays.copyOf(buf, size);
+    }
+
+    private static String describeCycle(List<Migration> creates, int[] stack, int depth, int cycleStart) {
+        StringBuilder buf = new StringBuilder();
+        int i = depth - 1;
+        while (stack[i] != cycleStart) {
+            i--;
+        }
+        for (; i < depth; i++) {
+            buf.append(creates.get(stack[i]).getTableName()).append(" -> ");
+        }
+        return buf.append(creates.get(cycleStart).getTableName()).toString();
+    }
+}
@@ -0,0 +1,245 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.ForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+
+import java.util.*;
+
+/**
+ * <p>
+ *     A 64-bit FNV-1a hash of everything that determines the SQL that
+ *     {@link SqlGenerator#generateMigrationSql(MigrationSet)} generates: the migrations in order, including their
+ *     extras, the target schema and the {@link GenerationOptions}. It does not depend on the iteration order of
+ *     the maps and sets of the {@link MigrationSet}, so it is stable across processes, and computing it is much
+ *     cheaper than planning the migration. Each step of the hash consumes a 16-bit unit rather than a byte, so
+ *     strings are hashed one char per step without being copied or encoded.
+ * </p>
+ * @see MigrationPlanCache
+ */
+public class MigrationSetFingerprint {
+
+    /**
+     * <p>
+     *     Hashed first so that plans cached by a version of this library that generates different SQL for the
+     *     same input are not reused. Change it whenever the generated migration SQL changes.
+     * </p>
+     */
+    /*package*/ static final String PLAN_FORMAT = "forsuredb-sqlitelib-migration-plan-1";
+
+    private static final long FNV_64_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_64_PRIME = 0x100000001b3L;
+
+    private long hash = FNV_64_OFFSET_BASIS;
+
+    private MigrationSetFingerprint() {}
+
+    /**
+     * @param migrationSet the {@link MigrationSet}
+     * @param options the {@link GenerationOptions} with which the migration SQL is generated
+     * @return the fingerprint of the migration SQL of the {@link MigrationSet}
+     */
+    public static long of(MigrationSet migrationSet, GenerationOptions options) {
+        MigrationSetFingerprint fingerprint = new MigrationSetFingerprint();
+        fingerprint.add(PLAN_FORMAT);
+        fingerprint.add(migrationSet.getDbVersion());
+
+        List<Migration> migrations = migrationSet.getOrderedMigrations();
+        fingerprint.add(migrations == null ? -1 : migrations.size());
+        if (migrations != null) {
+            for (Migration migration : migrations) {
+                fingerprint.addMigration(migration);
+            }
+        }
+
+        Map<String, TableInfo> targetSchema = migrationSet.getTargetSchema();
+        List<String> tableNames = targetSchema == null ? Collections.<String>emptyList() : sorted(targetSchema.keySet());
+        fingerprint.add(targetSchema == null ? -1 : tableNames.size());
+        for (String tableName : tableNames) {
+            fingerprint.addTable(targetSchema.get(tableName));
+        }
+
+        fingerprint.addOptions(options, tableNames);
+        return fingerprint.hash;
+    }
+
+    private void addMigration(Migration migration) {
+        add(migration.getType() == null ? null : migration.getType().name());
+        add(migration.getTableName());
+        add(migration.getColumnName());
+        Map<String, String> extras = migration.getExtras();
+        if (extras == null) {
+            add(-1);
+            return;
+        }
+        add(extras.size());
+        for (String key : sorted(extras.keySet())) {
+            add(key);
+            add(extras.get(key));
+        }
+    }
+
+    private void addTable(TableInfo table) {
+        add(table.getTableName());
+        addSorted(table.getPrimaryKey());
+        add(table.getPrimaryKeyOnConflict());
+
+        Set<TableForeignKeyInfo> foreignKeys = table.getForeignKeys();
+        if (foreignKeys == null) {
+            add(-1);    // <-- legacy foreign keys, which are generated differently from an empty set
+        } else {
+            long[] foreignKeyHashes = new long[foreignKeys.size()];
+            int i = 0;
+            for (TableForeignKeyInfo foreignKey : foreignKeys) {
+                foreignKeyHashes[i++] = hashOf(foreignKey);
+            }
+            Arrays.sort(foreignKeyHashes);
+            add(foreignKeyHashes.length);
+            for (long foreignKeyHash : foreignKeyHashes) {
+                add(foreignKeyHash);
+            }
+        }
+
+        // sorting the hashes of the columns is cheaper than sorting their names
+        long[] columnHashes = new long[table.getColumns().size()];
+        int i = 0;
+        for (ColumnInfo column : table.getColumns()) {
+            columnHashes[i++] = hashOf(column);
+        }
+        Arrays.sort(columnHashes);
+        add(columnHashes.length);
+        for (long columnHash : columnHashes) {
+            add(columnHash);
+        }
+    }
+
+    private static long hashOf(ColumnInfo column) {
+        MigrationSetFingerprint fingerprint = new MigrationSetFingerprint();
+        fingerprint.addColumn(column);
+        return fingerprint.hash;
+    }
+
+    private void addColumn(ColumnInfo column) {
+        add(column.getColumnName());
+        add(column.getQualifiedType());
+        add(column.getDefaultValue());
+        add(column.isUnique());
+        add(column.isIndex());
+        add(column.isPrimaryKey());
+        ForeignKeyInfo foreignKey = column.getForeignKeyInfo();
+        add(foreignKey != null);
+        if (foreignKey != null) {
+            add(foreignKey.getTableName());
+            add(foreignKey.getColumnName());
+            add(foreignKey.getUpdateAction() == null ? null : foreignKey.getUpdateAction().toString());
+            add(foreignKey.getDeleteAction() == null ? null : foreignKey.getDeleteAction().toString());
+        }
+    }
+
+    private void addOptions(GenerationOptions options, List<String> tableNames) {
+        add(options.getDateStorage().name());
+        add(options.getRebuildStrategy().name());
+        add(options.wrapMigrationsInTransaction());
+        add(options.getRebuildCacheSizeKiB());
+        add(options.indexForeignKeys());
+        add(options.getModifiedTimestampMode().name());
+        addSorted(options.getWithoutRowidTableNames());
+        add(options.withoutRowidForCompositePrimaryKeys());
+        addSorted(options.getChunkedRebuildTableNames());
+        addSorted(options.getShadowRebuildTableNames());
+        add(options.getRebuildChunkSize());
+        for (String tableName : tableNames) {
+            List<IndexInfo> indices = options.getIndicesOf(tableName);
+            add(indices.size());
+            for (IndexInfo index : indices) {
+                add(index.toString());
+            }
+        }
+    }
+
+    private static long hashOf(TableForeignKeyInfo foreignKey) {
+        MigrationSetFingerprint fingerprint = new MigrationSetFingerprint();
+        fingerprint.add(foreignKey.getForeignTableName());
+        fingerprint.add(foreignKey.getUpdateChangeAction());
+        fingerprint.add(foreignKey.getDeleteChangeAction());
+        Map<String, String> localToForeignColumnMap = foreignKey.getLocalToForeignColumnMap();
+        List<String> localColumnNames = sorted(localToForeignColumnMap.keySet());
+        fingerprint.add(localColumnNames.size());
+        for (String localColumnName : localColumnNames) {
+            fingerprint.add(localColumnName);
+            fingerprint.add(localToForeignColumnMap.get(localColumnName));
+        }
+        return fingerprint.hash;
+    }
+
+    private void addSorted(Set<String> strings) {
+        if (strings == null) {
+            add(-1);
+            return;
+        }
+        List<String> sortedStrings = sorted(strings);
+        add(sortedStrings.size());
+        for (String s : sortedStrings) {
+            add(s);
+        }
+    }
+
+    private static List<String> sorted(Collection<String> strings) {
+        List<String> ret = new ArrayList<>(strings);
+        Collections.sort(ret);
+        return ret;
+    }
+
+    // Strings are prefixed with their lengths so that adjacent strings cannot run together
+
+    private void add(String s) {
+        if (s == null) {
+            add(-1);
+            return;
+        }
+        final int length = s.length();
+        add(length);
+        for (int i = 0; i < length; i++) {
+            addUnit(s.charAt(i));
+        }
+    }
+
+    private void add(boolean b) {
+        addUnit(b ? 1 : 0);
+    }
+
+    private void add(int i) {
+        addUnit(i);
+        addUnit(i >>> 16);
+    }
+
+    private void add(long l) {
+        add((int) l);
+        add((int) (l >>> 32));
+    }
+
+    private void addUnit(int unit) {
+        hash ^= unit & 0xffff;
+        hash *= FNV_64_PRIME;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ *     The migration SQL of a {@link com.fsryan.forsuredb.api.migration.MigrationSet} split into the parts that
+ *     whatever runs it needs in order to run it in one transaction safely. PRAGMA foreign_keys has no effect inside
+ *     a transaction, so when tables are rebuilt, {@link #getPragmaSql()} turns foreign key enforcement off and
+ *     enlarges the page cache and temp store before BEGIN. PRAGMA foreign_key_check returns a row for each
+ *     violation rather than failing, so the checks are kept apart from the SQL so that they can decide between
+ *     COMMIT and ROLLBACK.
+ * </p>
+ * <p>
+ *     To run it:
+ * </p>
+ * <ol>
+ *     <li>Read the current value of each of {@link #getChangedPragmaNames()} with PRAGMA &lt;name&gt;;</li>
+ *     <li>Run {@link #getPragmaSql()} and then {@link #getTransactionSql()}, which begins the transaction</li>
+ *     <li>Run each of {@link #getForeignKeyCheckQueries()}. If any returns a row, run {@link #ROLLBACK};
+ *     otherwise run {@link #COMMIT}.</li>
+ *     <li>Restore the values read in the first step with PRAGMA &lt;name&gt;=&lt;value&gt;;</li>
+ * </ol>
+ * @see SqlGenerator#generateMigrationTransaction(com.fsryan.forsuredb.api.migration.MigrationSet)
+ */
+public class MigrationTransaction {
+
+    public static final String BEGIN = "BEGIN IMMEDIATE;";
+    public static final String COMMIT = "COMMIT;";
+    public static final String ROLLBACK = "ROLLBACK;";
+
+    private final List<String> changedPragmaNames;
+    private final List<String> pragmaSql;
+    private final List<String> transactionSql;
+    private final List<String> foreignKeyCheckQueries;
+
+    /**
+     * @param migrationSql the unwrapped migration SQL
+     * @param rebuiltTableNames the names of the tables that the migration SQL rebuilds
+     * @param rebuildCacheSizeKiB the page cache size, in KiB, to use while tables are rebuilt
+     */
+    /*package*/ MigrationTransaction(List<String> migrationSql, Iterable<String> rebuiltTableNames, int rebuildCacheSizeKiB) {
+        List<String> checks = new ArrayList<>();
+        for (String tableName : rebuiltTableNames) {
+            checks.add("PRAGMA foreign_key_check(" + tableName + ");");
+        }
+        foreignKeyCheckQueries = Collections.unmodifiableList(checks);
+
+        if (checks.isEmpty()) {
+            changedPragmaNames = Collections.emptyList();
+            pragmaSql = Collections.emptyList();
+        } else {
+            changedPragmaNames = Collections.unmodifiableList(Arrays.asList("foreign_keys", "cache_size", "temp_store"));
+            List<String> pragmas = new ArrayList<>(3);
+            pragmas.add("PRAGMA foreign_keys=OFF;");
+            pragmas.add("PRAGMA cache_size=-" + rebuildCacheSizeKiB + ";");
+            pragmas.add("PRAGMA temp_store=MEMORY;");
+            pragmaSql = Collections.unmodifiableList(pragmas);
+        }
+
+        List<String> transaction = new ArrayList<>(migrationSql.size() + 1);
+        transaction.add(BEGIN);
+        transaction.addAll(migrationSql);
+        transactionSql = Collections.unmodifiableList(transaction);
+    }
+
+    /**
+     * @return the names of the PRAGMAs that {@link #getPragmaSql()} changes, whose values should be read before
+     * and restored after the transaction
+     */
+    public List<String> getChangedPragmaNames() {
+        return changedPragmaNames;
+    }
+
+    /**
+     * @return the PRAGMAs to run before the transaction begins, which are empty unless a table is rebuilt
+     */
+    public List<String> getPragmaSql() {
+        return pragmaSql;
+    }
+
+    /**
+     * @return {@link #BEGIN} followed by the migration SQL
+     */
+    public List<String> getTransactionSql() {
+        return transactionSql;
+    }
+
+    /**
+     * @return the queries that return a row for each foreign key violation in a rebuilt table; if any of them
+     * returns a row, the transaction must be rolled back
+     */
+    public List<String> getForeignKeyCheckQueries() {
+        return foreignKeyCheckQueries;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     How the modified column of each table is kept current when a row is updated
+ * </p>
+ */
+public enum ModifiedTimestampMode {
+    /**
+     * <p>
+     *     An AFTER UPDATE trigger sets modified with a second UPDATE of every updated row. This is the default.
+     * </p>
+     */
+    TRIGGER {
+        @Override
+        /*package*/ String triggerCondition() {
+            return "";
+        }
+    },
+    /**
+     * <p>
+     *     Like {@link #TRIGGER}, but the trigger only runs WHEN NEW.modified IS OLD.modified, so an update that sets
+     *     modified itself is not followed by a second UPDATE. Update SQL generated by {@link SqlGenerator} sets
+     *     modified. An update that sets modified to the value it already had is still followed by the second UPDATE.
+     * </p>
+     */
+    GUARDED_TRIGGER {
+        @Override
+        /*package*/ String triggerCondition() {
+            return " WHEN NEW.modified IS OLD.modified";
+        }
+    },
+    /**
+     * <p>
+     *     There is no trigger. Update SQL generated by {@link SqlGenerator} sets modified, and any other update must
+     *     set modified itself. Migrations drop the triggers of tables that had them.
+     * </p>
+     */
+    INLINE {
+        @Override
+        /*package*/ String triggerCondition() {
+            return null;
+        }
+    };
+
+    /**
+     * @return the WHEN clause of the trigger, including its leading space; an empty string if the trigger always
+     * runs; or null if there is no trigger
+     */
+    /*package*/ abstract String triggerCondition();
+
+    /**
+     * @return whether update SQL should set the modified column
+     */
+    /*package*/ boolean setsModifiedInline() {
+        return this != TRIGGER;
+    }
+
+    /*package*/ static String triggerNameOf(String tableName) {
+        return tableName + "_updated_trigger";
+    }
+
+    /**
+     * @param tableName the name of the table
+     * @param primaryKeyWhere the condition that matches the updated row in the trigger
+     * @param currentTimeSql the SQL expression for the current time
+     * @return the query that creates the trigger that sets the modified column of the table, or no queries if
+     * this mode has no trigger
+     */
+    /*package*/ List<String> createTriggerQueries(String tableName, String primaryKeyWhere, String currentTimeSql) {
+        List<String> ret = new ArrayList<>(1);
+        final String condition = triggerCondition();
+        if (condition != null) {
+            ret.add("CREATE TRIGGER " + triggerNameOf(tableName) + " AFTER UPDATE ON " + tableName + condition
+                    + " BEGIN UPDATE " + tableName + " SET modified=" + currentTimeSql + " WHERE " + primaryKeyWhere + "; END;");
+        }
+        return ret;
+    }
+}
@@ -23,10 +23,7 @@ import com.fsryan.forsuredb.api.info.TableInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.MigrationSet;
 import com.fsryan.forsuredb.api.migration.QueryGenerator;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
-import java.lang.reflect.Type;
 import java.util.*;
 
 /**
@@ -44,13 +41,34 @@ public class QueryGeneratorFactory {
             return new ArrayList<>();
         }
     };
-    private static final Gson gson = new Gson();
 
     // tableName -> list of column names that are NEW foreign key columns--not existing
     private final Map<String, List<String>> newForeignKeyColumnMap;
+    // tableName -> set of column names that are added by migrations in the set
+    private final Map<String, Set<String>> newColumnMap;
+    private final GenerationOptions options;
+    private CompiledSchema compiledSchema;
+    // migration -> decoded JSON extras, so that the extras of a migration are decoded at most once
+    private final Map<Migration, Set<String>> existingColumnNamesCache = new IdentityHashMap<>();
+    private final Map<Migration, Set<TableForeignKeyInfo>> currentForeignKeysCache = new IdentityHashMap<>();
 
     public QueryGeneratorFactory(MigrationSet migrationSet) {
+        this(migrationSet, GenerationOptions.DEFAULT);
+    }
+
+    public QueryGeneratorFactory(MigrationSet migrationSet, GenerationOptions options) {
         newForeignKeyColumnMap = createNewForeignKeyMap(migrationSet);
+        newColumnMap = createNewColumnMap(migrationSet);
+        this.options = options;
+    }
+
+    /**
+     * @param migrationSet the {@link MigrationSet}
+     * @param compiledSchema the compiled target schema of the {@link MigrationSet}, which the generators share
+     */
+    public QueryGeneratorFactory(MigrationSet migrationSet, CompiledSchema compiledSchema) {
+        this(migrationSet, compiledSchema.getOptions());
+        this.compiledSchema = compiledSchema;
     }
 
     public QueryGenerator getFor(Migration migration, Map<String, TableInfo> targetSchema) {
@@ -64,37 +82,42 @@ public class QueryGeneratorFactory {
             return emptyGenerator;  // <-- the target context will not have the table if it is about to be dropped
         }
 
+        final CompiledSchema compiledSchema = compiledSchemaOf(targetSchema);
         switch (migration.getType()) {
             case CREATE_TABLE:
-                return new CreateTableGenerator(migration.getTableName(), targetSchema);
+                return new CreateTableGenerator(migration.getTableName(), compiledSchema);
             case ADD_FOREIGN_KEY_REFERENCE:
-                List<String> allForeignKeys = newForeignKeyColumnMap.remove(migration.getTableName());
-                if (allForeignKeys == null) {   // <-- migration has already been run that creates all foreign keys
+                if (newForeignKeyColumnMap.remove(migration.getTableName()) == null) {   // <-- migration has already been run that creates all foreign keys
                     return emptyGenerator;
                 }
-                return new AddForeignKeyGenerator(table, listOfColumnInfo(table, allForeignKeys), targetSchema);
+                // the target definition of the table already has the new foreign keys, so the table is rebuilt as
+                // any other table is, keeping its WITHOUT ROWID and its indices
+                return new UpdateForeignKeysGenerator(table.getTableName(), Collections.<TableForeignKeyInfo>emptySet(), existingColumnNamesOf(table), compiledSchema);
             // TODO: figure out whether you will do anything with this or just always put the unique columns in the table create queries
 //            case ALTER_TABLE_ADD_UNIQUE:
 //                return new AddUniqueColumnGenerator(table.getTableName(), table.getColumn(migration.getColumnName()));
             case MAKE_COLUMN_UNIQUE:
                 // Intentionally falling through
             case ADD_UNIQUE_INDEX:
+                if (hasIndexDefinition(migration)) {
+                    return new AddCompositeIndexGenerator(indexDefinitionOf(migration, true));
+                }
                 return new AddIndexGenerator(table.getTableName(), table.getColumn(migration.getColumnName()), true);
             case ADD_INDEX:
+                if (hasIndexDefinition(migration)) {
+                    return new AddCompositeIndexGenerator(indexDefinitionOf(migration, false));
+                }
                 return new AddIndexGenerator(table.getTableName(), table.getColumn(migration.getColumnName()));
             case ALTER_TABLE_ADD_COLUMN:
-                return new AddColumnGenerator(table.getTableName(), table.getColumn(migration.getColumnName()));
+                return new AddColumnGenerator(table.getTableName(), table.getColumn(migration.getColumnName()), options);
             case DROP_TABLE:
                 return new DropTableGenerator(migration.getTableName());
             case CHANGE_DEFAULT_VALUE:
-                return new ChangeDefaultValueGenerator(migration.getTableName(), targetSchema);
+                return new ChangeDefaultValueGenerator(migration.getTableName(), existingColumnNamesOf(table), compiledSchema);
             case UPDATE_PRIMARY_KEY:
-                return new UpdatePrimaryKeyGenerator(migration.getTableName(), existingColumnNamesFrom(migration), targetSchema);
+                return new UpdatePrimaryKeyGenerator(migration.getTableName(), existingColumnNamesFrom(migration), compiledSchema);
             case UPDATE_FOREIGN_KEYS:
-                final Type tableForeignKeysInfoSetType = new TypeToken<Set<TableForeignKeyInfo>>() {}.getType();
-                final String currentForeignKeysJson = migration.getExtras().get(migration.getExtras().get("current_foreign_keys"));
-                final Set<TableForeignKeyInfo> currentForeignKeys = gson.fromJson(currentForeignKeysJson, tableForeignKeysInfoSetType);
-                return new UpdateForeignKeysGenerator(table.getTableName(), currentForeignKeys, existingColumnNamesFrom(migration), targetSchema);
+                return new UpdateForeignKeysGenerator(table.getTableName(), currentForeignKeysFrom(migration), existingColumnNamesFrom(migration), compiledSchema);
         }
 
         return emptyGenerator;
@@ -134,23 +157,106 @@ public class QueryGeneratorFactory {
         return retMap;
     }
 
-    private List<ColumnInfo> listOfColumnInfo(TableInfo table, List<String> columnNames) {
-        List<ColumnInfo> retList = new ArrayList<>();
-        for (String columnName : columnNames) {
-            retList.add(table.getColumn(columnName));
+    /**
+     * <p>
+     *     When a table is recreated, the columns that are added in the same migration set do not yet exist, so they
+     *     cannot be copied to the temp table.
+     * </p>
+     * @param migrationSet the full set of migrations that this query generator factory is creating queries
+     * @return a map of tableName to set of column names that are added by the migration set
+     */
+    private Map<String, Set<String>> createNewColumnMap(MigrationSet migrationSet) {
+        if (migrationSet == null || !migrationSet.containsMigrations() || migrationSet.getTargetSchema() == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Set<String>> retMap = new HashMap<>();
+        for (Migration m : migrationSet.getOrderedMigrations()) {
+            if (m.getType() != Migration.Type.ALTER_TABLE_ADD_COLUMN
+                    && m.getType() != Migration.Type.ALTER_TABLE_ADD_UNIQUE
+                    && m.getType() != Migration.Type.ADD_FOREIGN_KEY_REFERENCE) {
+                continue;
+            }
+            Set<String> newColumns = retMap.get(m.getTableName());
+            if (newColumns == null) {
+                newColumns = new HashSet<>();
+                retMap.put(m.getTableName(), newColumns);
+            }
+            newColumns.add(m.getColumnName());
+        }
+
+        return retMap;
+    }
+
+    /**
+     * @return the {@link CompiledSchema} of the target schema, which is compiled again only if a different target
+     * schema is passed in
+     */
+    private CompiledSchema compiledSchemaOf(Map<String, TableInfo> targetSchema) {
+        if (compiledSchema == null || compiledSchema.getTargetSchema() != targetSchema) {
+            compiledSchema = new CompiledSchema(targetSchema, options);
+        }
+        return compiledSchema;
+    }
+
+    /**
+     * @return the names of the columns of the table that exist before the migration set is run or null if all of
+     * the columns exist
+     */
+    private Set<String> existingColumnNamesOf(TableInfo table) {
+        Set<String> newColumns = newColumnMap.get(table.getTableName());
+        if (newColumns == null) {
+            return null;
+        }
+        Set<String> ret = new HashSet<>();
+        for (ColumnInfo column : table.getColumns()) {
+            if (!newColumns.contains(column.getColumnName())) {
+                ret.add(column.getColumnName());
+            }
         }
-        return retList;
+        return ret;
     }
 
-    private static Set<String> existingColumnNamesFrom(Migration migration) {
-        final String currentColumnsJson = migration.getExtras().get("existing_column_names");
+    private Set<String> existingColumnNamesFrom(Migration migration) {
+        if (existingColumnNamesCache.containsKey(migration)) {
+            return existingColumnNamesCache.get(migration);
+        }
+
+        final String currentColumnsJson = extraOf(migration, MigrationExtras.EXISTING_COLUMN_NAMES_KEY);
+        Set<String> ret;
         if (currentColumnsJson == null) {
-            Set<String> ret = new HashSet<>();
+            ret = new HashSet<>();
             for (ColumnInfo column : TableInfo.DEFAULT_COLUMNS.values()) {
                 ret.add(column.getColumnName());
             }
-            return ret;
+        } else {
+            ret = MigrationExtras.stringSetOf(currentColumnsJson);
+        }
+        ret = ret == null ? null : Collections.unmodifiableSet(ret);
+        existingColumnNamesCache.put(migration, ret);
+        return ret;
+    }
+
+    private Set<TableForeignKeyInfo> currentForeignKeysFrom(Migration migration) {
+        if (currentForeignKeysCache.containsKey(migration)) {
+            return currentForeignKeysCache.get(migration);
         }
-        return gson.fromJson(currentColumnsJson, new TypeToken<Set<String>>() {}.getType());
+
+        Set<TableForeignKeyInfo> ret = MigrationExtras.tableForeignKeyInfoSetOf(extraOf(migration, MigrationExtras.CURRENT_FOREIGN_KEYS_KEY));
+        ret = ret == null ? Collections.<TableForeignKeyInfo>emptySet() : Collections.unmodifiableSet(ret);
+        currentForeignKeysCache.put(migration, ret);
+        return ret;
+    }
+
+    private static String extraOf(Migration migration, String key) {
+        return migration.getExtras() == null ? null : migration.getExtras().get(key);
+    }
+
+    private static boolean hasIndexDefinition(Migration migration) {
+        return migration.getExtras() != null && migration.getExtras().containsKey(IndexInfo.MIGRATION_EXTRA_KEY);
+    }
+
+    private static IndexInfo indexDefinitionOf(Migration migration, boolean unique) {
+        return IndexInfo.fromJson(migration.getTableName(), migration.getExtras().get(IndexInfo.MIGRATION_EXTRA_KEY), unique);
     }
 }
@@ -0,0 +1,52 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+/**
+ * <p>
+ *     How a table is rebuilt when a migration cannot be performed with ALTER TABLE.
+ * </p>
+ * <p>
+ *     Both strategies drop the table. If foreign key enforcement is on, DROP TABLE first deletes every row, which
+ *     runs the ON DELETE action of each foreign key that references the table and so deletes or nulls the rows of
+ *     its child tables. The caller must therefore run PRAGMA foreign_keys=OFF before the migration SQL, outside of
+ *     any transaction, and check the foreign keys of the rebuilt tables before committing. The migration SQL does
+ *     not do this itself: PRAGMA foreign_keys has no effect inside a transaction, and only the caller knows the
+ *     setting to restore afterward.
+ *     {@link SqlGenerator#generateMigrationTransaction(com.fsryan.forsuredb.api.migration.MigrationSet)} returns
+ *     the PRAGMAs and the foreign key checks.
+ * </p>
+ */
+public enum RebuildStrategy {
+    /**
+     * <p>
+     *     Copy the rows into temp_&lt;table&gt;, drop and recreate the table, then copy the rows back. Every row is
+     *     copied twice. This is the default.
+     * </p>
+     */
+    TEMP_TABLE_COPY,
+    /**
+     * <p>
+     *     Create new_&lt;table&gt; with the target definition, copy the rows into it once with explicit column lists,
+     *     drop the table, rename new_&lt;table&gt; and then recreate the indices and triggers. This is the procedure
+     *     that SQLite documents for schema changes that ALTER TABLE cannot make. Columns that do not exist yet get
+     *     their default values. As with {@link #TEMP_TABLE_COPY}, foreign key enforcement must be off (see above).
+     * </p>
+     */
+    CREATE_COPY_RENAME
+}
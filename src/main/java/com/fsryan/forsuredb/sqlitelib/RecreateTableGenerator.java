@@ -7,11 +7,26 @@ import com.fsryan.forsuredb.api.migration.QueryGenerator;
 
 import java.util.*;
 
+/**
+ * <p>
+ *     Rebuilds a table according to the {@link RebuildStrategy} of the {@link GenerationOptions}. Either way, the
+ *     data are loaded into a table that has no indices or triggers other than those implied by its constraints.
+ *     Then the indices are built in one pass each, and finally the modified trigger is attached.
+ * </p>
+ * <p>
+ *     The generated SQL drops the table, so foreign key enforcement must be off while it runs. The caller turns it
+ *     off and checks the foreign keys afterward, as described in {@link RebuildStrategy}.
+ * </p>
+ */
 public abstract class RecreateTableGenerator extends QueryGenerator {
 
     protected final TableInfo table;
     protected final Map<String, TableInfo> targetSchema;
     protected final List<ColumnInfo> tmpTableExcludedColumns = new ArrayList<>();
+    private final Set<String> tmpTableExcludedColumnNames = new HashSet<>();
+    protected final GenerationOptions options;
+    protected final CompiledSchema compiledSchema;
+    protected final CompiledTable compiledTable;
 
     /**
      * <p>
@@ -24,14 +39,33 @@ public abstract class RecreateTableGenerator extends QueryGenerator {
      * @param type the {@link Migration.Type} of this migration
      */
     public RecreateTableGenerator(String tableName, Set<String> currentColumnNames, Map<String, TableInfo> targetSchema, Migration.Type type) {
+        this(tableName, currentColumnNames, targetSchema, type, GenerationOptions.DEFAULT);
+    }
+
+    public RecreateTableGenerator(String tableName,
+                                  Set<String> currentColumnNames,
+                                  Map<String, TableInfo> targetSchema,
+                                  Migration.Type type,
+                                  GenerationOptions options) {
+        this(tableName, currentColumnNames, new CompiledSchema(targetSchema, options), type);
+    }
+
+    public RecreateTableGenerator(String tableName,
+                                  Set<String> currentColumnNames,
+                                  CompiledSchema compiledSchema,
+                                  Migration.Type type) {
         super(tableName, type);
-        this.table = targetSchema.get(tableName);
-        this.targetSchema = targetSchema;
+        this.compiledSchema = compiledSchema;
+        this.compiledTable = compiledSchema.table(tableName);
+        this.table = compiledTable.getTable();
+        this.targetSchema = compiledSchema.getTargetSchema();
+        this.options = compiledSchema.getOptions();
 
         if (currentColumnNames != null && !currentColumnNames.isEmpty()) {
-            for (ColumnInfo targetColumn : table.getColumns()) {
+            for (ColumnInfo targetColumn : compiledTable.getSortedColumns()) {
                 if (!currentColumnNames.contains(targetColumn.getColumnName())) {
                     tmpTableExcludedColumns.add(targetColumn);
+                    tmpTableExcludedColumnNames.add(targetColumn.getColumnName());
                 }
             }
         }
@@ -41,42 +75,151 @@ public abstract class RecreateTableGenerator extends QueryGenerator {
         this(tableName, null, targetSchema, type);
     }
 
+    protected RecreateTableGenerator(String tableName, Map<String, TableInfo> targetSchema, Migration.Type type, GenerationOptions options) {
+        this(tableName, null, targetSchema, type, options);
+    }
+
+    protected RecreateTableGenerator(String tableName, CompiledSchema compiledSchema, Migration.Type type) {
+        this(tableName, null, compiledSchema, type);
+    }
+
     @Override
     public List<String> generate() {
+        return options.getRebuildStrategy() == RebuildStrategy.CREATE_COPY_RENAME
+                ? createCopyRenameQueries()
+                : tempTableCopyQueries();
+    }
+
+    private List<String> tempTableCopyQueries() {
+        CreateTableGenerator createTableGenerator = new CreateTableGenerator(getTableName(), compiledSchema);
         List<String> retList = new ArrayList<>();
 
-        retList.addAll(new CreateTempTableFromExisting(table, tmpTableExcludedColumns).generate());
+        retList.addAll(new CreateTempTableFromExisting(compiledTable, tmpTableExcludedColumns).generate());
         retList.addAll(new DropTableGenerator(getTableName()).generate());
-        retList.addAll(new CreateTableGenerator(getTableName(), targetSchema).generate());
-        for (ColumnInfo columnInfo : table.getNonForeignKeyColumns()) { // TODO: update this to filter based upon TableForeignKeyInfo
-            if (TableInfo.DEFAULT_COLUMNS.containsKey(columnInfo.getColumnName())
-                    || table.getPrimaryKey().contains(columnInfo.getColumnName())
-                    || columnInfo.isUnique()) {
-                continue;   // <-- these columns were added in the CREATE TABLE query
-            }
-            retList.addAll(new AddColumnGenerator(getTableName(), columnInfo).generate());
-        }
+        retList.add(createTableGenerator.createTableQuery(getTableName()));
         retList.add(reinsertDataQuery());
         retList.addAll(new DropTableGenerator(tempTableName()).generate());
+        retList.addAll(createTableGenerator.indexQueries());
+        retList.addAll(createTableGenerator.modifiedTriggerQueries());
 
         return retList;
     }
 
+    private List<String> createCopyRenameQueries() {
+        CreateTableGenerator createTableGenerator = new CreateTableGenerator(getTableName(), compiledSchema);
+        List<String> retList = new ArrayList<>();
+
+        retList.addAll(new DropTableGenerator(newTableName()).generate());
+        retList.add(createTableGenerator.createTableQuery(newTableName()));
+        retList.add(copyDataQuery());
+        retList.addAll(new DropTableGenerator(getTableName()).generate());
+        retList.add("ALTER TABLE " + newTableName() + " RENAME TO " + getTableName() + ";");
+        retList.addAll(createTableGenerator.indexQueries());
+        retList.addAll(createTableGenerator.modifiedTriggerQueries());
+
+        return retList;
+    }
+
+    /**
+     * @param chunkSize the maximum number of rows to copy per chunk
+     * @param additionalFinishSql SQL of later migrations of the table to run after the rebuilt table is swapped in
+     * @return a plan that rebuilds the table in resumable chunks rather than with {@link #generate()}
+     * @throws IllegalArgumentException if the table is WITHOUT ROWID, because the chunks are copied in rowid order
+     */
+    /*package*/ ChunkedRebuildPlan chunkedRebuildPlan(int chunkSize, List<String> additionalFinishSql) {
+        if (compiledTable.isWithoutRowid()) {
+            throw new IllegalArgumentException("Cannot rebuild WITHOUT ROWID table " + getTableName() + " in chunks: the chunks are copied in rowid order");
+        }
+        CreateTableGenerator createTableGenerator = new CreateTableGenerator(getTableName(), compiledSchema);
+        StringBuilder columnBuf = new StringBuilder(compiledTable.columnNamesLength());
+        StringBuilder selectBuf = new StringBuilder(compiledTable.columnNamesLength());
+        appendCopiedColumns(columnBuf, selectBuf);
+
+        List<String> afterRenameSql = new ArrayList<>();
+        afterRenameSql.addAll(createTableGenerator.indexQueries());
+        afterRenameSql.addAll(createTableGenerator.modifiedTriggerQueries());
+        afterRenameSql.addAll(additionalFinishSql);
+        return new ChunkedRebuildPlan(
+                getTableName(),
+                chunkSize,
+                createTableGenerator.createTableQuery(ChunkedRebuildPlan.chunkedTableNameOf(getTableName())),
+                columnBuf.toString(),
+                selectBuf.toString(),
+                afterRenameSql,
+                options.getShadowRebuildTableNames().contains(getTableName()) ? mirroredKeyColumnNames() : null
+        );
+    }
+
+    /**
+     * @return the sorted primary key columns of the target table, which identify the rows that are mirrored into
+     * the shadow table
+     * @throws IllegalArgumentException if a primary key column does not exist before the table is rebuilt
+     */
+    private List<String> mirroredKeyColumnNames() {
+        List<String> ret = compiledTable.getSortedPrimaryKeyColumnNames().isEmpty()
+                ? Collections.singletonList(TableInfo.DEFAULT_PRIMARY_KEY_COLUMN)
+                : compiledTable.getSortedPrimaryKeyColumnNames();
+        for (String columnName : ret) {
+            if (tmpTableExcludedColumnNames.contains(columnName)) {
+                throw new IllegalArgumentException("Cannot mirror writes to " + getTableName() + ": primary key column " + columnName + " does not exist yet");
+            }
+        }
+        return ret;
+    }
+
+    private String copyDataQuery() {
+        StringBuilder columnBuf = new StringBuilder(compiledTable.columnNamesLength());
+        StringBuilder selectBuf = new StringBuilder(compiledTable.columnNamesLength());
+        appendCopiedColumns(columnBuf, selectBuf);
+        return new StringBuilder(columnBuf.length() + selectBuf.length() + 64)
+                .append("INSERT INTO ").append(newTableName())
+                .append(" (").append(columnBuf)
+                .append(") SELECT ").append(selectBuf)
+                .append(" FROM ").append(getTableName()).append(";")
+                .toString();
+    }
+
+    private void appendCopiedColumns(StringBuilder columnBuf, StringBuilder selectBuf) {
+        for (ColumnInfo tableColumn : compiledTable.getSortedColumns()) {
+            if (tmpTableExcludedColumnNames.contains(tableColumn.getColumnName())) {
+                continue;   // <-- the column does not exist yet, so it gets its default value
+            }
+            columnBuf.append(tableColumn.getColumnName()).append(", ");
+            selectBuf.append(reinsertExpressionOf(tableColumn)).append(", ");
+        }
+        columnBuf.delete(columnBuf.length() - 2, columnBuf.length());
+        selectBuf.delete(selectBuf.length() - 2, selectBuf.length());
+    }
+
     private String reinsertDataQuery() {
-        StringBuilder buf = new StringBuilder("INSERT INTO ").append(getTableName()).append(" SELECT ");
-        List<ColumnInfo> tableColumns = new ArrayList<>(table.getColumns());
-        Collections.sort(tableColumns);
-        for (ColumnInfo tableColumn : tableColumns) {
-            if (tmpTableExcludedColumns.contains(tableColumn)) {
+        StringBuilder buf = new StringBuilder(compiledTable.columnNamesLength() + 9 * tmpTableExcludedColumns.size() + 64)
+                .append("INSERT INTO ").append(getTableName()).append(" SELECT ");
+        for (ColumnInfo tableColumn : compiledTable.getSortedColumns()) {
+            if (tmpTableExcludedColumnNames.contains(tableColumn.getColumnName())) {
                 buf.append(", null AS ").append(tableColumn.getColumnName());
             } else {
-                buf.append("_id".equals(tableColumn.getColumnName()) ? "" : ", ").append(tableColumn.getColumnName());
+                buf.append("_id".equals(tableColumn.getColumnName()) ? "" : ", ").append(reinsertExpressionOf(tableColumn));
             }
         }
         return buf.append(" FROM ").append(tempTableName()).append(";").toString();
     }
 
+    /**
+     * <p>
+     *     Override to transform the data of an existing column as it is copied into the rebuilt table
+     * </p>
+     * @param column a column that exists both before and after the table is rebuilt
+     * @return the expression selected from the existing data for the column
+     */
+    protected String reinsertExpressionOf(ColumnInfo column) {
+        return column.getColumnName();
+    }
+
     private String tempTableName() {
         return "temp_" + getTableName();
     }
+
+    private String newTableName() {
+        return "new_" + getTableName();
+    }
 }
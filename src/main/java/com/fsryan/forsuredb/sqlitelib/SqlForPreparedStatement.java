@@ -0,0 +1,67 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     The SQL of a statement meant to be compiled once and executed many times along with the
+ *     replacements that should be bound, in order, to its ? placeholders
+ * </p>
+ */
+public class SqlForPreparedStatement {
+
+    private final String sql;
+    private final String[] replacements;
+
+    public SqlForPreparedStatement(String sql, String[] replacements) {
+        this.sql = sql;
+        this.replacements = replacements == null ? new String[0] : replacements;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public String[] getReplacements() {
+        return replacements;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        SqlForPreparedStatement that = (SqlForPreparedStatement) o;
+        return (sql == null ? that.sql == null : sql.equals(that.sql)) && Arrays.equals(replacements, that.replacements);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (sql == null ? 0 : sql.hashCode()) + Arrays.hashCode(replacements);
+    }
+
+    @Override
+    public String toString() {
+        return "SqlForPreparedStatement{sql='" + sql + "', replacements=" + Arrays.toString(replacements) + '}';
+    }
+}
@@ -18,9 +18,11 @@
 package com.fsryan.forsuredb.sqlitelib;
 
 import com.fsryan.forsuredb.api.Finder;
+import com.fsryan.forsuredb.api.info.ColumnInfo;
 import com.fsryan.forsuredb.api.info.TableInfo;
 import com.fsryan.forsuredb.api.migration.Migration;
 import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
 import com.fsryan.forsuredb.api.sqlgeneration.DBMSIntegrator;
 
 import java.text.ParseException;
@@ -30,12 +32,36 @@ import java.util.*;
 public class SqlGenerator implements DBMSIntegrator {
 
     public static final String CURRENT_UTC_TIME = "STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')";
-    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    /**
+     * <p>
+     *     The current time in milliseconds since the epoch. Used instead of {@link #CURRENT_UTC_TIME} when dates are
+     *     stored as {@link DateStorage#EPOCH_MILLIS}.
+     * </p>
+     */
+    public static final String CURRENT_UTC_TIME_MILLIS = "CAST(STRFTIME('%s', 'NOW') AS INTEGER) * 1000 + CAST(SUBSTR(STRFTIME('%f', 'NOW'), 4) AS INTEGER)";
+    /**
+     * @deprecated {@link SimpleDateFormat} is not thread safe. Use {@link #formatDate(Date)} and
+     * {@link #parseDate(String)} or a {@link DateCodec}.
+     */
+    @Deprecated
+    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(DateCodec.PATTERN);
     public static final String CHANGE_ACTION_NO_ACTION = "NO ACTION";
     public static final String CHANGE_ACTION_RESTRICT = "RESTRICT";
     public static final String CHANGE_ACTION_SET_NULL = "SET NULL";
     public static final String CHANGE_ACTION_SET_DEFAULT = "SET DEFAULT";
     public static final String CHANGE_ACTION_CASCADE = "CASCADE";
+    /**
+     * <p>
+     *     The default maximum number of ? placeholders SQLite allows in a single statement
+     * </p>
+     */
+    public static final int SQLITE_MAX_VARIABLE_NUMBER = 999;
+    /**
+     * <p>
+     *     The default maximum number of rows SQLite allows in a single VALUES clause
+     * </p>
+     */
+    public static final int SQLITE_MAX_COMPOUND_SELECT = 500;
 
     /*package*/ static final Set<Migration.Type> TYPES_REQUIRING_TABLE_RECREATION = new HashSet<>(4);
     static {
@@ -48,30 +74,166 @@ public class SqlGenerator implements DBMSIntegrator {
     // visible for testing
     /*package*/ static final String EMPTY_SQL = ";";
     private static final Set<String> columnExclusionFilter = new HashSet<>(Arrays.asList("_id", "created", "modified"));
+    private static final Set<String> updateExclusionFilter = new HashSet<>(Arrays.asList("_id", "created"));
+    /*package*/ static final int TEMPLATE_CACHE_SIZE = 256;
+    private static final StatementTemplateCache insertionTemplateCache = new StatementTemplateCache(TEMPLATE_CACHE_SIZE);
 
-    public SqlGenerator() {}
+    private final GenerationOptions options;
+
+    public SqlGenerator() {
+        this(GenerationOptions.DEFAULT);
+    }
+
+    public SqlGenerator(GenerationOptions options) {
+        this.options = options;
+    }
 
     @Override
     public List<String> generateMigrationSql(MigrationSet migrationSet) {
         if (migrationSet == null || !migrationSet.containsMigrations() || migrationSet.getTargetSchema() == null) {
             return new ArrayList<>();
         }
+        List<String> sqlList = generateMigrationSql(migrationSet, new ArrayList<ChunkedRebuildPlan>(), new LinkedHashSet<String>());
+        return options.wrapMigrationsInTransaction() && !sqlList.isEmpty()
+                ? wrapInTransaction(sqlList)
+                : sqlList;
+    }
+
+    /**
+     * <p>
+     *     Generates the migration SQL along with the PRAGMAs and foreign key checks that whatever runs it needs in
+     *     order to run it in one transaction in which tables are rebuilt. Unlike
+     *     {@link #generateMigrationSql(MigrationSet)} with {@link GenerationOptions#wrapMigrationsInTransaction()},
+     *     this lets the caller restore its own PRAGMA values and roll back when a foreign key check fails.
+     * </p>
+     * @param migrationSet the {@link MigrationSet}
+     * @return the {@link MigrationTransaction} that runs the unwrapped migration SQL
+     */
+    public MigrationTransaction generateMigrationTransaction(MigrationSet migrationSet) {
+        if (migrationSet == null || !migrationSet.containsMigrations() || migrationSet.getTargetSchema() == null) {
+            return new MigrationTransaction(Collections.<String>emptyList(), Collections.<String>emptyList(), options.getRebuildCacheSizeKiB());
+        }
+        Set<String> rebuiltTables = new LinkedHashSet<>();
+        List<String> sqlList = generateMigrationSql(migrationSet, new ArrayList<ChunkedRebuildPlan>(), rebuiltTables);
+        return new MigrationTransaction(sqlList, rebuiltTables, options.getRebuildCacheSizeKiB());
+    }
+
+    /**
+     * <p>
+     *     Returns the migration SQL that the {@link MigrationPlanCache} stores under the
+     *     {@link MigrationSetFingerprint} of the {@link MigrationSet} and these {@link GenerationOptions}, generating
+     *     and storing it if there is none.
+     * </p>
+     * @param migrationSet the {@link MigrationSet}
+     * @param planCache the cache of previously generated migration SQL
+     * @return the same SQL as {@link #generateMigrationSql(MigrationSet)}
+     */
+    public List<String> generateMigrationSql(MigrationSet migrationSet, MigrationPlanCache planCache) {
+        if (migrationSet == null || !migrationSet.containsMigrations() || migrationSet.getTargetSchema() == null) {
+            return new ArrayList<>();
+        }
 
-        QueryGeneratorFactory qgf = new QueryGeneratorFactory(migrationSet);
-        List<Migration> migrations = migrationSet.getOrderedMigrations();
-        Collections.sort(migrations, new MigrationComparator(migrationSet.getTargetSchema()));
+        final long fingerprint = MigrationSetFingerprint.of(migrationSet, options);
+        List<String> cachedSql = planCache.get(fingerprint);
+        if (cachedSql != null) {
+            return new ArrayList<>(cachedSql);
+        }
+        List<String> ret = generateMigrationSql(migrationSet);
+        planCache.put(fingerprint, ret);
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Plans the rebuilds of the tables of {@link GenerationOptions#getChunkedRebuildTableNames()} that
+     *     {@link #generateMigrationSql(MigrationSet)} leaves out. Run each plan after the migration SQL. The SQL of
+     *     later migrations of a rebuilt table that the rebuild does not already perform, such as the creation of an
+     *     index from its definition, is part of the finish SQL of the plan.
+     * </p>
+     * @param migrationSet the same {@link MigrationSet} passed to {@link #generateMigrationSql(MigrationSet)}
+     * @return the plans, in the order in which the tables would have been rebuilt
+     */
+    public List<ChunkedRebuildPlan> generateChunkedRebuildPlans(MigrationSet migrationSet) {
+        List<ChunkedRebuildPlan> ret = new ArrayList<>();
+        if (migrationSet == null || !migrationSet.containsMigrations() || migrationSet.getTargetSchema() == null
+                || options.getChunkedRebuildTableNames().isEmpty()) {
+            return ret;
+        }
+        generateMigrationSql(migrationSet, ret, new LinkedHashSet<String>());
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Generates the SQL that converts the date columns of every table in the schema from
+     *     {@link DateStorage#TEXT} to {@link DateStorage#EPOCH_MILLIS}. Run it once, against a database created
+     *     with the default {@link GenerationOptions}, before switching to {@link DateStorage#EPOCH_MILLIS}.
+     * </p>
+     * @param schema the current schema, tableName -> {@link TableInfo}
+     * @return the conversion SQL, or an empty list if this SqlGenerator does not store dates as
+     * {@link DateStorage#EPOCH_MILLIS}
+     * @see DateStorageConversionGenerator
+     */
+    public List<String> generateDateStorageConversionSql(Map<String, TableInfo> schema) {
         List<String> sqlList = new ArrayList<>();
-        Set<String> recreatedTables = new HashSet<>();
-        for (Migration m : migrations) {
-            if (recreatedTables.contains(m.getTableName()) && isMigrationHandledOnCreate(m, migrationSet.getTargetSchema())) {
-                continue;
-            }
-            if (TYPES_REQUIRING_TABLE_RECREATION.contains(m.getType())) {
-                recreatedTables.add(m.getTableName());
-            }
-            sqlList.addAll(qgf.getFor(m, migrationSet.getTargetSchema()).generate());
+        if (schema == null || options.getDateStorage() != DateStorage.EPOCH_MILLIS) {
+            return sqlList;
         }
 
+        final CompiledSchema compiledSchema = new CompiledSchema(schema, options);
+        List<String> tableNames = new ArrayList<>(schema.keySet());
+        Collections.sort(tableNames);
+        for (String tableName : tableNames) {
+            sqlList.addAll(new DateStorageConversionGenerator(tableName, compiledSchema).generate());
+        }
+        return sqlList;
+    }
+
+    /**
+     * <p>
+     *     Generates the SQL that creates the foreign key indices of every table in the schema. Tables get these
+     *     indices when they are created or rebuilt, so run this once against a database that was created before
+     *     {@link GenerationOptions#indexForeignKeys()}. Indices that already exist are not recreated.
+     * </p>
+     * @param schema the current schema, tableName -> {@link TableInfo}
+     * @return the index creation SQL, or an empty list if this SqlGenerator does not index foreign keys
+     */
+    public List<String> generateForeignKeyIndexSql(Map<String, TableInfo> schema) {
+        List<String> sqlList = new ArrayList<>();
+        if (schema == null || !options.indexForeignKeys()) {
+            return sqlList;
+        }
+
+        final CompiledSchema compiledSchema = new CompiledSchema(schema, options);
+        List<String> tableNames = new ArrayList<>(schema.keySet());
+        Collections.sort(tableNames);
+        for (String tableName : tableNames) {
+            sqlList.addAll(new CreateTableGenerator(tableName, compiledSchema).foreignKeyIndexQueries());
+        }
+        return sqlList;
+    }
+
+    /**
+     * <p>
+     *     Generates the SQL that replaces the modified trigger of every table in the schema with the trigger of this
+     *     SqlGenerator's {@link ModifiedTimestampMode}. Run it once when switching the mode of an existing database.
+     * </p>
+     * @param schema the current schema, tableName -> {@link TableInfo}
+     * @return the SQL that drops and then recreates the modified trigger of each table
+     */
+    public List<String> generateModifiedTriggerSql(Map<String, TableInfo> schema) {
+        List<String> sqlList = new ArrayList<>();
+        if (schema == null) {
+            return sqlList;
+        }
+
+        final CompiledSchema compiledSchema = new CompiledSchema(schema, options);
+        List<String> tableNames = new ArrayList<>(schema.keySet());
+        Collections.sort(tableNames);
+        for (String tableName : tableNames) {
+            sqlList.add(dropModifiedTriggerQuery(tableName));
+            sqlList.addAll(new CreateTableGenerator(tableName, compiledSchema).modifiedTriggerQueries());
+        }
         return sqlList;
     }
 
@@ -101,6 +263,166 @@ public class SqlGenerator implements DBMSIntegrator {
         return queryBuf.append(") VALUES (").append(valueBuf.toString()).append(");").toString();
     }
 
+    /**
+     * <p>
+     *     Like {@link #newSingleRowInsertionSql(String, Map)}, but rather than inlining the values as literals, the
+     *     returned SQL contains a ? placeholder for each value. The same table and set of columns always results in
+     *     the same SQL (the columns are sorted by name), so SQLite can reuse a compiled statement instead of
+     *     re-parsing and re-planning each insertion.
+     * </p>
+     * @param tableName the name of the table into which the row should be inserted
+     * @param columnValueMap a map of column name to the value that should be inserted
+     * @return a {@link SqlForPreparedStatement} whose replacements are ordered as the placeholders are, or one
+     * whose SQL is {@link #EMPTY_SQL} if there is nothing to insert
+     */
+    public SqlForPreparedStatement newSingleRowInsertionStatement(String tableName, Map<String, String> columnValueMap) {
+        if (tableName == null || tableName.isEmpty() || columnValueMap == null || columnValueMap.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+
+        final List<String> columns = insertableColumnsOf(columnValueMap);
+        if (columns.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+
+        final String[] replacements = new String[columns.size()];
+        for (int i = 0; i < replacements.length; i++) {
+            replacements[i] = columnValueMap.get(columns.get(i));
+        }
+        return new SqlForPreparedStatement(insertionTemplate(tableName, columns, 1, null), replacements);
+    }
+
+    /**
+     * <p>
+     *     Generates multi-row INSERT statements for many rows of the same table. Consecutive rows that insert the same
+     *     set of columns share statements of the form INSERT INTO table (cols) VALUES (?, ?), (?, ?), ...; and each
+     *     statement is limited so that it has no more than {@link #SQLITE_MAX_VARIABLE_NUMBER} placeholders and no
+     *     more than {@link #SQLITE_MAX_COMPOUND_SELECT} rows. The same columns are excluded and the same values are
+     *     skipped as in {@link #newSingleRowInsertionStatement(String, Map)}, so rows that have nothing to insert are
+     *     dropped. The order in which rows are inserted is preserved.
+     * </p>
+     * @param tableName the name of the table into which the rows should be inserted
+     * @param rows the column name to value maps of each row to insert
+     * @return the statements that, executed in order, insert all rows
+     * @throws IllegalArgumentException if a row inserts more than {@link #SQLITE_MAX_VARIABLE_NUMBER} columns
+     */
+    public List<SqlForPreparedStatement> newMultiRowInsertionStatements(String tableName, List<Map<String, String>> rows) {
+        if (tableName == null || tableName.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return multiRowStatements(tableName, null, rows);
+    }
+
+    /**
+     * <p>
+     *     Like {@link #newSingleRowInsertionStatement(String, Map)}, but when the row conflicts with an existing row,
+     *     the existing row is updated instead via INSERT ... ON CONFLICT(target) DO UPDATE SET col=excluded.col. The
+     *     conflict target is the table's primary key when all of its columns are inserted; otherwise, it is the first
+     *     (by name) inserted column that is unique--the same columns for which {@link CreateTableGenerator} creates
+     *     unique indices. When neither is inserted, there is nothing to conflict on, so a plain insertion is returned.
+     * </p>
+     * <p>
+     *     UPSERT requires SQLite 3.24.0 or later.
+     * </p>
+     * @param table the {@link TableInfo} of the table into which the row should be upserted
+     * @param columnValueMap a map of column name to the value that should be inserted or updated
+     * @return a {@link SqlForPreparedStatement} whose replacements are ordered as the placeholders are, or one
+     * whose SQL is {@link #EMPTY_SQL} if there is nothing to upsert
+     */
+    public SqlForPreparedStatement newSingleRowUpsertionStatement(TableInfo table, Map<String, String> columnValueMap) {
+        if (table == null || table.getTableName() == null || table.getTableName().isEmpty()
+                || columnValueMap == null || columnValueMap.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+
+        final List<String> columns = insertableColumnsOf(columnValueMap);
+        if (columns.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+
+        final String[] replacements = new String[columns.size()];
+        for (int i = 0; i < replacements.length; i++) {
+            replacements[i] = columnValueMap.get(columns.get(i));
+        }
+        return new SqlForPreparedStatement(
+                insertionTemplate(table.getTableName(), columns, 1, conflictTargetOf(table, columns)),
+                replacements
+        );
+    }
+
+    /**
+     * <p>
+     *     The batched form of {@link #newSingleRowUpsertionStatement(TableInfo, Map)}. Rows are grouped and chunked
+     *     exactly as in {@link #newMultiRowInsertionStatements(String, List)}.
+     * </p>
+     * @param table the {@link TableInfo} of the table into which the rows should be upserted
+     * @param rows the column name to value maps of each row to upsert
+     * @return the statements that, executed in order, upsert all rows
+     * @throws IllegalArgumentException if a row upserts more than {@link #SQLITE_MAX_VARIABLE_NUMBER} columns
+     */
+    public List<SqlForPreparedStatement> newMultiRowUpsertionStatements(TableInfo table, List<Map<String, String>> rows) {
+        if (table == null || table.getTableName() == null || table.getTableName().isEmpty()) {
+            return new ArrayList<>();
+        }
+        return multiRowStatements(table.getTableName(), table, rows);
+    }
+
+    /**
+     * <p>
+     *     Generates UPDATE table SET col1=?, col2=? WHERE selection; The columns are sorted by name, and _id and
+     *     created are never updated. A null value sets its column to NULL. Unless this SqlGenerator's
+     *     {@link ModifiedTimestampMode} is {@link ModifiedTimestampMode#TRIGGER} or the modified column is in the
+     *     map, the statement also sets modified to the current time so that no trigger has to.
+     * </p>
+     * @param tableName the name of the table whose rows should be updated
+     * @param columnValueMap a map of column name to the value that it should be updated to
+     * @param selection the WHERE clause, without the WHERE keyword, with ? placeholders; null updates every row
+     * @param selectionArgs the values to bind to the placeholders of the selection
+     * @return a {@link SqlForPreparedStatement} whose replacements are the column values followed by the
+     * selection args, or one whose SQL is {@link #EMPTY_SQL} if there is nothing to update
+     */
+    public SqlForPreparedStatement newUpdateStatement(String tableName,
+                                                      Map<String, String> columnValueMap,
+                                                      String selection,
+                                                      String[] selectionArgs) {
+        if (tableName == null || tableName.isEmpty() || columnValueMap == null || columnValueMap.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+
+        final List<String> columns = new ArrayList<>(columnValueMap.size());
+        for (String columnName : columnValueMap.keySet()) {
+            if (columnName != null && !columnName.isEmpty() && !updateExclusionFilter.contains(columnName)) {
+                columns.add(columnName);
+            }
+        }
+        if (columns.isEmpty()) {
+            return new SqlForPreparedStatement(EMPTY_SQL, null);
+        }
+        Collections.sort(columns);
+
+        final int selectionArgCount = selectionArgs == null ? 0 : selectionArgs.length;
+        final List<String> replacements = new ArrayList<>(columns.size() + selectionArgCount);
+        final StringBuilder buf = new StringBuilder(32 + 16 * columns.size()).append("UPDATE ").append(tableName).append(" SET ");
+        for (String column : columns) {
+            final String val = columnValueMap.get(column);
+            buf.append(column).append(val == null ? "=NULL, " : "=?, ");
+            if (val != null) {
+                replacements.add(val);
+            }
+        }
+        buf.delete(buf.length() - 2, buf.length());
+        if (options.getModifiedTimestampMode().setsModifiedInline() && !columns.contains("modified")) {
+            buf.append(", modified=").append(options.getDateStorage().getCurrentTimeSql());
+        }
+        if (selection != null && !selection.isEmpty()) {
+            buf.append(" WHERE ").append(selection);
+            for (int i = 0; i < selectionArgCount; i++) {
+                replacements.add(selectionArgs[i]);
+            }
+        }
+        return new SqlForPreparedStatement(buf.append(';').toString(), replacements.toArray(new String[replacements.size()]));
+    }
+
     @Override
     public String unambiguousColumn(String tableName, String columnName) {
         return tableName + "." + columnName;
@@ -113,42 +435,178 @@ public class SqlGenerator implements DBMSIntegrator {
 
     @Override
     public String orderByAsc(String tableName, String columnName) {
-        return unambiguousColumn(tableName, columnName) + " ASC";
+        return appendOrderByAsc(new StringBuilder(lengthOf(tableName) + lengthOf(columnName) + 5), tableName, columnName).toString();
     }
 
     @Override
     public String orderByDesc(String tableName, String columnName) {
-        return unambiguousColumn(tableName, columnName) + " DESC";
+        return appendOrderByDesc(new StringBuilder(lengthOf(tableName) + lengthOf(columnName) + 6), tableName, columnName).toString();
     }
 
     @Override
     public String combineOrderByExpressions(List<String> orderByList) {
-        return orderByList.size() == 0 ? "" : orderByList.toString().replaceAll("(\\[|\\])", "");
+        if (orderByList.isEmpty()) {
+            return "";
+        }
+        int length = 0;
+        for (int i = 0; i < orderByList.size(); i++) {
+            length += orderByList.get(i).length() + 2;
+        }
+        return appendCombinedOrderByExpressions(new StringBuilder(length), orderByList).toString();
     }
 
     @Override
     public String whereOperation(String tableName, String column, int operation) {
-        switch (operation) {
-            case Finder.OP_EQ: return unambiguousColumn(tableName, column) + " =";
-            case Finder.OP_GE: return unambiguousColumn(tableName, column) + " >=";
-            case Finder.OP_GT: return unambiguousColumn(tableName, column) + " >";
-            case Finder.OP_LE: return unambiguousColumn(tableName, column) + " <=";
-            case Finder.OP_LIKE: return unambiguousColumn(tableName, column) + " LIKE";
-            case Finder.OP_LT: return unambiguousColumn(tableName, column) + " <";
-            case Finder.OP_NE: return unambiguousColumn(tableName, column) + " !=";
+        final String operator = whereOperatorOf(operation);
+        if (operator == null) {
+            return "";
+        }
+        return appendUnambiguousColumn(new StringBuilder(lengthOf(tableName) + lengthOf(column) + operator.length() + 1), tableName, column)
+                .append(operator)
+                .toString();
+    }
+
+    // StringBuilder appends a null String as "null", just as String concatenation does
+    private static int lengthOf(String s) {
+        return s == null ? 4 : s.length();
+    }
+
+    /**
+     * <p>
+     *     The append methods write the same fragments as the DBMSIntegrator methods of the same name directly into
+     *     a StringBuilder that the caller reuses for the whole query, so building a query does not allocate a
+     *     String per fragment.
+     * </p>
+     * @param buf the StringBuilder to which the fragment is appended
+     * @param tableName the name of the table
+     * @param columnName the name of the column
+     * @return buf
+     * @see #unambiguousColumn(String, String)
+     */
+    public StringBuilder appendUnambiguousColumn(StringBuilder buf, String tableName, String columnName) {
+        return buf.append(tableName).append('.').append(columnName);
+    }
+
+    /**
+     * @see #appendUnambiguousColumn(StringBuilder, String, String)
+     * @see #orderByAsc(String, String)
+     */
+    public StringBuilder appendOrderByAsc(StringBuilder buf, String tableName, String columnName) {
+        return appendUnambiguousColumn(buf, tableName, columnName).append(" ASC");
+    }
+
+    /**
+     * @see #appendUnambiguousColumn(StringBuilder, String, String)
+     * @see #orderByDesc(String, String)
+     */
+    public StringBuilder appendOrderByDesc(StringBuilder buf, String tableName, String columnName) {
+        return appendUnambiguousColumn(buf, tableName, columnName).append(" DESC");
+    }
+
+    /**
+     * @see #appendUnambiguousColumn(StringBuilder, String, String)
+     * @see #combineOrderByExpressions(List)
+     */
+    public StringBuilder appendCombinedOrderByExpressions(StringBuilder buf, List<String> orderByList) {
+        for (int i = 0; i < orderByList.size(); i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(orderByList.get(i));
         }
-        return "";
+        return buf;
+    }
+
+    /**
+     * @see #appendUnambiguousColumn(StringBuilder, String, String)
+     * @see #whereOperation(String, String, int)
+     */
+    public StringBuilder appendWhereOperation(StringBuilder buf, String tableName, String column, int operation) {
+        final String operator = whereOperatorOf(operation);
+        return operator == null ? buf : appendUnambiguousColumn(buf, tableName, column).append(operator);
+    }
+
+    /**
+     * <p>
+     *     Creates the {@link KeysetPagination} for paging through the rows of a table in the order of an ORDER BY
+     *     list such as {@link #orderByAsc(String, String)} and {@link #orderByDesc(String, String)} produce.
+     *     Expressions without ASC or DESC sort ASC. The primary key columns of the table that are not already in the
+     *     list, with or without the table name, are appended, sorted ASC, as a tie-breaker.
+     * </p>
+     * @param table the {@link TableInfo} of the table whose rows are paged through
+     * @param orderByList the ORDER BY expressions
+     * @return the {@link KeysetPagination}
+     */
+    public KeysetPagination newKeysetPagination(TableInfo table, List<String> orderByList) {
+        final List<String> keyExpressions = new ArrayList<>();
+        final List<Boolean> descending = new ArrayList<>();
+        final Set<String> orderedColumns = new HashSet<>();
+        if (orderByList != null) {
+            for (String orderBy : orderByList) {
+                final String trimmed = orderBy.trim();
+                final int directionStart = trimmed.lastIndexOf(' ');
+                final String direction = directionStart < 0 ? "" : trimmed.substring(directionStart + 1).toUpperCase();
+                final boolean hasDirection = "ASC".equals(direction) || "DESC".equals(direction);
+                final String keyExpression = hasDirection ? trimmed.substring(0, directionStart).trim() : trimmed;
+                keyExpressions.add(keyExpression);
+                descending.add("DESC".equals(direction));
+                orderedColumns.add(normalizedColumnOf(table.getTableName(), keyExpression));
+            }
+        }
+
+        List<String> primaryKey = table.getPrimaryKey() == null || table.getPrimaryKey().isEmpty()
+                ? Collections.singletonList(TableInfo.DEFAULT_PRIMARY_KEY_COLUMN)
+                : new ArrayList<>(table.getPrimaryKey());
+        Collections.sort(primaryKey);
+        for (String columnName : primaryKey) {
+            if (!orderedColumns.contains(normalizedColumnOf(table.getTableName(), columnName))) {
+                keyExpressions.add(unambiguousColumn(table.getTableName(), columnName));
+                descending.add(false);
+            }
+        }
+
+        return new KeysetPagination(keyExpressions, descending);
+    }
+
+    /**
+     * <p>
+     *     SQLite identifiers are case-insensitive and may be quoted, and a column of the table may be named with or
+     *     without the table name, so these all name the same column: _id, test_table._id, "TEST_TABLE"."_ID"
+     * </p>
+     * @return the unquoted, lower case name of the column of the table that the expression names, or the lower
+     * case expression if it names something else
+     */
+    private static String normalizedColumnOf(String tableName, String expression) {
+        final String normalized = unquoted(expression.trim()).toLowerCase(Locale.US);
+        final int dot = normalized.indexOf('.');
+        if (dot < 0 || tableName == null) {
+            return normalized;
+        }
+        return normalized.substring(0, dot).equals(tableName.toLowerCase(Locale.US))
+                ? normalized.substring(dot + 1)
+                : normalized;
+    }
+
+    private static String unquoted(String identifier) {
+        StringBuilder buf = new StringBuilder(identifier.length());
+        for (int i = 0; i < identifier.length(); i++) {
+            final char c = identifier.charAt(i);
+            if (c != '"' && c != '`' && c != '[' && c != ']') {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
     }
 
     @Override
     public String formatDate(Date date) {
-        return DATE_FORMAT.format(date);
+        return options.getDateStorage().format(date);
     }
 
     @Override
     public Date parseDate(String dateStr) {
         try {
-            return DATE_FORMAT.parse(dateStr);
+            return options.getDateStorage().parse(dateStr);
         } catch (ParseException pe) {
             pe.printStackTrace();
         }
@@ -170,17 +628,299 @@ public class SqlGenerator implements DBMSIntegrator {
         return "OR";
     }
 
+    private static List<String> insertableColumnsOf(Map<String, String> columnValueMap) {
+        List<String> ret = new ArrayList<>(columnValueMap.size());
+        for (Map.Entry<String, String> colValEntry : columnValueMap.entrySet()) {
+            final String columnName = colValEntry.getKey();
+            if (columnName == null || columnName.isEmpty() || columnExclusionFilter.contains(columnName)) {
+                continue;   // <-- never insert _id, created, or modified columns
+            }
+            final String val = colValEntry.getValue();
+            if (val != null && !val.isEmpty()) {
+                ret.add(columnName);
+            }
+        }
+        Collections.sort(ret);
+        return ret;
+    }
+
+    // upsertTable determines the conflict target; pass null for plain insertion
+    private List<SqlForPreparedStatement> multiRowStatements(String tableName, TableInfo upsertTable, List<Map<String, String>> rows) {
+        List<SqlForPreparedStatement> ret = new ArrayList<>();
+        if (rows == null || rows.isEmpty()) {
+            return ret;
+        }
+
+        List<String> runColumns = null;
+        List<Map<String, String>> run = new ArrayList<>();
+        for (Map<String, String> row : rows) {
+            if (row == null) {
+                continue;
+            }
+            final List<String> columns = insertableColumnsOf(row);
+            if (columns.isEmpty()) {
+                continue;
+            }
+            if (runColumns != null && !runColumns.equals(columns)) {
+                addChunkedInsertions(ret, tableName, runColumns, conflictTargetOf(upsertTable, runColumns), run);
+                run.clear();
+            }
+            runColumns = columns;
+            run.add(row);
+        }
+        if (!run.isEmpty()) {
+            addChunkedInsertions(ret, tableName, runColumns, conflictTargetOf(upsertTable, runColumns), run);
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the sorted primary key columns if they are all inserted; otherwise, the first inserted unique column;
+     * otherwise null
+     */
+    private static List<String> conflictTargetOf(TableInfo table, List<String> sortedColumns) {
+        if (table == null) {
+            return null;
+        }
+
+        final Set<String> primaryKey = table.getPrimaryKey();
+        if (primaryKey != null && !primaryKey.isEmpty() && sortedColumns.containsAll(primaryKey)) {
+            List<String> ret = new ArrayList<>(primaryKey);
+            Collections.sort(ret);
+            return ret;
+        }
+
+        for (String column : sortedColumns) {
+            final ColumnInfo columnInfo = table.getColumn(column);
+            if (columnInfo != null && columnInfo.isUnique()) {
+                return Collections.singletonList(column);
+            }
+        }
+        return null;
+    }
+
+    private void addChunkedInsertions(List<SqlForPreparedStatement> dest,
+                                      String tableName,
+                                      List<String> sortedColumns,
+                                      List<String> conflictTarget,
+                                      List<Map<String, String>> rows) {
+        final int columnCount = sortedColumns.size();
+        if (columnCount > SQLITE_MAX_VARIABLE_NUMBER) {
+            throw new IllegalArgumentException("Cannot insert " + columnCount + " columns into " + tableName + " in one statement: SQLite allows at most " + SQLITE_MAX_VARIABLE_NUMBER + " variables per statement");
+        }
+        final int rowsPerStatement = Math.min(SQLITE_MAX_COMPOUND_SELECT, SQLITE_MAX_VARIABLE_NUMBER / columnCount);
+        for (int start = 0; start < rows.size(); start += rowsPerStatement) {
+            final int rowCount = Math.min(rowsPerStatement, rows.size() - start);
+            final String[] replacements = new String[rowCount * columnCount];
+            int pos = 0;
+            for (int i = start; i < start + rowCount; i++) {
+                final Map<String, String> row = rows.get(i);
+                for (String column : sortedColumns) {
+                    replacements[pos++] = row.get(column);
+                }
+            }
+            dest.add(new SqlForPreparedStatement(insertionTemplate(tableName, sortedColumns, rowCount, conflictTarget), replacements));
+        }
+    }
+
+    // conflictTarget is the columns of the ON CONFLICT clause; pass null for plain insertion
+    private String insertionTemplate(String tableName, List<String> sortedColumns, int rowCount, List<String> conflictTarget) {
+        final String modifiedSql = conflictTarget != null && options.getModifiedTimestampMode().setsModifiedInline()
+                ? options.getDateStorage().getCurrentTimeSql()
+                : null;
+        StringBuilder keyBuf = new StringBuilder(tableName.length() + 16 * sortedColumns.size()).append(tableName);
+        for (String column : sortedColumns) {
+            keyBuf.append(',').append(column);
+        }
+        keyBuf.append(';').append(rowCount);
+        if (conflictTarget != null) {
+            keyBuf.append(";ON CONFLICT");
+            for (String column : conflictTarget) {
+                keyBuf.append(',').append(column);
+            }
+            if (modifiedSql != null) {
+                keyBuf.append(";modified=").append(modifiedSql);
+            }
+        }
+        final String key = keyBuf.toString();
+
+        String template = insertionTemplateCache.get(key);
+        if (template != null) {
+            return template;
+        }
+
+        StringBuilder buf = new StringBuilder(key.length() + 32 + (3 * sortedColumns.size() + 4) * rowCount)
+                .append("INSERT INTO ").append(tableName).append(" (");
+        for (String column : sortedColumns) {
+            buf.append(column).append(", ");
+        }
+        buf.delete(buf.length() - 2, buf.length()).append(") VALUES ");
+        for (int row = 0; row < rowCount; row++) {
+            buf.append(row == 0 ? "(" : ", (");
+            for (int i = 0; i < sortedColumns.size(); i++) {
+                buf.append(i == 0 ? "?" : ", ?");
+            }
+            buf.append(')');
+        }
+        if (conflictTarget != null) {
+            appendUpsertClause(buf, sortedColumns, conflictTarget, modifiedSql);
+        }
+        template = buf.append(';').toString();
+        insertionTemplateCache.put(key, template);
+        return template;
+    }
+
+    // modifiedSql is the value to which an updated row's modified column is set; pass null to leave it to the trigger
+    private static void appendUpsertClause(StringBuilder buf, List<String> sortedColumns, List<String> conflictTarget, String modifiedSql) {
+        buf.append(" ON CONFLICT(");
+        for (String column : conflictTarget) {
+            buf.append(column).append(", ");
+        }
+        buf.delete(buf.length() - 2, buf.length()).append(')');
+
+        final int lengthBeforeUpdate = buf.length();
+        buf.append(" DO UPDATE SET ");
+        boolean updatesAColumn = false;
+        for (String column : sortedColumns) {
+            if (conflictTarget.contains(column)) {
+                continue;
+            }
+            buf.append(updatesAColumn ? ", " : "").append(column).append("=excluded.").append(column);
+            updatesAColumn = true;
+        }
+        if (!updatesAColumn) {
+            buf.setLength(lengthBeforeUpdate);
+            buf.append(" DO NOTHING");  // <-- every inserted column is part of the conflict target
+        } else if (modifiedSql != null) {
+            buf.append(", modified=").append(modifiedSql);
+        }
+    }
+
+    /**
+     * @return the unwrapped migration SQL
+     */
+    private List<String> generateMigrationSql(MigrationSet migrationSet,
+                                              List<ChunkedRebuildPlan> chunkedRebuildPlans,
+                                              Set<String> rebuiltTables) {
+        final CompiledSchema compiledSchema = new CompiledSchema(migrationSet.getTargetSchema(), options);
+        QueryGeneratorFactory qgf = new QueryGeneratorFactory(migrationSet, compiledSchema);
+        List<Migration> migrations = new MigrationPlanner(compiledSchema).plan(migrationSet.getOrderedMigrations());
+        List<String> sqlList = new ArrayList<>();
+        Set<String> recreatedTables = new HashSet<>();
+        Map<String, RecreateTableGenerator> chunkedRebuilds = new LinkedHashMap<>();
+        Map<String, List<String>> chunkedRebuildFinishSql = new HashMap<>();
+        for (Migration m : migrations) {
+            if (recreatedTables.contains(m.getTableName()) && isMigrationHandledOnCreate(m, migrationSet.getTargetSchema())) {
+                continue;
+            }
+            if (TYPES_REQUIRING_TABLE_RECREATION.contains(m.getType())) {
+                recreatedTables.add(m.getTableName());
+            }
+            QueryGenerator queryGenerator = qgf.getFor(m, migrationSet.getTargetSchema());
+            List<String> finishSql = chunkedRebuildFinishSql.get(m.getTableName());
+            if (finishSql != null) {
+                finishSql.addAll(queryGenerator.generate());   // <-- must run after the chunked rebuild
+                continue;
+            }
+            if (isRebuild(m) && queryGenerator instanceof RecreateTableGenerator
+                    && options.getChunkedRebuildTableNames().contains(m.getTableName())) {
+                recreatedTables.add(m.getTableName());
+                chunkedRebuilds.put(m.getTableName(), (RecreateTableGenerator) queryGenerator);
+                chunkedRebuildFinishSql.put(m.getTableName(), new ArrayList<String>());
+                continue;
+            }
+            List<String> migrationSql = queryGenerator.generate();
+            if (!migrationSql.isEmpty() && isRebuild(m)) {
+                rebuiltTables.add(m.getTableName());
+            }
+            sqlList.addAll(migrationSql);
+        }
+        if (options.getModifiedTimestampMode() == ModifiedTimestampMode.INLINE) {
+            sqlList.addAll(dropModifiedTriggerQueries(migrationSet.getTargetSchema(), recreatedTables));
+        }
+        for (Map.Entry<String, RecreateTableGenerator> entry : chunkedRebuilds.entrySet()) {
+            chunkedRebuildPlans.add(entry.getValue().chunkedRebuildPlan(options.getRebuildChunkSize(), chunkedRebuildFinishSql.get(entry.getKey())));
+        }
+        return sqlList;
+    }
+
+    /**
+     * <p>
+     *     When a table is created or recreated, every column of the target table is in its CREATE TABLE query, and
+     *     all of its indices are created along with it.
+     * </p>
+     */
+    private static boolean isRebuild(Migration m) {
+        return m.getType() == Migration.Type.ADD_FOREIGN_KEY_REFERENCE
+                || (m.getType() != Migration.Type.CREATE_TABLE && TYPES_REQUIRING_TABLE_RECREATION.contains(m.getType()));
+    }
+
+    private static String whereOperatorOf(int operation) {
+        switch (operation) {
+            case Finder.OP_EQ: return " =";
+            case Finder.OP_GE: return " >=";
+            case Finder.OP_GT: return " >";
+            case Finder.OP_LE: return " <=";
+            case Finder.OP_LIKE: return " LIKE";
+            case Finder.OP_LT: return " <";
+            case Finder.OP_NE: return " !=";
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     *     Tables that were created or recreated in this migration were created without a trigger
+     * </p>
+     */
+    private static List<String> dropModifiedTriggerQueries(Map<String, TableInfo> targetSchema, Set<String> recreatedTables) {
+        List<String> tableNames = new ArrayList<>(targetSchema.keySet());
+        tableNames.removeAll(recreatedTables);
+        Collections.sort(tableNames);
+        List<String> ret = new ArrayList<>(tableNames.size());
+        for (String tableName : tableNames) {
+            ret.add(dropModifiedTriggerQuery(tableName));
+        }
+        return ret;
+    }
+
+    private static String dropModifiedTriggerQuery(String tableName) {
+        return "DROP TRIGGER IF EXISTS " + ModifiedTimestampMode.triggerNameOf(tableName) + ";";
+    }
+
+    /**
+     * <p>
+     *     Neither changes PRAGMAs nor checks foreign keys, which the caller cannot restore or act upon in a flat
+     *     list of SQL. {@link #generateMigrationTransaction(MigrationSet)} returns those separately.
+     * </p>
+     */
+    private static List<String> wrapInTransaction(List<String> sqlList) {
+        List<String> ret = new ArrayList<>(sqlList.size() + 2);
+        ret.add(MigrationTransaction.BEGIN);
+        ret.addAll(sqlList);
+        ret.add(MigrationTransaction.COMMIT);
+        return ret;
+    }
+
     private static boolean isMigrationHandledOnCreate(Migration m, Map<String, TableInfo> targetSchema) {
+        if (m.getExtras() != null && m.getExtras().containsKey(IndexInfo.MIGRATION_EXTRA_KEY)) {
+            return false;   // <-- CREATE INDEX IF NOT EXISTS does nothing if the options already created the index
+        }
         switch (m.getType()) {
             case ADD_UNIQUE_INDEX:
                 // intentionally falling through
             case ADD_FOREIGN_KEY_REFERENCE:
-                return true;
+                // intentionally falling through
+            case ALTER_TABLE_ADD_UNIQUE:
+                // intentionally falling through
             case ALTER_TABLE_ADD_COLUMN:
-                TableInfo table = targetSchema.get(m.getTableName());
-                return table.isForeignKeyColumn(m.getColumnName())
-                        || table.getPrimaryKey().contains(m.getColumnName())
-                        || table.getColumn(m.getColumnName()).isUnique();
+                return true;
+            case MAKE_COLUMN_UNIQUE:
+                // intentionally falling through
+            case ADD_INDEX:
+                ColumnInfo column = targetSchema.get(m.getTableName()).getColumn(m.getColumnName());
+                return column != null && (column.isUnique() || column.isIndex());
         }
         return false;
     }
@@ -0,0 +1,57 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ *     A bounded, least-recently-used cache of SQL templates keyed by whatever uniquely determines the
+ *     template (for example, the table name and the ordered column names). All access is synchronized,
+ *     so a single instance may be shared across threads.
+ * </p>
+ */
+/*package*/ class StatementTemplateCache {
+
+    private final Map<String, String> templates;
+
+    /*package*/ StatementTemplateCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive; was: " + maxSize);
+        }
+        templates = new LinkedHashMap<String, String>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /*package*/ synchronized String get(String key) {
+        return templates.get(key);
+    }
+
+    /*package*/ synchronized void put(String key, String template) {
+        templates.put(key, template);
+    }
+
+    /*package*/ synchronized int size() {
+        return templates.size();
+    }
+}
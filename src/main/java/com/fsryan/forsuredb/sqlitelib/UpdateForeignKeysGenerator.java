@@ -33,7 +33,22 @@ public class UpdateForeignKeysGenerator extends RecreateTableGenerator {
                                       Set<TableForeignKeyInfo> currentForeignKeys,
                                       Set<String> currentColumns,
                                       Map<String, TableInfo> targetSchema) {
-        super(tableName, currentColumns, targetSchema, Migration.Type.UPDATE_FOREIGN_KEYS);
+        this(tableName, currentForeignKeys, currentColumns, targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    public UpdateForeignKeysGenerator(String tableName,
+                                      Set<TableForeignKeyInfo> currentForeignKeys,
+                                      Set<String> currentColumns,
+                                      Map<String, TableInfo> targetSchema,
+                                      GenerationOptions options) {
+        this(tableName, currentForeignKeys, currentColumns, new CompiledSchema(targetSchema, options));
+    }
+
+    public UpdateForeignKeysGenerator(String tableName,
+                                      Set<TableForeignKeyInfo> currentForeignKeys,
+                                      Set<String> currentColumns,
+                                      CompiledSchema compiledSchema) {
+        super(tableName, currentColumns, compiledSchema, Migration.Type.UPDATE_FOREIGN_KEYS);
         this.currentForeignKeys = currentForeignKeys;
         this.newForeignKeyColumns = new ArrayList<>();
     }
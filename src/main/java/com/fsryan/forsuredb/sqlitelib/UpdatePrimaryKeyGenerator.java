@@ -8,6 +8,17 @@ import java.util.*;
 public class UpdatePrimaryKeyGenerator extends RecreateTableGenerator {
 
     public UpdatePrimaryKeyGenerator(String tableName, Set<String> currentColumnNames, Map<String, TableInfo> targetSchema) {
-        super(tableName, currentColumnNames, targetSchema, Migration.Type.UPDATE_PRIMARY_KEY);
+        this(tableName, currentColumnNames, targetSchema, GenerationOptions.DEFAULT);
+    }
+
+    public UpdatePrimaryKeyGenerator(String tableName,
+                                     Set<String> currentColumnNames,
+                                     Map<String, TableInfo> targetSchema,
+                                     GenerationOptions options) {
+        this(tableName, currentColumnNames, new CompiledSchema(targetSchema, options));
+    }
+
+    public UpdatePrimaryKeyGenerator(String tableName, Set<String> currentColumnNames, CompiledSchema compiledSchema) {
+        super(tableName, currentColumnNames, compiledSchema, Migration.Type.UPDATE_PRIMARY_KEY);
     }
 }
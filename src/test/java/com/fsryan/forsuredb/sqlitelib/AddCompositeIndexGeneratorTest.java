@@ -0,0 +1,88 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.TABLE_NAME;
+
+@RunWith(Parameterized.class)
+public class AddCompositeIndexGeneratorTest extends BaseSQLiteGeneratorTest {
+
+    private final AddCompositeIndexGenerator generatorUnderTest;
+
+    public AddCompositeIndexGeneratorTest(IndexInfo index, String... expectedSql) {
+        super(expectedSql);
+        generatorUnderTest = new AddCompositeIndexGenerator(index);
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {   // 00: multiple columns with mixed sort order get a default name that includes the sort order
+                        IndexInfo.builder(TABLE_NAME).column("int_column").column("long_column", true).build(),
+                        new String[] {
+                                "CREATE INDEX IF NOT EXISTS idx_" + TABLE_NAME + "_int_column_long_column_desc ON " + TABLE_NAME + "(int_column, long_column DESC);"
+                        }
+                },
+                {   // 01: a partial index gets a default name that differs from the full index on the same columns
+                        IndexInfo.builder(TABLE_NAME).column("int_column").where("deleted = 0").build(),
+                        new String[] {
+                                "CREATE INDEX IF NOT EXISTS idx_" + TABLE_NAME + "_int_column_partial ON " + TABLE_NAME + "(int_column) WHERE deleted = 0;"
+                        }
+                },
+                {   // 02: covering columns follow the key columns, and key columns are not repeated
+                        IndexInfo.builder(TABLE_NAME).name("covering")
+                                .column("int_column", true)
+                                .coveringColumn("string_column")
+                                .coveringColumn("int_column")
+                                .build(),
+                        new String[] {
+                                "CREATE INDEX IF NOT EXISTS covering ON " + TABLE_NAME + "(int_column DESC, string_column);"
+                        }
+                },
+                {   // 03: the JSON definition from a migration extra
+                        IndexInfo.fromJson(TABLE_NAME, "{\"index_name\": \"unique_live\", \"unique\": true, \"columns\": [{\"column_name\": \"string_column\"}, {\"column_name\": \"created\", \"descending\": true}], \"where\": \"deleted = 0\"}"),
+                        new String[] {
+                                "CREATE UNIQUE INDEX IF NOT EXISTS unique_live ON " + TABLE_NAME + "(string_column, created DESC) WHERE deleted = 0;"
+                        }
+                },
+                {   // 04: an ADD_UNIQUE_INDEX migration makes the index unique
+                        IndexInfo.fromJson(TABLE_NAME, "{\"columns\": [{\"column_name\": \"string_column\"}, {\"column_name\": \"int_column\"}]}", true),
+                        new String[] {
+                                "CREATE UNIQUE INDEX IF NOT EXISTS idx_" + TABLE_NAME + "_string_column_int_column ON " + TABLE_NAME + "(string_column, int_column);"
+                        }
+                },
+                {   // 05: the covering columns are part of the default name
+                        IndexInfo.builder(TABLE_NAME).column("string_column").column("created", true).coveringColumn("int_column").where("deleted = 0").build(),
+                        new String[] {
+                                "CREATE INDEX IF NOT EXISTS idx_" + TABLE_NAME + "_string_column_created_desc_covering_int_column_partial ON " + TABLE_NAME + "(string_column, created DESC, int_column) WHERE deleted = 0;"
+                        }
+                }
+        });
+    }
+
+    @Override
+    protected QueryGenerator getGenerator() {
+        return generatorUnderTest;
+    }
+}
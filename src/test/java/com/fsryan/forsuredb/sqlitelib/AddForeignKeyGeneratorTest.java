@@ -27,6 +27,9 @@ import org.junit.runners.Parameterized;
 import java.util.Arrays;
 import java.util.List;
 
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+
 @RunWith(Parameterized.class)
 public class AddForeignKeyGeneratorTest extends BaseSQLiteGeneratorTest {
 
@@ -203,14 +206,32 @@ public class AddForeignKeyGeneratorTest extends BaseSQLiteGeneratorTest {
 //                                "INSERT INTO " + TABLE_NAME + " SELECT _id, created, deleted, modified, int_column, null AS long_column FROM temp_" + TABLE_NAME + ";",
 //                                "DROP TABLE IF EXISTS temp_" + TABLE_NAME + ";"
 //                        }
-//                }
+//                },
+                {   // 9 every index is built after the data are reloaded
+                        table().columnMap(columnMapOf(longCol().foreignKeyInfo(cascadeFKI("user").build()).build(),
+                                        intCol().index(true).build()))
+                                .build(),
+                        Arrays.asList(longCol().foreignKeyInfo(cascadeFKI("user").build()).build()),
+                        new String[]{
+                                "DROP TABLE IF EXISTS temp_" + TABLE_NAME + ";",
+                                "CREATE TEMP TABLE temp_" + TABLE_NAME + " AS SELECT _id, created, deleted, modified, int_column FROM " + TABLE_NAME + ";",
+                                "DROP TABLE IF EXISTS " + TABLE_NAME + ";",
+                                "CREATE TABLE " + TABLE_NAME + "(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), long_column INTEGER, FOREIGN KEY(long_column) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
+                                "ALTER TABLE " + TABLE_NAME + " ADD COLUMN int_column INTEGER;",
+                                "INSERT INTO " + TABLE_NAME + " SELECT _id, created, deleted, modified, null AS long_column, int_column FROM temp_" + TABLE_NAME + ";",
+                                "DROP TABLE IF EXISTS temp_" + TABLE_NAME + ";",
+                                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_int_column ON " + TABLE_NAME + "(int_column);",
+                                "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_long_column_fk_index ON " + TABLE_NAME + "(long_column);",
+                                "CREATE TRIGGER " + TABLE_NAME + "_updated_trigger AFTER UPDATE ON " + TABLE_NAME + " BEGIN UPDATE " + TABLE_NAME + " SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+                        }
+                }
         });
     }
 
     @Before
     public void setUp() {
         if (generatorUnderTest == null) {
-            generatorUnderTest = new AddForeignKeyGenerator(table, newForeignKeyColumns, null);
+            generatorUnderTest = new AddForeignKeyGenerator(table, newForeignKeyColumns, tableMapOf(table));
         }
     }
 
@@ -55,11 +55,10 @@ public class ChangeDefaultValueGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "DROP TABLE IF EXISTS temp_table_name;",
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, long_column FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
-                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "));",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE table_name ADD COLUMN long_column INTEGER DEFAULT '12';",
+                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), long_column INTEGER DEFAULT '12');",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, long_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
                         }
                 }
         });
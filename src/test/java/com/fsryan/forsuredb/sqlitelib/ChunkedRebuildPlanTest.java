@@ -0,0 +1,443 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkedRebuildPlanTest {
+
+    private static MigrationSet changeDefaultValueMigrationSet() throws Exception {
+        return new Gson().fromJson(resourceText("change_default_value_with_new_column_migration.json"), MigrationSet.class);
+    }
+
+    private static File createUserTable(MigrationSet migrationSet, int rowCount) throws Exception {
+        File dbFile = File.createTempFile("chunked_rebuild", ".db");
+        Map<String, TableInfo> sourceSchema = MigrationProfiler.sourceSchemaOf(migrationSet);
+        Connection connection = connect(dbFile);
+        try {
+            Statement statement = connection.createStatement();
+            execute(statement, new CreateTableGenerator("user", sourceSchema).generate());
+            for (int id = 1; id <= rowCount; id++) {
+                statement.execute("INSERT INTO user(_id, login_count) VALUES(" + (id * 2) + ", " + id + ");");
+            }
+            statement.close();
+        } finally {
+            connection.close();
+        }
+        return dbFile;
+    }
+
+    private static Connection connect(File dbFile) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+    }
+
+    private static void execute(Statement statement, List<String> sqlList) throws SQLException {
+        for (String sql : sqlList) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int copyRemainingChunks(Statement statement, ChunkedRebuildPlan plan) throws SQLException {
+        int chunks = 0;
+        while (longResultOf(statement, plan.getHasRemainingRowsQuery()) == 1L) {
+            execute(statement, plan.getChunkSql());
+            chunks++;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return whether the finish transaction committed rather than rolled back
+     */
+    private static boolean finish(Statement statement, ChunkedRebuildPlan plan) throws SQLException {
+        List<String> pragmaValues = new ArrayList<>(plan.getChangedPragmaNames().size());
+        for (String pragmaName : plan.getChangedPragmaNames()) {
+            pragmaValues.add(stringResultOf(statement, "PRAGMA " + pragmaName + ";"));
+        }
+        execute(statement, plan.getFinishPragmaSql());
+        execute(statement, plan.getFinishSql());
+        boolean violated = false;
+        for (String foreignKeyCheckQuery : plan.getForeignKeyCheckQueries()) {
+            ResultSet resultSet = statement.executeQuery(foreignKeyCheckQuery);
+            try {
+                violated |= resultSet.next();
+            } finally {
+                resultSet.close();
+            }
+        }
+        statement.execute(violated ? MigrationTransaction.ROLLBACK : MigrationTransaction.COMMIT);
+        for (int i = 0; i < pragmaValues.size(); i++) {
+            statement.execute("PRAGMA " + plan.getChangedPragmaNames().get(i) + "=" + pragmaValues.get(i) + ";");
+        }
+        return !violated;
+    }
+
+    private static long longResultOf(Statement statement, String sql) throws SQLException {
+        ResultSet resultSet = statement.executeQuery(sql);
+        try {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private static String stringResultOf(Statement statement, String sql) throws SQLException {
+        ResultSet resultSet = statement.executeQuery(sql);
+        try {
+            return resultSet.next() ? resultSet.getString(1) : null;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    public static class GeneratedSql {
+
+        private SqlGenerator sqlGenerator;
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .chunkedRebuild("user")
+                    .rebuildChunkSize(500)
+                    .build());
+        }
+
+        @Test
+        public void shouldLeaveChunkedRebuildOutOfMigrationSql() throws Exception {
+            assertTrue(sqlGenerator.generateMigrationSql(changeDefaultValueMigrationSet()).isEmpty());
+        }
+
+        @Test
+        public void shouldNotPlanChunkedRebuildsByDefault() throws Exception {
+            assertTrue(new SqlGenerator().generateChunkedRebuildPlans(changeDefaultValueMigrationSet()).isEmpty());
+        }
+
+        @Test
+        public void shouldPlanChunkedRebuild() throws Exception {
+            List<ChunkedRebuildPlan> plans = sqlGenerator.generateChunkedRebuildPlans(changeDefaultValueMigrationSet());
+
+            assertEquals(1, plans.size());
+            ChunkedRebuildPlan plan = plans.get(0);
+            assertEquals("user", plan.getTableName());
+            assertEquals(500, plan.getChunkSize());
+            assertEquals(Arrays.asList(
+                    "CREATE TABLE IF NOT EXISTS forsuredb_rebuild_checkpoint(table_name TEXT PRIMARY KEY, last_rowid INTEGER NOT NULL);",
+                    "BEGIN IMMEDIATE;",
+                    "CREATE TABLE IF NOT EXISTS chunked_user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), global_id INTEGER, login_count INTEGER DEFAULT '0');",
+                    "INSERT OR IGNORE INTO forsuredb_rebuild_checkpoint(table_name, last_rowid) SELECT 'user', IFNULL(MIN(rowid), 1) - 1 FROM user;",
+                    "COMMIT;"
+            ), plan.getStartSql());
+            assertEquals(Arrays.asList(
+                    "BEGIN IMMEDIATE;",
+                    "INSERT INTO chunked_user (_id, created, deleted, modified, login_count) SELECT _id, created, deleted, modified, login_count FROM user WHERE rowid > (SELECT last_rowid FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user') ORDER BY rowid LIMIT 500;",
+                    "UPDATE forsuredb_rebuild_checkpoint SET last_rowid = IFNULL((SELECT MAX(copied_rowid) FROM (SELECT rowid AS copied_rowid FROM user WHERE rowid > (SELECT last_rowid FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user') ORDER BY rowid LIMIT 500)), last_rowid) WHERE table_name = 'user';",
+                    "COMMIT;"
+            ), plan.getChunkSql());
+            assertEquals("SELECT EXISTS(SELECT 1 FROM user WHERE rowid > (SELECT last_rowid FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user'));", plan.getHasRemainingRowsQuery());
+            assertEquals(Arrays.asList("foreign_keys"), plan.getChangedPragmaNames());
+            assertEquals(Arrays.asList("PRAGMA foreign_keys=OFF;"), plan.getFinishPragmaSql());
+            assertEquals(Arrays.asList(
+                    "BEGIN IMMEDIATE;",
+                    "DROP TABLE IF EXISTS user;",
+                    "ALTER TABLE chunked_user RENAME TO user;",
+                    "CREATE TRIGGER user_updated_trigger AFTER UPDATE ON user BEGIN UPDATE user SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
+                    "DELETE FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user';"
+            ), plan.getFinishSql());
+            assertEquals(Arrays.asList("PRAGMA foreign_key_check(user);"), plan.getForeignKeyCheckQueries());
+        }
+
+        @Test
+        public void shouldPlanChunkedRebuildToAddForeignKeyWithTempTableCopyStrategy() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder().chunkedRebuild("profile_info").build());
+
+            List<ChunkedRebuildPlan> plans = sqlGenerator.generateChunkedRebuildPlans(migrationSet);
+
+            assertTrue(sqlGenerator.generateMigrationSql(migrationSet).isEmpty());
+            assertEquals(1, plans.size());
+            assertEquals("profile_info", plans.get(0).getTableName());
+            assertTrue(plans.get(0).getFinishSql().contains("CREATE INDEX IF NOT EXISTS profile_info_user_id_fk_index ON profile_info(user_id);"));
+        }
+
+        @Test
+        public void shouldRunLaterMigrationsOfTableWhenChunkedRebuildFinishes() throws Exception {
+            JsonObject json = new JsonParser().parse(resourceText("add_composite_index_migration.json")).getAsJsonObject();
+            JsonObject changeDefaultValue = new JsonObject();
+            changeDefaultValue.addProperty("table_name", "user");
+            changeDefaultValue.addProperty("column_name", "login_count");
+            changeDefaultValue.addProperty("migration_type", "CHANGE_DEFAULT_VALUE");
+            json.getAsJsonArray("ordered_migrations").add(changeDefaultValue);
+            MigrationSet migrationSet = new Gson().fromJson(json, MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder().chunkedRebuild("user").build());
+
+            List<ChunkedRebuildPlan> plans = sqlGenerator.generateChunkedRebuildPlans(migrationSet);
+
+            assertTrue(sqlGenerator.generateMigrationSql(migrationSet).isEmpty());
+            assertEquals(1, plans.size());
+            List<String> finishSql = plans.get(0).getFinishSql();
+            assertEquals(
+                    "CREATE INDEX IF NOT EXISTS user_live_by_global_id ON user(global_id, created DESC, modified) WHERE deleted = 0;",
+                    finishSql.get(finishSql.indexOf("DELETE FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user';") - 1)
+            );
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldNotBuildOptionsThatRebuildWithoutRowidTableInChunks() {
+            GenerationOptions.builder().withoutRowid("user").chunkedRebuild("user").build();
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldNotPlanChunkedRebuildOfCompositePrimaryKeyTableCreatedWithoutRowid() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("membership")
+                    .primaryKey(setOf("group_id", "member_id"))
+                    .columnMap(columnMapOf(longCol().columnName("group_id").build(), longCol().columnName("member_id").build()))
+                    .build());
+            GenerationOptions options = GenerationOptions.builder()
+                    .withoutRowidForCompositePrimaryKeys(true)
+                    .chunkedRebuild("membership")
+                    .build();
+
+            new UpdatePrimaryKeyGenerator("membership", null, new CompiledSchema(schema, options))
+                    .chunkedRebuildPlan(100, Collections.<String>emptyList());
+        }
+
+        @Test
+        public void shouldNotPlanChunkedRebuildWhenTableIsNotRebuilt() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("add_composite_index_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder().chunkedRebuild("user").build());
+
+            assertEquals(new SqlGenerator().generateMigrationSql(migrationSet), sqlGenerator.generateMigrationSql(migrationSet));
+            assertTrue(sqlGenerator.generateChunkedRebuildPlans(migrationSet).isEmpty());
+        }
+    }
+
+    public static class ResumableExecution {
+
+        private static final int ROW_COUNT = 10;
+
+        private File dbFile;
+        private ChunkedRebuildPlan plan;
+
+        @Before
+        public void setUp() throws Exception {
+            MigrationSet migrationSet = changeDefaultValueMigrationSet();
+            plan = new SqlGenerator(GenerationOptions.builder()
+                    .chunkedRebuild("user")
+                    .rebuildChunkSize(3)
+                    .build())
+                    .generateChunkedRebuildPlans(migrationSet)
+                    .get(0);
+
+            dbFile = createUserTable(migrationSet, ROW_COUNT);
+        }
+
+        @After
+        public void tearDown() {
+            dbFile.delete();
+        }
+
+        @Test
+        public void shouldResumeAfterLastCommittedChunk() throws Exception {
+            Connection connection = connect(dbFile);
+            Statement statement = connection.createStatement();
+            execute(statement, plan.getStartSql());
+            execute(statement, plan.getChunkSql());
+            execute(statement, plan.getChunkSql());
+            statement.execute("BEGIN IMMEDIATE;");
+            statement.execute(plan.getChunkSql().get(1));
+            connection.close();     // <-- crashes during the third chunk, so it is rolled back
+
+            connection = connect(dbFile);
+            statement = connection.createStatement();
+            assertEquals(6L, longResultOf(statement, "SELECT COUNT(*) FROM chunked_user;"));
+            execute(statement, plan.getStartSql());
+            int chunks = copyRemainingChunks(statement, plan);
+            assertTrue(finish(statement, plan));
+
+            assertEquals(2, chunks);
+            assertEquals((long) ROW_COUNT, longResultOf(statement, "SELECT COUNT(*) FROM user;"));
+            assertEquals((long) ROW_COUNT * (ROW_COUNT + 1) / 2, longResultOf(statement, "SELECT SUM(login_count) FROM user;"));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM user WHERE _id != login_count * 2;"));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM forsuredb_rebuild_checkpoint;"));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'chunked_user';"));
+            assertEquals(1L, longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND tbl_name = 'user';"));
+            connection.close();
+        }
+    }
+
+    public static class ShadowRebuild {
+
+        private static final int ROW_COUNT = 10;
+
+        private File dbFile;
+        private ChunkedRebuildPlan plan;
+
+        @Before
+        public void setUp() throws Exception {
+            MigrationSet migrationSet = changeDefaultValueMigrationSet();
+            plan = new SqlGenerator(GenerationOptions.builder()
+                    .shadowRebuild("user")
+                    .rebuildChunkSize(3)
+                    .build())
+                    .generateChunkedRebuildPlans(migrationSet)
+                    .get(0);
+            dbFile = createUserTable(migrationSet, ROW_COUNT);
+        }
+
+        @After
+        public void tearDown() {
+            dbFile.delete();
+        }
+
+        @Test
+        public void shouldMirrorWritesIntoShadowTable() {
+            assertTrue(plan.isMirroringWrites());
+            assertEquals(Arrays.asList(
+                    "CREATE TABLE IF NOT EXISTS forsuredb_rebuild_checkpoint(table_name TEXT PRIMARY KEY, last_rowid INTEGER NOT NULL);",
+                    "BEGIN IMMEDIATE;",
+                    "CREATE TABLE IF NOT EXISTS chunked_user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), global_id INTEGER, login_count INTEGER DEFAULT '0');",
+                    "INSERT OR IGNORE INTO forsuredb_rebuild_checkpoint(table_name, last_rowid) SELECT 'user', IFNULL(MIN(rowid), 1) - 1 FROM user;",
+                    "CREATE TRIGGER IF NOT EXISTS user_shadow_insert_trigger AFTER INSERT ON user BEGIN INSERT OR REPLACE INTO chunked_user (_id, created, deleted, modified, login_count) SELECT _id, created, deleted, modified, login_count FROM user WHERE rowid = NEW.rowid; END;",
+                    "CREATE TRIGGER IF NOT EXISTS user_shadow_update_trigger AFTER UPDATE ON user BEGIN DELETE FROM chunked_user WHERE _id = OLD._id; INSERT OR REPLACE INTO chunked_user (_id, created, deleted, modified, login_count) SELECT _id, created, deleted, modified, login_count FROM user WHERE rowid = NEW.rowid; END;",
+                    "CREATE TRIGGER IF NOT EXISTS user_shadow_delete_trigger AFTER DELETE ON user BEGIN DELETE FROM chunked_user WHERE _id = OLD._id; END;",
+                    "COMMIT;"
+            ), plan.getStartSql());
+            assertEquals(
+                    "INSERT OR REPLACE INTO chunked_user (_id, created, deleted, modified, login_count) SELECT _id, created, deleted, modified, login_count FROM user WHERE rowid > (SELECT last_rowid FROM forsuredb_rebuild_checkpoint WHERE table_name = 'user') ORDER BY rowid LIMIT 3;",
+                    plan.getChunkSql().get(1)
+            );
+        }
+
+        @Test
+        public void shouldKeepWritesMadeWhileRowsAreCopied() throws Exception {
+            final String snapshotQuery = "SELECT GROUP_CONCAT(_id || ':' || login_count || ':' || deleted, ',') FROM (SELECT * FROM user ORDER BY _id);";
+            Connection connection = connect(dbFile);
+            Statement statement = connection.createStatement();
+            execute(statement, plan.getStartSql());
+            execute(statement, plan.getChunkSql());     // <-- copies _id 2, 4 and 6
+            statement.execute("UPDATE user SET login_count = 100 WHERE _id = 4;");
+            statement.execute("UPDATE user SET login_count = 200 WHERE _id = 16;");
+            statement.execute("UPDATE user SET _id = 3 WHERE _id = 6;");
+            statement.execute("DELETE FROM user WHERE _id = 2;");
+            statement.execute("DELETE FROM user WHERE _id = 18;");
+            statement.execute("INSERT INTO user(_id, login_count) VALUES(21, 21);");
+            execute(statement, plan.getChunkSql());
+            statement.execute("UPDATE user SET deleted = 1 WHERE _id = 8;");
+            copyRemainingChunks(statement, plan);
+            statement.execute("INSERT INTO user(_id, login_count) VALUES(23, 23);");
+            final String expected = stringResultOf(statement, snapshotQuery);
+
+            assertTrue(finish(statement, plan));
+
+            assertEquals("3:3:0,4:100:0,8:4:1,10:5:0,12:6:0,14:7:0,16:200:0,20:10:0,21:21:0,23:23:0", expected);
+            assertEquals(expected, stringResultOf(statement, snapshotQuery));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'trigger' AND name LIKE 'user_shadow_%';"));
+            connection.close();
+        }
+    }
+
+    public static class ForeignKeyCheck {
+
+        private File dbFile;
+        private ChunkedRebuildPlan plan;
+
+        @Before
+        public void setUp() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            plan = new SqlGenerator(GenerationOptions.builder().chunkedRebuild("profile_info").build())
+                    .generateChunkedRebuildPlans(migrationSet)
+                    .get(0);
+
+            dbFile = File.createTempFile("chunked_rebuild", ".db");
+            Map<String, TableInfo> sourceSchema = MigrationProfiler.sourceSchemaOf(migrationSet);
+            Connection connection = connect(dbFile);
+            try {
+                Statement statement = connection.createStatement();
+                execute(statement, new CreateTableGenerator("user", sourceSchema).generate());
+                execute(statement, new CreateTableGenerator("profile_info", sourceSchema).generate());
+                statement.execute("INSERT INTO user(_id) VALUES(1);");
+                statement.execute("INSERT INTO profile_info(_id, email_address) VALUES(1, 'a@example.com');");
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        }
+
+        @After
+        public void tearDown() {
+            dbFile.delete();
+        }
+
+        @Test
+        public void shouldCommitWhenRebuiltTableHasNoViolations() throws Exception {
+            Connection connection = connect(dbFile);
+            Statement statement = connection.createStatement();
+            statement.execute("PRAGMA foreign_keys=ON;");
+            execute(statement, plan.getStartSql());
+            copyRemainingChunks(statement, plan);
+
+            assertTrue(finish(statement, plan));
+            assertEquals(1L, longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'profile_info' AND sql LIKE '%FOREIGN KEY(user_id)%';"));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM forsuredb_rebuild_checkpoint;"));
+            assertEquals(1L, longResultOf(statement, "PRAGMA foreign_keys;"));
+            connection.close();
+        }
+
+        @Test
+        public void shouldRollBackWhenChildRowViolatesForeignKey() throws Exception {
+            Connection connection = connect(dbFile);
+            Statement statement = connection.createStatement();
+            execute(statement, plan.getStartSql());
+            copyRemainingChunks(statement, plan);
+            statement.execute("INSERT INTO chunked_profile_info(_id, user_id) VALUES(2, 999);");  // <-- no such user
+            statement.execute("PRAGMA foreign_keys=ON;");
+
+            assertFalse(finish(statement, plan));
+            assertEquals(0L, longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'profile_info' AND sql LIKE '%FOREIGN KEY(user_id)%';"));
+            assertEquals(2L, longResultOf(statement, "SELECT COUNT(*) FROM chunked_profile_info;"));
+            assertEquals(1L, longResultOf(statement, "SELECT COUNT(*) FROM forsuredb_rebuild_checkpoint;"));
+            assertEquals(1L, longResultOf(statement, "PRAGMA foreign_keys;"));
+            connection.close();
+        }
+    }
+}
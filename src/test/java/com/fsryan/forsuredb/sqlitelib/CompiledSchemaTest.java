@@ -0,0 +1,160 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledSchemaTest {
+
+    private Map<String, TableInfo> schema;
+
+    @Before
+    public void setUp() {
+        schema = tableMapOf(
+                table().tableName("parent")
+                        .columnMap(columnMapOf(stringCol().build()))
+                        .build(),
+                table().tableName("child")
+                        .primaryKey(setOf("long_column", "int_column"))
+                        .foreignKeys(setOf(foreignKeyTo("parent", "parent_id"), foreignKeyTo("child", "sibling_id")))
+                        .columnMap(columnMapOf(longCol().build(), intCol().build(), longCol().columnName("parent_id").build(), longCol().columnName("sibling_id").build()))
+                        .build()
+        );
+    }
+
+    @Test
+    public void shouldReturnNullForTableNotInSchema() {
+        assertNull(new CompiledSchema(schema).table("not_a_table"));
+    }
+
+    @Test
+    public void shouldCompileEachTableOnce() {
+        CompiledSchema compiledSchema = new CompiledSchema(schema);
+
+        assertSame(compiledSchema.table("child"), compiledSchema.table("child"));
+    }
+
+    @Test
+    public void shouldSortColumnsAndPrimaryKey() {
+        CompiledTable child = new CompiledSchema(schema).table("child");
+
+        List<ColumnInfo> expectedColumns = new ArrayList<>(schema.get("child").getColumns());
+        Collections.sort(expectedColumns);
+        assertEquals(namesOf(expectedColumns), namesOf(child.getSortedColumns()));
+        assertEquals(namesOf(expectedColumns), namesOf(child.getSortedColumnsToCreate()));
+        assertEquals(Arrays.asList("int_column", "long_column"), child.getSortedPrimaryKeyColumnNames());
+        assertTrue(child.isCompositePrimaryKey());
+        assertTrue(child.isPrimaryKeyColumn("int_column"));
+        assertFalse(child.isPrimaryKeyColumn("_id"));
+    }
+
+    @Test
+    public void shouldFindForeignKeyColumnsAndReferencedTables() {
+        CompiledTable child = new CompiledSchema(schema).table("child");
+
+        assertTrue(child.isForeignKeyColumn("parent_id"));
+        assertTrue(child.isForeignKeyColumn("sibling_id"));
+        assertFalse(child.isForeignKeyColumn("long_column"));
+        assertEquals(setOf("parent"), child.getReferencedTableNames()); // <-- not the table itself
+    }
+
+    @Test
+    public void shouldFindTablesWhoseIdIsReferenced() {
+        CompiledSchema compiledSchema = new CompiledSchema(schema);
+
+        assertTrue(compiledSchema.isIdReferenced("parent"));
+        assertTrue(compiledSchema.isIdReferenced("child"));
+        assertFalse(compiledSchema.isIdReferenced("not_a_table"));
+    }
+
+    @Test
+    public void shouldShareGeneratedDdlAmongGenerators() {
+        CompiledSchema compiledSchema = new CompiledSchema(schema);
+
+        List<String> indexQueries = new CreateTableGenerator("child", compiledSchema).indexQueries();
+
+        assertSame(indexQueries, new CreateTableGenerator("child", compiledSchema).indexQueries());
+        assertEquals(new CreateTableGenerator("child", schema, GenerationOptions.DEFAULT).generate(), new CreateTableGenerator("child", compiledSchema).generate());
+    }
+
+    @Test
+    public void shouldCompileDdlWhenSchemaIsCompiled() {
+        CompiledSchema compiledSchema = new CompiledSchema(schema);
+        schema.remove("child");     // <-- the compiled schema does not read the target schema again
+
+        CompiledTable child = compiledSchema.table("child");
+
+        assertEquals(child.getCreateTableQuery(), new CreateTableGenerator("child", compiledSchema).generate().get(0));
+        assertEquals("CREATE TABLE new_child" + child.getCreateTableQuery().substring("CREATE TABLE child".length()), child.createTableQueryOf("new_child"));
+        assertTrue(child.getIndexQueries().containsAll(child.getForeignKeyIndexQueries()));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotModifyCompiledDdl() {
+        new CompiledSchema(schema).table("child").getIndexQueries().clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWithoutRowidTableWithIdPrimaryKeyWhenSchemaIsCompiled() {
+        new CompiledSchema(schema, GenerationOptions.builder().withoutRowid("parent").build());
+    }
+
+    @Test
+    public void shouldNotCreateWithoutRowidWhenIdIsReferenced() {
+        CompiledSchema compiledSchema = new CompiledSchema(schema, GenerationOptions.builder()
+                .withoutRowidForCompositePrimaryKeys(true)
+                .build());
+
+        assertFalse(compiledSchema.table("child").isWithoutRowid());
+    }
+
+    private static List<String> namesOf(List<ColumnInfo> columns) {
+        List<String> ret = new ArrayList<>(columns.size());
+        for (ColumnInfo column : columns) {
+            ret.add(column.getColumnName());
+        }
+        return ret;
+    }
+
+    private static TableForeignKeyInfo foreignKeyTo(String foreignTableName, String localColumnName) {
+        return new TableForeignKeyInfo.Builder()
+                .foreignTableName(foreignTableName)
+                .foreignTableApiClassName(CompiledSchemaTest.class.getName())
+                .mapLocalToForeignColumn(localColumnName, "_id")
+                .updateChangeAction("CASCADE")
+                .deleteChangeAction("CASCADE")
+                .build();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+
+public class CreateTableGeneratorTest {
+
+    private static final GenerationOptions automaticWithoutRowid = GenerationOptions.builder()
+            .withoutRowidForCompositePrimaryKeys(true)
+            .build();
+
+    private static TableInfo joinTable() {
+        return table().tableName("join_table")
+                .primaryKey(setOf("int_column", "long_column"))
+                .columnMap(columnMapOf(intCol().build(), longCol().build()))
+                .build();
+    }
+
+    @RunWith(Parameterized.class)
+    public static class WithoutRowidTables extends BaseSQLiteGeneratorTest {
+
+        private final QueryGenerator generatorUnderTest;
+
+        public WithoutRowidTables(QueryGenerator generatorUnderTest, String... expectedSql) {
+            super(expectedSql);
+            this.generatorUnderTest = generatorUnderTest;
+        }
+
+        @Parameterized.Parameters
+        public static Iterable<Object[]> data() {
+            final Map<String, TableInfo> joinTableSchema = tableMapOf(joinTable());
+            final Map<String, TableInfo> idReferencedSchema = tableMapOf(joinTable(), table().tableName("referencing_table")
+                    .foreignKeys(setOf(new TableForeignKeyInfo.Builder()
+                            .foreignTableName("join_table")
+                            .foreignTableApiClassName(CreateTableGeneratorTest.class.getName())
+                            .mapLocalToForeignColumn("join_table_id", "_id")
+                            .updateChangeAction("CASCADE")
+                            .deleteChangeAction("CASCADE")
+                            .build()))
+                    .primaryKey(setOf("_id"))
+                    .columnMap(columnMapOf(longCol().columnName("join_table_id").build()))
+                    .build());
+            return Arrays.asList(new Object[][] {
+                    {   // 00: a composite primary key table is a rowid table by default
+                            new CreateTableGenerator("join_table", joinTableSchema),
+                            new String[] {
+                                    "CREATE TABLE join_table(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER, PRIMARY KEY(int_column, long_column));",
+                                    "CREATE TRIGGER join_table_updated_trigger AFTER UPDATE ON join_table BEGIN UPDATE join_table SET modified=" + CURRENT_UTC_TIME + " WHERE int_column=NEW.int_column AND long_column=NEW.long_column; END;"
+                            }
+                    },
+                    {   // 01: automatic WITHOUT ROWID for a composite primary key table
+                            new CreateTableGenerator("join_table", joinTableSchema, automaticWithoutRowid),
+                            new String[] {
+                                    "CREATE TABLE join_table(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER, PRIMARY KEY(int_column, long_column)) WITHOUT ROWID;",
+                                    "CREATE TRIGGER join_table_updated_trigger AFTER UPDATE ON join_table BEGIN UPDATE join_table SET modified=" + CURRENT_UTC_TIME + " WHERE int_column=NEW.int_column AND long_column=NEW.long_column; END;"
+                            }
+                    },
+                    {   // 02: no automatic WITHOUT ROWID when a foreign key references _id
+                            new CreateTableGenerator("join_table", idReferencedSchema, automaticWithoutRowid),
+                            new String[] {
+                                    "CREATE TABLE join_table(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER, PRIMARY KEY(int_column, long_column));",
+                                    "CREATE TRIGGER join_table_updated_trigger AFTER UPDATE ON join_table BEGIN UPDATE join_table SET modified=" + CURRENT_UTC_TIME + " WHERE int_column=NEW.int_column AND long_column=NEW.long_column; END;"
+                            }
+                    },
+                    {   // 03: WITHOUT ROWID by table name for a single column primary key
+                            new CreateTableGenerator(TABLE_NAME, tableMapOf(table().primaryKey(setOf("string_column"))
+                                    .columnMap(columnMapOf(stringCol().build()))
+                                    .build()), GenerationOptions.builder().withoutRowid(TABLE_NAME).build()),
+                            new String[] {
+                                    "CREATE TABLE test_table(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT PRIMARY KEY) WITHOUT ROWID;",
+                                    "CREATE TRIGGER test_table_updated_trigger AFTER UPDATE ON test_table BEGIN UPDATE test_table SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column; END;"
+                            }
+                    },
+                    {   // 04: a rebuilt table stays WITHOUT ROWID
+                            new ChangeDefaultValueGenerator("join_table", joinTableSchema, automaticWithoutRowid),
+                            new String[] {
+                                    "DROP TABLE IF EXISTS temp_join_table;",
+                                    "CREATE TEMP TABLE temp_join_table AS SELECT _id, created, deleted, modified, int_column, long_column FROM join_table;",
+                                    "DROP TABLE IF EXISTS join_table;",
+                                    "CREATE TABLE join_table(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER, PRIMARY KEY(int_column, long_column)) WITHOUT ROWID;",
+                                    "INSERT INTO join_table SELECT _id, created, deleted, modified, int_column, long_column FROM temp_join_table;",
+                                    "DROP TABLE IF EXISTS temp_join_table;",
+                                    "CREATE TRIGGER join_table_updated_trigger AFTER UPDATE ON join_table BEGIN UPDATE join_table SET modified=" + CURRENT_UTC_TIME + " WHERE int_column=NEW.int_column AND long_column=NEW.long_column; END;"
+                            }
+                    }
+            });
+        }
+
+        @Override
+        protected QueryGenerator getGenerator() {
+            return generatorUnderTest;
+        }
+    }
+
+    public static class WithoutRowidValidation {
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldRejectWithoutRowidTableWhosePrimaryKeyIsId() {
+            new CreateTableGenerator(TABLE_NAME, tableMapOf(table().primaryKey(setOf("_id")).build()), GenerationOptions.builder()
+                    .withoutRowid(TABLE_NAME)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class DateCodecTest {
+
+    private static final long RANDOM_SEED = 1234L;
+    private static final long HOUR = 3600000L;
+
+    private final TimeZone timeZone;
+
+    private SimpleDateFormat legacyFormat;
+    private DateCodec codecUnderTest;
+
+    public DateCodecTest(String timeZoneId) {
+        timeZone = TimeZone.getTimeZone(timeZoneId);
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {"UTC"},
+                {"America/Chicago"},        // <-- daylight saving time
+                {"Asia/Kolkata"},           // <-- half hour offset
+                {"Australia/Lord_Howe"},    // <-- half hour daylight saving time
+                {"Pacific/Kiritimati"}      // <-- skipped an entire day
+        });
+    }
+
+    @Before
+    public void setUp() {
+        legacyFormat = new SimpleDateFormat(DateCodec.PATTERN);
+        legacyFormat.setTimeZone(timeZone);
+        codecUnderTest = new DateCodec(timeZone);
+    }
+
+    @Test
+    public void shouldFormatSameAsSimpleDateFormat() {
+        for (long millis : sampleMillis()) {
+            assertEquals("millis: " + millis, legacyFormat.format(new Date(millis)), codecUnderTest.format(new Date(millis)));
+        }
+    }
+
+    @Test
+    public void shouldFormatToBufferAndAppendSameAsFormat() {
+        char[] buf = new char[DateCodec.FORMATTED_LENGTH + 8];
+        StringBuilder sb = new StringBuilder();
+        for (long millis : sampleMillis()) {
+            final String expected = codecUnderTest.format(new Date(millis));
+            assertEquals(expected.length() + 1, codecUnderTest.formatTo(millis, buf, 1));
+            assertEquals(expected, new String(buf, 1, expected.length()));
+            sb.setLength(0);
+            assertEquals(expected, codecUnderTest.appendTo(sb, millis).toString());
+        }
+    }
+
+    @Test
+    public void shouldParseSameAsSimpleDateFormat() throws ParseException {
+        for (long millis : sampleMillis()) {
+            final String formatted = legacyFormat.format(new Date(millis));
+            assertEquals(formatted, legacyFormat.parse(formatted).getTime(), codecUnderTest.parseMillis(formatted));
+        }
+    }
+
+    @Test
+    public void shouldParseLocalTimesAroundTransitionsSameAsSimpleDateFormat() throws ParseException {
+        // every local quarter hour within a day of each transition, including those skipped or repeated
+        long millis = -2000000000000L;
+        final long end = 2000000000000L;
+        while (millis < end) {
+            final int offset = timeZone.getOffset(millis);
+            millis += 12 * HOUR;
+            if (timeZone.getOffset(millis) == offset) {
+                continue;
+            }
+            for (long local = millis - 24 * HOUR; local < millis + 24 * HOUR; local += HOUR / 4) {
+                final String formatted = utcFormatOf(local);
+                assertEquals(formatted, legacyFormat.parse(formatted).getTime(), codecUnderTest.parseMillis(formatted));
+            }
+        }
+    }
+
+    @Test
+    public void shouldParseLenientInputSameAsSimpleDateFormat() throws ParseException {
+        for (String input : Arrays.asList("2017-13-01 00:00:00.000", "2017-02-30 25:61:61.999", "2017-1-5 3:04:05.6", "1400-06-01 12:00:00.000")) {
+            assertEquals(input, legacyFormat.parse(input).getTime(), codecUnderTest.parseMillis(input));
+        }
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldThrowParseExceptionWhenUnparseable() throws ParseException {
+        codecUnderTest.parseMillis("not a date");
+    }
+
+    private static long[] sampleMillis() {
+        Random r = new Random(RANDOM_SEED);
+        long[] ret = new long[2000];
+        ret[0] = 0L;
+        ret[1] = -1L;
+        ret[2] = -12219292800000L;  // <-- first day of the Gregorian calendar
+        ret[3] = 253402300799999L;  // <-- 9999-12-31 23:59:59.999 UTC
+        ret[4] = 253402300800000L;  // <-- 10000-01-01 00:00:00.000 UTC
+        for (int i = 5; i < ret.length; i++) {
+            ret[i] = (long) (r.nextDouble() * 8000000000000L) - 4000000000000L;
+        }
+        return ret;
+    }
+
+    private static String utcFormatOf(long millis) {
+        SimpleDateFormat utcFormat = new SimpleDateFormat(DateCodec.PATTERN);
+        utcFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return utcFormat.format(new Date(millis));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+import org.junit.Before;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME_MILLIS;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+
+@RunWith(Parameterized.class)
+public class DateStorageConversionGeneratorTest extends BaseSQLiteGeneratorTest {
+
+    private DateStorageConversionGenerator generatorUnderTest;
+
+    private final String tableName;
+    private final Map<String, TableInfo> targetSchema;
+
+    public DateStorageConversionGeneratorTest(String tableName, Map<String, TableInfo> targetSchema, String... expectedSql) {
+        super (expectedSql);
+        this.tableName = tableName;
+        this.targetSchema = targetSchema;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() throws ParseException {
+        return Arrays.asList(new Object[][] {
+                {   // 00: only the default date columns, which are read as UTC
+                        "table_name",
+                        tableMapOf(table().tableName("table_name")
+                                .columnMap(columnMapOf(longCol().build()))
+                                .build()),
+                        new String[] {
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, long_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created INTEGER DEFAULT(" + CURRENT_UTC_TIME_MILLIS + "), deleted INTEGER DEFAULT '0', modified INTEGER DEFAULT(" + CURRENT_UTC_TIME_MILLIS + "), long_column INTEGER);",
+                                "INSERT INTO table_name SELECT _id, " + textToMillis("created", "") + ", deleted, " + textToMillis("modified", "") + ", long_column FROM temp_table_name;",
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME_MILLIS + " WHERE _id=NEW._id; END;"
+                        }
+                },
+                {   // 01: a date column written by the application is read in local time and its default is converted
+                        "table_name",
+                        tableMapOf(table().tableName("table_name")
+                                .columnMap(columnMapOf(dateCol().defaultValue("2000-01-01 00:00:00.000").build()))
+                                .build()),
+                        new String[] {
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, date_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created INTEGER DEFAULT(" + CURRENT_UTC_TIME_MILLIS + "), deleted INTEGER DEFAULT '0', modified INTEGER DEFAULT(" + CURRENT_UTC_TIME_MILLIS + "), date_column INTEGER DEFAULT '" + new DateCodec().parseMillis("2000-01-01 00:00:00.000") + "');",
+                                "INSERT INTO table_name SELECT _id, " + textToMillis("created", "") + ", deleted, " + textToMillis("modified", "") + ", " + textToMillis("date_column", ", 'utc'") + " FROM temp_table_name;",
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME_MILLIS + " WHERE _id=NEW._id; END;"
+                        }
+                }
+        });
+    }
+
+    @Before
+    public void setUp() {
+        if (generatorUnderTest == null) {
+            generatorUnderTest = new DateStorageConversionGenerator(tableName, targetSchema);
+        }
+    }
+
+    @Override
+    protected QueryGenerator getGenerator() {
+        return generatorUnderTest;
+    }
+
+    private static String textToMillis(String column, String modifiers) {
+        return "CASE WHEN TYPEOF(" + column + ")='text'"
+                + " THEN CAST(STRFTIME('%s', " + column + modifiers + ") AS INTEGER) * 1000"
+                + " + CAST(SUBSTR(STRFTIME('%f', " + column + modifiers + "), 4) AS INTEGER)"
+                + " ELSE " + column + " END";
+    }
+}
@@ -0,0 +1,69 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME_MILLIS;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class DateStorageTest {
+
+    private final DateStorage dateStorageUnderTest;
+    private final ColumnInfo column;
+    private final String expectedSqlType;
+    private final String expectedDefaultValue;
+
+    public DateStorageTest(DateStorage dateStorageUnderTest, ColumnInfo column, String expectedSqlType, String expectedDefaultValue) {
+        this.dateStorageUnderTest = dateStorageUnderTest;
+        this.column = column;
+        this.expectedSqlType = expectedSqlType;
+        this.expectedDefaultValue = expectedDefaultValue;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() throws Exception {
+        return Arrays.asList(new Object[][] {
+                {DateStorage.TEXT, dateCol().defaultValue("CURRENT_TIMESTAMP").build(), "DATETIME", "(" + CURRENT_UTC_TIME + ")"},                          // 00
+                {DateStorage.TEXT, dateCol().defaultValue("2000-01-01 00:00:00.000").build(), "DATETIME", " '2000-01-01 00:00:00.000'"},                    // 01
+                {DateStorage.TEXT, longCol().defaultValue("12").build(), "INTEGER", " '12'"},                                                               // 02
+                {DateStorage.EPOCH_MILLIS, dateCol().defaultValue("CURRENT_TIMESTAMP").build(), "INTEGER", "(" + CURRENT_UTC_TIME_MILLIS + ")"},           // 03
+                {DateStorage.EPOCH_MILLIS, dateCol().defaultValue("2000-01-01 00:00:00.000").build(), "INTEGER", " '" + new DateCodec().parseMillis("2000-01-01 00:00:00.000") + "'"},   // 04
+                {DateStorage.EPOCH_MILLIS, dateCol().defaultValue("946684800000").build(), "INTEGER", " '946684800000'"},                                   // 05
+                {DateStorage.EPOCH_MILLIS, stringCol().defaultValue("CURRENT_TIMESTAMP").build(), "TEXT", " 'CURRENT_TIMESTAMP'"}                           // 06
+        });
+    }
+
+    @Test
+    public void shouldTranslateSqlType() {
+        assertEquals(expectedSqlType, dateStorageUnderTest.sqlTypeOf(column));
+    }
+
+    @Test
+    public void shouldTranslateDefaultValue() {
+        assertEquals(expectedDefaultValue, dateStorageUnderTest.defaultValueOf(column));
+    }
+}
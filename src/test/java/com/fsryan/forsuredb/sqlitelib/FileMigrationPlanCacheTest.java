@@ -0,0 +1,94 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileMigrationPlanCacheTest {
+
+    private static final long FINGERPRINT = 0x8badf00d12345678L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private FileMigrationPlanCache cacheUnderTest;
+
+    @Before
+    public void setUp() {
+        directory = new File(temporaryFolder.getRoot(), "plans");
+        cacheUnderTest = new FileMigrationPlanCache(directory);
+    }
+
+    @Test
+    public void shouldReturnNullWhenNoPlanIsCached() {
+        assertNull(cacheUnderTest.get(FINGERPRINT));
+    }
+
+    @Test
+    public void shouldReturnCachedPlan() {
+        StringBuilder longStatement = new StringBuilder("INSERT INTO t(s) VALUES('");
+        while (longStatement.length() < 70000) {
+            longStatement.append("\u00e9\u6f22");
+        }
+        List<String> plan = Arrays.asList(
+                "ALTER TABLE user ADD COLUMN global_id INTEGER;",
+                "",
+                longStatement.append("');").toString()
+        );
+
+        cacheUnderTest.put(FINGERPRINT, plan);
+
+        assertEquals(plan, cacheUnderTest.get(FINGERPRINT));
+        assertEquals(plan, new FileMigrationPlanCache(directory).get(FINGERPRINT));
+        assertNull(cacheUnderTest.get(FINGERPRINT + 1));
+    }
+
+    @Test
+    public void shouldTreatCorruptPlanAsMissing() throws Exception {
+        cacheUnderTest.put(FINGERPRINT, Arrays.asList("ALTER TABLE user ADD COLUMN global_id INTEGER;"));
+        File planFile = directory.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(planFile, true);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+
+        assertNull(cacheUnderTest.get(FINGERPRINT));
+    }
+
+    @Test
+    public void shouldTreatTruncatedPlanAsMissing() throws Exception {
+        cacheUnderTest.put(FINGERPRINT, Arrays.asList("ALTER TABLE user ADD COLUMN global_id INTEGER;"));
+        File planFile = directory.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(planFile);
+        out.write(new byte[] {0x46, 0x53, 0x51, 0x50, 0});
+        out.close();
+
+        assertNull(cacheUnderTest.get(FINGERPRINT));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class KeysetPaginationTest {
+
+    private final TableInfo table;
+    private final List<String> orderByList;
+    private final String[] lastRowKeyValues;
+    private final String expectedOrderBy;
+    private final String expectedSeekPredicate;
+    private final String[] expectedSeekArgs;
+
+    private KeysetPagination paginationUnderTest;
+
+    public KeysetPaginationTest(TableInfo table,
+                                List<String> orderByList,
+                                String[] lastRowKeyValues,
+                                String expectedOrderBy,
+                                String expectedSeekPredicate,
+                                String[] expectedSeekArgs) {
+        this.table = table;
+        this.orderByList = orderByList;
+        this.lastRowKeyValues = lastRowKeyValues;
+        this.expectedOrderBy = expectedOrderBy;
+        this.expectedSeekPredicate = expectedSeekPredicate;
+        this.expectedSeekArgs = expectedSeekArgs;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        final SqlGenerator sqlGenerator = new SqlGenerator();
+        final TableInfo table = table().columnMap(columnMapOf(intCol().build(), longCol().build())).build();
+        return Arrays.asList(new Object[][] {
+                {   // 00: no order by pages by the primary key
+                        table,
+                        Collections.<String>emptyList(),
+                        new String[] {"12"},
+                        "test_table._id ASC",
+                        "test_table._id > ?",
+                        new String[] {"12"}
+                },
+                {   // 01: the primary key is the tie-breaker
+                        table,
+                        Arrays.asList(sqlGenerator.orderByAsc(TABLE_NAME, "int_column")),
+                        new String[] {"3", "12"},
+                        "test_table.int_column ASC, test_table._id ASC",
+                        "(test_table.int_column, test_table._id) > (?, ?)",
+                        new String[] {"3", "12"}
+                },
+                {   // 02: all DESC except the tie-breaker expands
+                        table,
+                        Arrays.asList(sqlGenerator.orderByDesc(TABLE_NAME, "int_column")),
+                        new String[] {"3", "12"},
+                        "test_table.int_column DESC, test_table._id ASC",
+                        "test_table.int_column <= ? AND (test_table.int_column < ? OR (test_table.int_column = ? AND test_table._id > ?))",
+                        new String[] {"3", "3", "3", "12"}
+                },
+                {   // 03: mixed directions expand with each key compared in its own direction
+                        table,
+                        Arrays.asList(sqlGenerator.orderByAsc(TABLE_NAME, "int_column"), sqlGenerator.orderByDesc(TABLE_NAME, "long_column")),
+                        new String[] {"3", "4", "12"},
+                        "test_table.int_column ASC, test_table.long_column DESC, test_table._id ASC",
+                        "test_table.int_column >= ? AND (test_table.int_column > ? OR (test_table.int_column = ? AND test_table.long_column < ?) OR (test_table.int_column = ? AND test_table.long_column = ? AND test_table._id > ?))",
+                        new String[] {"3", "3", "3", "4", "3", "4", "12"}
+                },
+                {   // 04: the primary key is not repeated when it is already in the order by
+                        table,
+                        Arrays.asList(sqlGenerator.orderByDesc(TABLE_NAME, "long_column"), sqlGenerator.orderByDesc(TABLE_NAME, "_id")),
+                        new String[] {"4", "12"},
+                        "test_table.long_column DESC, test_table._id DESC",
+                        "(test_table.long_column, test_table._id) < (?, ?)",
+                        new String[] {"4", "12"}
+                },
+                {   // 05: a composite primary key is the tie-breaker, and expressions without a direction sort ASC
+                        table().primaryKey(setOf("long_column", "int_column"))
+                                .columnMap(columnMapOf(intCol().build(), longCol().build(), stringCol().build()))
+                                .build(),
+                        Arrays.asList("test_table.string_column"),
+                        new String[] {"a", "3", "4"},
+                        "test_table.string_column ASC, test_table.int_column ASC, test_table.long_column ASC",
+                        "(test_table.string_column, test_table.int_column, test_table.long_column) > (?, ?, ?)",
+                        new String[] {"a", "3", "4"}
+                },
+                {   // 06: the primary key is not repeated when the order by names it without the table name
+                        table,
+                        Arrays.asList("int_column ASC", "_id ASC"),
+                        new String[] {"3", "12"},
+                        "int_column ASC, _id ASC",
+                        "(int_column, _id) > (?, ?)",
+                        new String[] {"3", "12"}
+                },
+                {   // 07: nor when the order by quotes it or names it in a different case
+                        table,
+                        Arrays.asList("\"TEST_TABLE\".\"_ID\" DESC"),
+                        new String[] {"12"},
+                        "\"TEST_TABLE\".\"_ID\" DESC",
+                        "\"TEST_TABLE\".\"_ID\" < ?",
+                        new String[] {"12"}
+                }
+        });
+    }
+
+    @Before
+    public void setUp() {
+        paginationUnderTest = new SqlGenerator().newKeysetPagination(table, orderByList);
+    }
+
+    @Test
+    public void shouldOrderByKeyExpressions() {
+        assertEquals(expectedOrderBy, paginationUnderTest.getOrderBy());
+    }
+
+    @Test
+    public void shouldSeekPastLastRow() {
+        assertEquals(expectedSeekPredicate, paginationUnderTest.getSeekPredicate());
+    }
+
+    @Test
+    public void shouldBindKeyValuesInPlaceholderOrder() {
+        assertArrayEquals(expectedSeekArgs, paginationUnderTest.seekArgsOf(lastRowKeyValues));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWrongNumberOfKeyValues() {
+        paginationUnderTest.seekArgsOf(Arrays.copyOf(lastRowKeyValues, lastRowKeyValues.length + 1));
+    }
+}
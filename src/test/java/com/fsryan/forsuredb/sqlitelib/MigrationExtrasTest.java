@@ -0,0 +1,93 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.setOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MigrationExtrasTest {
+
+    @Test
+    public void shouldDecodeStringSet() {
+        assertEquals(setOf("_id", "created", "quoted \"name\""), MigrationExtras.stringSetOf("[\"_id\", \"created\", \"_id\", \"quoted \\\"name\\\"\"]"));
+    }
+
+    @Test
+    public void shouldDecodeNullAsNull() {
+        assertNull(MigrationExtras.stringSetOf(null));
+        assertNull(MigrationExtras.stringSetOf("null"));
+        assertNull(MigrationExtras.tableForeignKeyInfoSetOf(null));
+        assertNull(MigrationExtras.tableForeignKeyInfoSetOf("null"));
+    }
+
+    @Test
+    public void shouldDecodeTableForeignKeyInfoSetAsGsonDoes() {
+        String json = "[{\"foreign_table_api_class_name\": \"com.example.UserTable\", \"foreign_table_name\": \"user\","
+                + " \"local_to_foreign_column_map\": {\"user_id\": \"_id\", \"user_name\": \"name\"},"
+                + " \"update_action\": \"CASCADE\", \"delete_action\": \"SET_NULL\", \"unknown\": {\"nested\": [1, 2]}},"
+                + " {\"foreign_table_name\": \"profile\", \"local_to_foreign_column_map\": {\"profile_id\": \"_id\"}}]";
+        Set<TableForeignKeyInfo> expected = new Gson().fromJson(json, new TypeToken<Set<TableForeignKeyInfo>>() {}.getType());
+
+        Set<TableForeignKeyInfo> actual = MigrationExtras.tableForeignKeyInfoSetOf(json);
+
+        assertEquals(2, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDecodeObjectAsStringSet() {
+        MigrationExtras.stringSetOf("{\"_id\": true}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDecodeTruncatedForeignKeys() {
+        MigrationExtras.tableForeignKeyInfoSetOf("[{\"foreign_table_name\": \"user\"");
+    }
+
+    @Test
+    public void shouldDecodeIndexDefinitionWithUnknownMembers() {
+        IndexInfo indexInfo = IndexInfo.fromJson("orders", "{\"columns\": [{\"column_name\": \"customer_id\", \"comment\": \"skipped\"},"
+                + " {\"column_name\": \"placed\", \"descending\": true}], \"unique\": \"false\", \"covering_columns\": [\"total\", \"tax\"]}");
+
+        assertEquals(IndexInfo.builder("orders")
+                .unique(false)
+                .column("customer_id")
+                .column("placed", true)
+                .coveringColumn("total")
+                .coveringColumn("tax")
+                .build(), indexInfo);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDecodeIndexDefinitionWithoutColumns() {
+        IndexInfo.fromJson("orders", "{\"index_name\": \"orders_index\"}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotDecodeIndexDefinitionThatIsNotAnObject() {
+        IndexInfo.fromJson("orders", "[\"customer_id\"]");
+    }
+}
@@ -0,0 +1,142 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.resourceText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+public class MigrationPlanSourceWriterTest {
+
+    private static final String PACKAGE_NAME = "com.fsryan.forsuredb.generated";
+    private static final String CLASS_NAME = "MigrationPlans";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MigrationSet versionOne;
+    private MigrationSet versionTwo;
+
+    @Before
+    public void setUp() throws Exception {
+        versionOne = new Gson().fromJson(resourceText("migration_set_fixture.json"), MigrationSet.class);
+        versionTwo = new Gson().fromJson(resourceText("change_default_value_with_new_column_migration.json"), MigrationSet.class);
+    }
+
+    @Test
+    public void shouldPrecompileSqlOfEachVersion() throws Exception {
+        SqlGenerator sqlGenerator = new SqlGenerator();
+
+        Method migrationSql = compile(sqlGenerator, Arrays.asList(versionOne, versionTwo));
+
+        assertEquals(sqlGenerator.generateMigrationSql(versionOne), migrationSql.invoke(null, 1));
+        assertEquals(sqlGenerator.generateMigrationSql(versionTwo), migrationSql.invoke(null, 2));
+        assertNull(migrationSql.invoke(null, 3));
+    }
+
+    @Test
+    public void shouldPrecompileStatementsThatDoNotFitInOneConstantOrOneClass() throws Exception {
+        StringBuilder longStatement = new StringBuilder("INSERT INTO t(s) VALUES('\"\\\n");
+        while (longStatement.length() < 70000) {
+            longStatement.append("\u00e9\u6f22\ud83d\ude00");
+        }
+        final List<String> sql = new ArrayList<>();
+        sql.add(longStatement.append("');").toString());
+        for (int i = 0; i < 2 * MigrationPlanSourceWriter.STATEMENTS_PER_PART; i++) {
+            sql.add("ALTER TABLE t ADD COLUMN c_" + i + " TEXT;");
+        }
+        SqlGenerator sqlGenerator = new SqlGenerator() {
+            @Override
+            public List<String> generateMigrationSql(MigrationSet migrationSet) {
+                return sql;
+            }
+        };
+
+        Method migrationSql = compile(sqlGenerator, Arrays.asList(versionOne));
+
+        assertEquals(sql, migrationSql.invoke(null, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowTwoMigrationSetsOfTheSameVersion() throws Exception {
+        new MigrationPlanSourceWriter(PACKAGE_NAME, CLASS_NAME, new SqlGenerator())
+                .write(new StringWriter(), Arrays.asList(versionOne, versionOne));
+    }
+
+    @Test
+    public void shouldSplitConstantsAtModifiedUtf8Limit() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < MigrationPlanSourceWriter.MAX_CONSTANT_UTF_LENGTH - 1; i++) {
+            buf.append('a');
+        }
+        String s = buf.append("\ud83d\ude00").toString();
+
+        List<String> constants = MigrationPlanSourceWriter.constantsOf(s);
+
+        assertEquals(2, constants.size());
+        assertEquals(MigrationPlanSourceWriter.MAX_CONSTANT_UTF_LENGTH - 1, constants.get(0).length());
+        assertEquals("\ud83d\ude00", constants.get(1));
+    }
+
+    @Test
+    public void shouldNotSplitConstantThatFits() {
+        assertEquals(Arrays.asList("\u0000\u00e9"), MigrationPlanSourceWriter.constantsOf("\u0000\u00e9"));
+        assertEquals(Arrays.asList(""), MigrationPlanSourceWriter.constantsOf(""));
+    }
+
+    private Method compile(SqlGenerator sqlGenerator, List<MigrationSet> migrationSets) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assumeNotNull(compiler);    // <-- only a JDK has a compiler
+
+        File sourceDir = new File(temporaryFolder.getRoot(), PACKAGE_NAME.replace('.', File.separatorChar));
+        assertTrue(sourceDir.mkdirs());
+        File sourceFile = new File(sourceDir, CLASS_NAME + ".java");
+        Writer out = new FileWriter(sourceFile);
+        new MigrationPlanSourceWriter(PACKAGE_NAME, CLASS_NAME, sqlGenerator).write(out, migrationSets);
+        out.close();
+
+        assertEquals(0, compiler.run(null, null, null, "-encoding", "US-ASCII", sourceFile.getPath()));
+        URLClassLoader classLoader = new URLClassLoader(new URL[] {temporaryFolder.getRoot().toURI().toURL()});
+        Method ret = classLoader.loadClass(PACKAGE_NAME + "." + CLASS_NAME).getMethod("migrationSql", int.class);
+        assertNotNull(ret);
+        return ret;
+    }
+}
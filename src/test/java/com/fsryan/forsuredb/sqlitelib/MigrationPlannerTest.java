@@ -0,0 +1,166 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.google.gson.Gson;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MigrationPlannerTest {
+
+    private static final Gson gson = new Gson();
+
+    @Test
+    public void shouldPartitionCreatesThenRecreationsThenRemainingMigrations() {
+        Map<String, TableInfo> schema = tableMapOf(table().tableName("a").build(), table().tableName("b").build());
+        List<Migration> input = Arrays.asList(
+                migration("a", "ALTER_TABLE_ADD_COLUMN"),
+                migration("b", "CHANGE_DEFAULT_VALUE"),
+                migration("a", "CREATE_TABLE"),
+                migration("b", "ADD_INDEX"),
+                migration("a", "UPDATE_PRIMARY_KEY"),
+                migration("b", "CREATE_TABLE")
+        );
+
+        List<Migration> actual = new MigrationPlanner(schema).plan(input);
+
+        assertEquals(Arrays.asList(input.get(2), input.get(5), input.get(1), input.get(4), input.get(0), input.get(3)), actual);
+    }
+
+    @Test
+    public void shouldCreateReferencedTablesFirst() {
+        Map<String, TableInfo> schema = tableMapOf(
+                referencingTable("a", "b"),
+                table().tableName("c").build(),
+                referencingTable("b", "d"),
+                table().tableName("d").build()
+        );
+        List<Migration> input = createMigrations("a", "c", "b", "d");
+
+        assertEquals(tableNames("d", "b", "a", "c"), tableNamesOf(new MigrationPlanner(schema).plan(input)));
+    }
+
+    @Test
+    public void shouldNotMoveCreatesThatAreAlreadyInOrder() {
+        Map<String, TableInfo> schema = tableMapOf(
+                table().tableName("a").build(),
+                referencingTable("b", "a"),
+                table().tableName("c").build()
+        );
+        List<Migration> input = createMigrations("c", "a", "b");
+
+        assertEquals(tableNames("c", "a", "b"), tableNamesOf(new MigrationPlanner(schema).plan(input)));
+    }
+
+    @Test
+    public void shouldIgnoreSelfReferencesAndReferencesToExistingTables() {
+        Map<String, TableInfo> schema = tableMapOf(
+                referencingTable("a", "a"),
+                referencingTable("b", "existing"),
+                table().tableName("existing").build()
+        );
+        List<Migration> input = createMigrations("b", "a");
+
+        assertEquals(tableNames("b", "a"), tableNamesOf(new MigrationPlanner(schema).plan(input)));
+    }
+
+    @Test
+    public void shouldReportForeignKeyCycles() {
+        Map<String, TableInfo> schema = tableMapOf(
+                table().tableName("a").build(),
+                referencingTable("b", "c"),
+                referencingTable("c", "d"),
+                referencingTable("d", "b")
+        );
+        try {
+            new MigrationPlanner(schema).plan(createMigrations("a", "b", "c", "d"));
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException ise) {
+            assertTrue(ise.getMessage(), ise.getMessage().endsWith("b -> c -> d -> b"));
+        }
+    }
+
+    @Test
+    public void shouldOrderLongReferenceChains() {
+        final int chainLength = 20000;
+        Map<String, TableInfo> schema = new HashMap<>();
+        List<String> expected = new ArrayList<>(chainLength);
+        for (int i = 0; i < chainLength; i++) {
+            final String tableName = "t" + i;
+            schema.put(tableName, i == 0 ? table().tableName(tableName).build() : referencingTable(tableName, "t" + (i - 1)));
+            expected.add(tableName);
+        }
+        List<String> reversed = new ArrayList<>(expected);
+        Collections.reverse(reversed);
+
+        List<Migration> actual = new MigrationPlanner(schema).plan(createMigrations(reversed.toArray(new String[chainLength])));
+
+        assertEquals(expected, tableNamesOf(actual));
+    }
+
+    private static TableInfo referencingTable(String tableName, String referencedTableName) {
+        return table().tableName(tableName)
+                .foreignKeys(setOf(new TableForeignKeyInfo.Builder()
+                        .foreignTableName(referencedTableName)
+                        .foreignTableApiClassName(MigrationPlannerTest.class.getName())
+                        .mapLocalToForeignColumn(referencedTableName + "_id", "_id")
+                        .updateChangeAction("CASCADE")
+                        .deleteChangeAction("CASCADE")
+                        .build()))
+                .columnMap(columnMapOf(longCol().columnName(referencedTableName + "_id").build()))
+                .build();
+    }
+
+    private static List<Migration> createMigrations(String... tableNames) {
+        List<Migration> ret = new ArrayList<>(tableNames.length);
+        for (String tableName : tableNames) {
+            ret.add(migration(tableName, "CREATE_TABLE"));
+        }
+        return ret;
+    }
+
+    private static Migration migration(String tableName, String type) {
+        return gson.fromJson("{\"table_name\":\"" + tableName + "\",\"migration_type\":\"" + type + "\"}", Migration.class);
+    }
+
+    private static List<String> tableNames(String... tableNames) {
+        return Arrays.asList(tableNames);
+    }
+
+    private static List<String> tableNamesOf(List<Migration> migrations) {
+        List<String> ret = new ArrayList<>(migrations.size());
+        for (Migration migration : migrations) {
+            ret.add(migration.getTableName());
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,443 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.ColumnInfo;
+import com.fsryan.forsuredb.api.info.ForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.Migration;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * <p>
+ *     Runs the SQL that {@link SqlGenerator#generateMigrationSql(MigrationSet)} generates against a real, file-backed
+ *     SQLite database so that the strategies for performing a migration can be compared on data rather than on the
+ *     text of their queries.
+ * </p>
+ * <p>
+ *     The source schema is derived from the target schema of the {@link MigrationSet}: the tables that the set
+ *     creates and the columns and foreign keys that the set adds are removed. Each source table is populated with
+ *     the configured number of rows before the migration SQL is run one statement at a time, recording the wall
+ *     time, the number of rows changed and the growth of the database for each statement.
+ * </p>
+ */
+public class MigrationProfiler {
+
+    private final GenerationOptions options;
+    private final int defaultRowCount;
+    private final Map<String, Integer> rowCounts;
+
+    private MigrationProfiler(GenerationOptions options, int defaultRowCount, Map<String, Integer> rowCounts) {
+        this.options = options;
+        this.defaultRowCount = defaultRowCount;
+        this.rowCounts = rowCounts;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Report profile(String label, MigrationSet migrationSet) throws IOException, SQLException {
+        Map<String, TableInfo> sourceSchema = sourceSchemaOf(migrationSet);
+        File dbFile = File.createTempFile("migration_profile", ".db");
+        try {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + dbFile.getAbsolutePath());
+            try {
+                Statement statement = connection.createStatement();
+                try {
+                    createAndPopulate(statement, sourceSchema);
+                    Map<String, Long> rowCountsBefore = rowCountsOf(statement, sourceSchema.keySet());
+                    long fileSizeBefore = dbFile.length();
+                    List<StatementProfile> statementProfiles = run(statement, new SqlGenerator(options).generateMigrationSql(migrationSet));
+                    Map<String, Long> rowCountsAfter = rowCountsOf(statement, sourceSchema.keySet());
+                    return new Report(label, rowCountsBefore, rowCountsAfter, statementProfiles, dbFile.length() - fileSizeBefore);
+                } finally {
+                    statement.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } finally {
+            dbFile.delete();
+        }
+    }
+
+    private void createAndPopulate(Statement statement, Map<String, TableInfo> sourceSchema) throws SQLException {
+        for (String tableName : sourceSchema.keySet()) {
+            for (String sql : new CreateTableGenerator(tableName, sourceSchema, options).generate()) {
+                statement.execute(sql);
+            }
+        }
+        for (TableInfo table : sourceSchema.values()) {
+            statement.execute(populationSql(table, sourceSchema));
+        }
+    }
+
+    private List<StatementProfile> run(Statement statement, List<String> migrationSql) throws SQLException {
+        final long pageSize = longResultOf(statement, "PRAGMA page_size;");
+        List<StatementProfile> ret = new ArrayList<>(migrationSql.size());
+        for (String sql : migrationSql) {
+            final long changesBefore = longResultOf(statement, "SELECT total_changes();");
+            final long pagesBefore = longResultOf(statement, "PRAGMA page_count;");
+            final long start = System.nanoTime();
+            statement.execute(sql);
+            final long nanos = System.nanoTime() - start;
+            final long rowsChanged = longResultOf(statement, "SELECT total_changes();") - changesBefore;
+            final long bytesGrown = (longResultOf(statement, "PRAGMA page_count;") - pagesBefore) * pageSize;
+            ret.add(new StatementProfile(sql, nanos, rowsChanged, bytesGrown));
+        }
+        return ret;
+    }
+
+    /**
+     * <p>
+     *     Generates rows 1 through the row count of the table in SQL. Every value is a function of the row number
+     *     and the type of the column so that unique columns stay unique and foreign key columns reference values
+     *     that exist in the rows of the foreign table.
+     * </p>
+     */
+    private String populationSql(TableInfo table, Map<String, TableInfo> sourceSchema) {
+        final String x = "x";
+        List<ColumnInfo> columns = new ArrayList<>(table.getColumns());
+        Collections.sort(columns);
+        StringBuilder columnsBuf = new StringBuilder();
+        StringBuilder valuesBuf = new StringBuilder();
+        for (ColumnInfo column : columns) {
+            final String columnName = column.getColumnName();
+            if (isDefaultValuedColumn(columnName)) {
+                continue;
+            }
+            String value = valueOf(column, x);
+            String foreignTableName = foreignTableNameOf(table, columnName);
+            TableInfo foreignTable = foreignTableName == null ? null : sourceSchema.get(foreignTableName);
+            if (foreignTable != null) {
+                String foreignColumnName = foreignColumnNameOf(table, columnName);
+                ColumnInfo foreignColumn = foreignTable.getColumn(foreignColumnName);
+                String foreignRow = "((" + x + " - 1) % " + rowCountOf(foreignTableName) + " + 1)";
+                value = foreignColumn == null ? "NULL" : valueOf(foreignColumn, foreignRow);
+            }
+            columnsBuf.append(columnsBuf.length() == 0 ? "" : ", ").append(columnName);
+            valuesBuf.append(valuesBuf.length() == 0 ? "" : ", ").append(value);
+        }
+        return "WITH RECURSIVE seq(" + x + ") AS (SELECT 1 UNION ALL SELECT " + x + " + 1 FROM seq WHERE " + x + " < " + rowCountOf(table.getTableName()) + ")"
+                + " INSERT INTO " + table.getTableName() + "(" + columnsBuf + ") SELECT " + valuesBuf + " FROM seq;";
+    }
+
+    private String valueOf(ColumnInfo column, String row) {
+        switch (TypeTranslator.from(column.getQualifiedType()).getSqlString()) {
+            case "INTEGER":
+                return row;
+            case "REAL":
+                return row + " * 1.5";
+            case "BLOB":
+                return "CAST('value_' || " + row + " AS BLOB)";
+            case "DATETIME":
+                return options.getDateStorage().getCurrentTimeSql();
+        }
+        return "'value_' || " + row;
+    }
+
+    private int rowCountOf(String tableName) {
+        Integer ret = rowCounts.get(tableName);
+        return ret == null ? defaultRowCount : ret;
+    }
+
+    private static boolean isDefaultValuedColumn(String columnName) {
+        return "created".equals(columnName) || "deleted".equals(columnName) || "modified".equals(columnName);
+    }
+
+    private static String foreignTableNameOf(TableInfo table, String columnName) {
+        ColumnInfo column = table.getColumn(columnName);
+        if (column.isForeignKey()) {
+            return column.getForeignKeyInfo().getTableName();
+        }
+        for (TableForeignKeyInfo foreignKey : foreignKeysOf(table)) {
+            if (foreignKey.getLocalToForeignColumnMap().containsKey(columnName)) {
+                return foreignKey.getForeignTableName();
+            }
+        }
+        return null;
+    }
+
+    private static String foreignColumnNameOf(TableInfo table, String columnName) {
+        ColumnInfo column = table.getColumn(columnName);
+        if (column.isForeignKey()) {
+            return column.getForeignKeyInfo().getColumnName();
+        }
+        for (TableForeignKeyInfo foreignKey : foreignKeysOf(table)) {
+            String foreignColumnName = foreignKey.getLocalToForeignColumnMap().get(columnName);
+            if (foreignColumnName != null) {
+                return foreignColumnName;
+            }
+        }
+        return null;
+    }
+
+    private static Set<TableForeignKeyInfo> foreignKeysOf(TableInfo table) {
+        return table.getForeignKeys() == null ? Collections.<TableForeignKeyInfo>emptySet() : table.getForeignKeys();
+    }
+
+    private static Map<String, Long> rowCountsOf(Statement statement, Set<String> tableNames) throws SQLException {
+        Map<String, Long> ret = new TreeMap<>();
+        for (String tableName : tableNames) {
+            if (longResultOf(statement, "SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name = '" + tableName + "';") > 0) {
+                ret.put(tableName, longResultOf(statement, "SELECT COUNT(*) FROM " + tableName + ";"));
+            }
+        }
+        return ret;
+    }
+
+    private static long longResultOf(Statement statement, String sql) throws SQLException {
+        ResultSet resultSet = statement.executeQuery(sql);
+        try {
+            return resultSet.next() ? resultSet.getLong(1) : 0L;
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    /**
+     * <p>
+     *     The schema before the {@link MigrationSet} is run: the target schema without the tables created by the set
+     *     and without the columns and foreign keys the set adds.
+     * </p>
+     */
+    /*package*/ static Map<String, TableInfo> sourceSchemaOf(MigrationSet migrationSet) {
+        Set<String> createdTables = new HashSet<>();
+        Map<String, Set<String>> addedColumns = new HashMap<>();
+        for (Migration migration : migrationSet.getOrderedMigrations()) {
+            switch (migration.getType()) {
+                case CREATE_TABLE:
+                    createdTables.add(migration.getTableName());
+                    break;
+                case ALTER_TABLE_ADD_COLUMN:
+                    // Intentionally falling through
+                case ALTER_TABLE_ADD_UNIQUE:
+                    // Intentionally falling through
+                case ADD_FOREIGN_KEY_REFERENCE:
+                    Set<String> columnNames = addedColumns.get(migration.getTableName());
+                    if (columnNames == null) {
+                        columnNames = new HashSet<>();
+                        addedColumns.put(migration.getTableName(), columnNames);
+                    }
+                    columnNames.add(migration.getColumnName());
+                    break;
+            }
+        }
+
+        Map<String, TableInfo> ret = new HashMap<>();
+        for (TableInfo table : migrationSet.getTargetSchema().values()) {
+            if (createdTables.contains(table.getTableName())) {
+                continue;
+            }
+            Set<String> removedColumns = addedColumns.get(table.getTableName());
+            ret.put(table.getTableName(), removedColumns == null ? table : withoutColumns(table, removedColumns));
+        }
+        return ret;
+    }
+
+    private static TableInfo withoutColumns(TableInfo table, Set<String> removedColumns) {
+        Map<String, ColumnInfo> columnMap = new HashMap<>();
+        for (ColumnInfo column : table.getColumns()) {
+            if (!removedColumns.contains(column.getColumnName())) {
+                columnMap.put(column.getColumnName(), column);
+            }
+        }
+        Set<TableForeignKeyInfo> foreignKeys = new HashSet<>();
+        for (TableForeignKeyInfo foreignKey : foreignKeysOf(table)) {
+            if (Collections.disjoint(foreignKey.getLocalToForeignColumnMap().keySet(), removedColumns)) {
+                foreignKeys.add(foreignKey);
+            }
+        }
+        return TableInfo.builder()
+                .tableName(table.getTableName())
+                .qualifiedClassName(table.getQualifiedClassName())
+                .primaryKey(table.getPrimaryKey())
+                .primaryKeyOnConflict(table.getPrimaryKeyOnConflict())
+                .foreignKeys(foreignKeys)
+                .columnMap(columnMap)
+                .build();
+    }
+
+    public static class Builder {
+
+        private GenerationOptions options = GenerationOptions.DEFAULT;
+        private int defaultRowCount = 1000;
+        private final Map<String, Integer> rowCounts = new HashMap<>();
+
+        public Builder options(GenerationOptions options) {
+            if (options == null) {
+                throw new IllegalArgumentException("options cannot be null");
+            }
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * @param rowCount the number of rows of every table without its own row count
+         */
+        public Builder rowCount(int rowCount) {
+            if (rowCount < 0) {
+                throw new IllegalArgumentException("rowCount cannot be negative: " + rowCount);
+            }
+            defaultRowCount = rowCount;
+            return this;
+        }
+
+        public Builder rowCount(String tableName, int rowCount) {
+            if (rowCount < 0) {
+                throw new IllegalArgumentException("rowCount cannot be negative: " + rowCount);
+            }
+            rowCounts.put(tableName, rowCount);
+            return this;
+        }
+
+        public MigrationProfiler build() {
+            return new MigrationProfiler(options, defaultRowCount, new HashMap<>(rowCounts));
+        }
+    }
+
+    public static class StatementProfile {
+
+        private final String sql;
+        private final long nanos;
+        private final long rowsChanged;
+        private final long bytesGrown;
+
+        /*package*/ StatementProfile(String sql, long nanos, long rowsChanged, long bytesGrown) {
+            this.sql = sql;
+            this.nanos = nanos;
+            this.rowsChanged = rowsChanged;
+            this.bytesGrown = bytesGrown;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return the number of rows inserted, updated or deleted by the statement--including by triggers
+         */
+        public long getRowsChanged() {
+            return rowsChanged;
+        }
+
+        /**
+         * @return the number of bytes by which the database grew (or shrank, if negative) when the statement ran
+         */
+        public long getBytesGrown() {
+            return bytesGrown;
+        }
+    }
+
+    public static class Report {
+
+        private final String label;
+        private final Map<String, Long> rowCountsBefore;
+        private final Map<String, Long> rowCountsAfter;
+        private final List<StatementProfile> statementProfiles;
+        private final long fileGrowth;
+
+        /*package*/ Report(String label,
+                           Map<String, Long> rowCountsBefore,
+                           Map<String, Long> rowCountsAfter,
+                           List<StatementProfile> statementProfiles,
+                           long fileGrowth) {
+            this.label = label;
+            this.rowCountsBefore = rowCountsBefore;
+            this.rowCountsAfter = rowCountsAfter;
+            this.statementProfiles = statementProfiles;
+            this.fileGrowth = fileGrowth;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @return tableName -> number of rows for each table of the source schema before the migration
+         */
+        public Map<String, Long> getRowCountsBefore() {
+            return rowCountsBefore;
+        }
+
+        /**
+         * @return tableName -> number of rows for each table of the source schema that exists after the migration
+         */
+        public Map<String, Long> getRowCountsAfter() {
+            return rowCountsAfter;
+        }
+
+        public List<StatementProfile> getStatementProfiles() {
+            return statementProfiles;
+        }
+
+        public long getTotalNanos() {
+            long ret = 0L;
+            for (StatementProfile statementProfile : statementProfiles) {
+                ret += statementProfile.getNanos();
+            }
+            return ret;
+        }
+
+        public long getTotalRowsChanged() {
+            long ret = 0L;
+            for (StatementProfile statementProfile : statementProfiles) {
+                ret += statementProfile.getRowsChanged();
+            }
+            return ret;
+        }
+
+        /**
+         * @return the number of bytes by which the database file grew while the migration ran
+         */
+        public long getFileGrowth() {
+            return fileGrowth;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder("Migration profile: ").append(label)
+                    .append("; source rows: ").append(rowCountsBefore)
+                    .append(String.format("%n%12s %12s %12s  %s%n", "micros", "rows", "bytes", "sql"));
+            for (StatementProfile statementProfile : statementProfiles) {
+                buf.append(String.format("%12d %12d %12d  %s%n",
+                        statementProfile.getNanos() / 1000L,
+                        statementProfile.getRowsChanged(),
+                        statementProfile.getBytesGrown(),
+                        statementProfile.getSql()));
+            }
+            return buf.append(String.format("%12d %12d %12d  total (file growth)%n", getTotalNanos() / 1000L, getTotalRowsChanged(), fileGrowth))
+                    .toString();
+        }
+    }
+}
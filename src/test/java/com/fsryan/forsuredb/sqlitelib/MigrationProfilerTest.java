@@ -0,0 +1,134 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.resourceText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * <p>
+ *     Runs the migration SQL of each kind of migration against populated SQLite databases once per parameter set.
+ *     Set the forsuredb.profiler.rowCount system property to profile larger tables and the forsuredb.profiler.print
+ *     system property to true to print each {@link MigrationProfiler.Report}.
+ * </p>
+ */
+@RunWith(Parameterized.class)
+public class MigrationProfilerTest {
+
+    private static final int ROW_COUNT = Integer.getInteger("forsuredb.profiler.rowCount", 1000);
+    private static final boolean PRINT_REPORTS = Boolean.getBoolean("forsuredb.profiler.print");
+    // label -> report; Parameterized creates a test instance per test method, so profile each parameter set once
+    private static final Map<String, MigrationProfiler.Report> reports = new HashMap<>();
+
+    private MigrationProfiler.Report report;
+
+    private final String label;
+    private final String migrationSetResource;
+    private final GenerationOptions options;
+
+    public MigrationProfilerTest(String label, String migrationSetResource, GenerationOptions options) {
+        this.label = label;
+        this.migrationSetResource = migrationSetResource;
+        this.options = options;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {   // 00
+                        "add column",
+                        "alter_table_add_column_migration.json",
+                        GenerationOptions.DEFAULT
+                },
+                {   // 01
+                        "add foreign key (temp table copy)",
+                        "alter_table_add_foreign_key_migration.json",
+                        GenerationOptions.DEFAULT
+                },
+                {   // 02
+                        "add foreign key (create copy rename)",
+                        "alter_table_add_foreign_key_migration.json",
+                        GenerationOptions.builder().rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME).build()
+                },
+                {   // 03
+                        "add index",
+                        "add_composite_index_migration.json",
+                        GenerationOptions.DEFAULT
+                },
+                {   // 04
+                        "rebuild (temp table copy)",
+                        "change_default_value_with_new_column_migration.json",
+                        GenerationOptions.DEFAULT
+                },
+                {   // 05
+                        "rebuild (create copy rename)",
+                        "change_default_value_with_new_column_migration.json",
+                        GenerationOptions.builder().rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME).build()
+                }
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        report = reports.get(label);
+        if (report != null) {
+            return;
+        }
+
+        MigrationSet migrationSet = new Gson().fromJson(resourceText(migrationSetResource), MigrationSet.class);
+        report = MigrationProfiler.builder()
+                .options(options)
+                .rowCount(ROW_COUNT)
+                .build()
+                .profile(label, migrationSet);
+        reports.put(label, report);
+        if (PRINT_REPORTS) {
+            System.out.println(report);
+        }
+    }
+
+    @Test
+    public void shouldRunEveryStatement() {
+        assertFalse(report.getStatementProfiles().isEmpty());
+    }
+
+    @Test
+    public void shouldPreserveRows() {
+        assertEquals(report.getRowCountsBefore(), report.getRowCountsAfter());
+    }
+
+    @Test
+    public void shouldPopulateSourceTables() {
+        for (Long rowCount : report.getRowCountsBefore().values()) {
+            assertEquals(ROW_COUNT, rowCount.longValue());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.TestData.resourceText;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class MigrationSetFingerprintTest {
+
+    private JsonObject migrationSetJson;
+    private long fingerprint;
+
+    @Before
+    public void setUp() throws Exception {
+        migrationSetJson = new JsonParser().parse(resourceText("migration_set_fixture.json")).getAsJsonObject();
+        fingerprint = MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), GenerationOptions.DEFAULT);
+    }
+
+    @Test
+    public void shouldBeStableAcrossDeserializations() throws Exception {
+        MigrationSet deserializedAgain = new Gson().fromJson(resourceText("migration_set_fixture.json"), MigrationSet.class);
+        assertEquals(fingerprint, MigrationSetFingerprint.of(deserializedAgain, GenerationOptions.DEFAULT));
+    }
+
+    @Test
+    public void shouldNotDependOnTargetSchemaOrder() {
+        JsonObject targetSchema = migrationSetJson.getAsJsonObject("target_schema");
+        List<Map.Entry<String, JsonElement>> entries = new ArrayList<>(targetSchema.entrySet());
+        Collections.reverse(entries);
+        JsonObject reversedTargetSchema = new JsonObject();
+        for (Map.Entry<String, JsonElement> entry : entries) {
+            reversedTargetSchema.add(entry.getKey(), entry.getValue());
+        }
+        migrationSetJson.add("target_schema", reversedTargetSchema);
+
+        assertEquals(fingerprint, MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), GenerationOptions.DEFAULT));
+    }
+
+    @Test
+    public void shouldDependOnGenerationOptions() {
+        GenerationOptions options = GenerationOptions.builder().rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME).build();
+        assertNotEquals(fingerprint, MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), options));
+    }
+
+    @Test
+    public void shouldDependOnMigrationOrder() {
+        JsonArray migrations = migrationSetJson.getAsJsonArray("ordered_migrations");
+        JsonArray reordered = new JsonArray();
+        reordered.add(migrations.get(1));
+        reordered.add(migrations.get(0));
+        for (int i = 2; i < migrations.size(); i++) {
+            reordered.add(migrations.get(i));
+        }
+        migrationSetJson.add("ordered_migrations", reordered);
+
+        assertNotEquals(fingerprint, MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), GenerationOptions.DEFAULT));
+    }
+
+    @Test
+    public void shouldDependOnMigrationExtras() {
+        JsonObject extras = new JsonObject();
+        extras.addProperty("existing_column_names", "[\"_id\"]");
+        migrationSetJson.getAsJsonArray("ordered_migrations").get(0).getAsJsonObject().add("extras", extras);
+
+        assertNotEquals(fingerprint, MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), GenerationOptions.DEFAULT));
+    }
+
+    @Test
+    public void shouldDependOnColumnDefinitions() {
+        JsonObject userColumns = migrationSetJson.getAsJsonObject("target_schema")
+                .getAsJsonObject("user")
+                .getAsJsonObject("column_info_map");
+        userColumns.getAsJsonObject("login_count").addProperty("default_value", "1");
+
+        assertNotEquals(fingerprint, MigrationSetFingerprint.of(migrationSetOf(migrationSetJson), GenerationOptions.DEFAULT));
+    }
+
+    private static MigrationSet migrationSetOf(JsonObject json) {
+        return new Gson().fromJson(json, MigrationSet.class);
+    }
+}
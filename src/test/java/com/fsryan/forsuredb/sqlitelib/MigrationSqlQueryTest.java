@@ -66,12 +66,11 @@ public class MigrationSqlQueryTest {
                                 "DROP TABLE IF EXISTS temp_profile_info;",
                                 "CREATE TEMP TABLE temp_profile_info AS SELECT _id, created, deleted, modified, binary_data, email_address FROM profile_info;",
                                 "DROP TABLE IF EXISTS profile_info;",
-                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
-                                "CREATE TRIGGER profile_info_updated_trigger AFTER UPDATE ON profile_info BEGIN UPDATE profile_info SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE profile_info ADD COLUMN binary_data BLOB;",
-                                "ALTER TABLE profile_info ADD COLUMN email_address TEXT;",
+                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, binary_data BLOB, email_address TEXT, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
                                 "INSERT INTO profile_info SELECT _id, created, deleted, modified, null AS user_id, binary_data, email_address FROM temp_profile_info;",
-                                "DROP TABLE IF EXISTS temp_profile_info;")
+                                "DROP TABLE IF EXISTS temp_profile_info;",
+                                "CREATE INDEX IF NOT EXISTS profile_info_user_id_fk_index ON profile_info(user_id);",
+                                "CREATE TRIGGER profile_info_updated_trigger AFTER UPDATE ON profile_info BEGIN UPDATE profile_info SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;")
                 },
                 {   // 03 CREATE TABLE with unique column
                         resourceText("create_table_migration_with_unique_column.json"),
@@ -83,55 +82,51 @@ public class MigrationSqlQueryTest {
                 {   // 04 create two tables, one with a non unique index and unique index, the other with a foreign key to the unique index column; legacy foreign key
                         resourceText("create_two_tables_one_has_foreign_key_to_other.json"),
                         Arrays.asList(
-                                "CREATE TABLE test_table(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), unique_index_column TEXT UNIQUE);",
+                                "CREATE TABLE test_table(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), non_unique_index_column TEXT, unique_index_column TEXT UNIQUE);",
                                 "CREATE TRIGGER test_table_updated_trigger AFTER UPDATE ON test_table BEGIN UPDATE test_table SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
                                 "CREATE UNIQUE INDEX IF NOT EXISTS test_table_unique_index_column ON test_table(unique_index_column);",
+                                "CREATE INDEX IF NOT EXISTS test_table_non_unique_index_column ON test_table(non_unique_index_column);",
                                 "CREATE TABLE test_table2(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), test_table_unique_index_column TEXT, FOREIGN KEY(test_table_unique_index_column) REFERENCES test_table(unique_index_column) ON UPDATE CASCADE ON DELETE CASCADE);",
                                 "CREATE TRIGGER test_table2_updated_trigger AFTER UPDATE ON test_table2 BEGIN UPDATE test_table2 SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE test_table ADD COLUMN non_unique_index_column TEXT;",
-                                "CREATE INDEX IF NOT EXISTS test_table_non_unique_index_column ON test_table(non_unique_index_column);"
+                                "CREATE INDEX IF NOT EXISTS test_table2_test_table_unique_index_column_fk_index ON test_table2(test_table_unique_index_column);"
                         )
                 },
                 {   // 05 additional_data_table has foreign key to profile_info_table has foreign key to user_table; legacy foreign key
                         resourceText("three_table_zero_to_one_test.json"),
                         Arrays.asList(
-                                "CREATE TABLE user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "));",
+                                "CREATE TABLE user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), app_rating REAL, competitor_app_rating REAL, global_id INTEGER, login_count INTEGER);",
                                 "CREATE TRIGGER user_updated_trigger AFTER UPDATE ON user BEGIN UPDATE user SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
+                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, awesome INTEGER, binary_data BLOB, email_address TEXT, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
                                 "CREATE TRIGGER profile_info_updated_trigger AFTER UPDATE ON profile_info BEGIN UPDATE profile_info SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "CREATE TABLE additional_data(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), profile_info_id INTEGER, FOREIGN KEY(profile_info_id) REFERENCES profile_info(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
+                                "CREATE INDEX IF NOT EXISTS profile_info_user_id_fk_index ON profile_info(user_id);",
+                                "CREATE TABLE additional_data(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), profile_info_id INTEGER, int_column INTEGER, long_column INTEGER, string_column TEXT, FOREIGN KEY(profile_info_id) REFERENCES profile_info(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
                                 "CREATE TRIGGER additional_data_updated_trigger AFTER UPDATE ON additional_data BEGIN UPDATE additional_data SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE user ADD COLUMN app_rating REAL;",
-                                "ALTER TABLE profile_info ADD COLUMN awesome INTEGER;",
-                                "ALTER TABLE profile_info ADD COLUMN binary_data BLOB;",
-                                "ALTER TABLE user ADD COLUMN competitor_app_rating REAL;",
-                                "ALTER TABLE profile_info ADD COLUMN email_address TEXT;",
-                                "ALTER TABLE user ADD COLUMN global_id INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN int_column INTEGER;",
-                                "ALTER TABLE user ADD COLUMN login_count INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN long_column INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN string_column TEXT;"
+                                "CREATE INDEX IF NOT EXISTS additional_data_profile_info_id_fk_index ON additional_data(profile_info_id);"
                         )
                 },
                 {   // 06 same as 05, but with TableForeignKeyInfo instead of legacy foreign key
                         resourceText("three_table_zero_to_one_test_update_foreign_keys.json"),
                         Arrays.asList(
-                                "CREATE TABLE user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "));",
+                                "CREATE TABLE user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), app_rating REAL, competitor_app_rating REAL, global_id INTEGER, login_count INTEGER);",
                                 "CREATE TRIGGER user_updated_trigger AFTER UPDATE ON user BEGIN UPDATE user SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
+                                "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, awesome INTEGER, binary_data BLOB, email_address TEXT, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
                                 "CREATE TRIGGER profile_info_updated_trigger AFTER UPDATE ON profile_info BEGIN UPDATE profile_info SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "CREATE TABLE additional_data(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), profile_info_id INTEGER, FOREIGN KEY(profile_info_id) REFERENCES profile_info(_id));",
+                                "CREATE INDEX IF NOT EXISTS profile_info_user_id_fk_index ON profile_info(user_id);",
+                                "CREATE TABLE additional_data(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), profile_info_id INTEGER, int_column INTEGER, long_column INTEGER, string_column TEXT, FOREIGN KEY(profile_info_id) REFERENCES profile_info(_id));",
                                 "CREATE TRIGGER additional_data_updated_trigger AFTER UPDATE ON additional_data BEGIN UPDATE additional_data SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE user ADD COLUMN app_rating REAL;",
-                                "ALTER TABLE profile_info ADD COLUMN awesome INTEGER;",
-                                "ALTER TABLE profile_info ADD COLUMN binary_data BLOB;",
-                                "ALTER TABLE user ADD COLUMN competitor_app_rating REAL;",
-                                "ALTER TABLE profile_info ADD COLUMN email_address TEXT;",
-                                "ALTER TABLE user ADD COLUMN global_id INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN int_column INTEGER;",
-                                "ALTER TABLE user ADD COLUMN login_count INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN long_column INTEGER;",
-                                "ALTER TABLE additional_data ADD COLUMN string_column TEXT;"
+                                "CREATE INDEX IF NOT EXISTS additional_data_profile_info_id_fk_index ON additional_data(profile_info_id);"
+                        )
+                },
+                {   // 07 recreated table gets its new column in the CREATE TABLE query, and the column is not copied
+                        resourceText("change_default_value_with_new_column_migration.json"),
+                        Arrays.asList(
+                                "DROP TABLE IF EXISTS temp_user;",
+                                "CREATE TEMP TABLE temp_user AS SELECT _id, created, deleted, modified, login_count FROM user;",
+                                "DROP TABLE IF EXISTS user;",
+                                "CREATE TABLE user(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), global_id INTEGER, login_count INTEGER DEFAULT '0');",
+                                "INSERT INTO user SELECT _id, created, deleted, modified, null AS global_id, login_count FROM temp_user;",
+                                "DROP TABLE IF EXISTS temp_user;",
+                                "CREATE TRIGGER user_updated_trigger AFTER UPDATE ON user BEGIN UPDATE user SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
                         )
                 },
         });
@@ -0,0 +1,119 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.QueryGenerator;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+
+@RunWith(Parameterized.class)
+public class RecreateTableGeneratorTest extends BaseSQLiteGeneratorTest {
+
+    private static final GenerationOptions createCopyRename = GenerationOptions.builder()
+            .rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME)
+            .build();
+
+    private final QueryGenerator generatorUnderTest;
+
+    public RecreateTableGeneratorTest(QueryGenerator generatorUnderTest, String... expectedSql) {
+        super(expectedSql);
+        this.generatorUnderTest = generatorUnderTest;
+    }
+
+    @Parameterized.Parameters
+    public static Iterable<Object[]> data() {
+        final Map<String, TableInfo> targetSchema = tableMapOf(table().tableName("table_name")
+                .columnMap(columnMapOf(
+                        longCol().defaultValue("12").build(),
+                        stringCol().unique(true).build(),
+                        intCol().index(true).build()))
+                .build());
+        return Arrays.asList(new Object[][] {
+                {   // 00: create, copy, rename when all columns exist
+                        new ChangeDefaultValueGenerator("table_name", targetSchema, createCopyRename),
+                        new String[] {
+                                "DROP TABLE IF EXISTS new_table_name;",
+                                "CREATE TABLE new_table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER DEFAULT '12', string_column TEXT UNIQUE);",
+                                "INSERT INTO new_table_name (_id, created, deleted, modified, int_column, long_column, string_column) SELECT _id, created, deleted, modified, int_column, long_column, string_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "ALTER TABLE new_table_name RENAME TO table_name;",
+                                "CREATE UNIQUE INDEX IF NOT EXISTS table_name_string_column ON table_name(string_column);",
+                                "CREATE INDEX IF NOT EXISTS table_name_int_column ON table_name(int_column);",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+                        }
+                },
+                {   // 01: create, copy, rename leaves columns that do not yet exist out of the copy so that they get their default values
+                        new UpdatePrimaryKeyGenerator("table_name", defaultColumnNamesWith("string_column", "int_column"), targetSchema, createCopyRename),
+                        new String[] {
+                                "DROP TABLE IF EXISTS new_table_name;",
+                                "CREATE TABLE new_table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER DEFAULT '12', string_column TEXT UNIQUE);",
+                                "INSERT INTO new_table_name (_id, created, deleted, modified, int_column, string_column) SELECT _id, created, deleted, modified, int_column, string_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "ALTER TABLE new_table_name RENAME TO table_name;",
+                                "CREATE UNIQUE INDEX IF NOT EXISTS table_name_string_column ON table_name(string_column);",
+                                "CREATE INDEX IF NOT EXISTS table_name_int_column ON table_name(int_column);",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+                        }
+                },
+                {   // 02: temp table copy is the default
+                        new UpdatePrimaryKeyGenerator("table_name", defaultColumnNamesWith("string_column", "int_column"), targetSchema),
+                        new String[] {
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, int_column, string_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER DEFAULT '12', string_column TEXT UNIQUE);",
+                                "INSERT INTO table_name SELECT _id, created, deleted, modified, int_column, null AS long_column, string_column FROM temp_table_name;",
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE UNIQUE INDEX IF NOT EXISTS table_name_string_column ON table_name(string_column);",
+                                "CREATE INDEX IF NOT EXISTS table_name_int_column ON table_name(int_column);",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+                        }
+                },
+                {   // 03: indices from the options are recreated along with the column indices
+                        new ChangeDefaultValueGenerator("table_name", targetSchema, GenerationOptions.builder()
+                                .rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME)
+                                .index(IndexInfo.builder("table_name").column("int_column").column("long_column", true).where("deleted = 0").build())
+                                .index(IndexInfo.builder("other_table").column("int_column").build())
+                                .build()),
+                        new String[] {
+                                "DROP TABLE IF EXISTS new_table_name;",
+                                "CREATE TABLE new_table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), int_column INTEGER, long_column INTEGER DEFAULT '12', string_column TEXT UNIQUE);",
+                                "INSERT INTO new_table_name (_id, created, deleted, modified, int_column, long_column, string_column) SELECT _id, created, deleted, modified, int_column, long_column, string_column FROM table_name;",
+                                "DROP TABLE IF EXISTS table_name;",
+                                "ALTER TABLE new_table_name RENAME TO table_name;",
+                                "CREATE UNIQUE INDEX IF NOT EXISTS table_name_string_column ON table_name(string_column);",
+                                "CREATE INDEX IF NOT EXISTS table_name_int_column ON table_name(int_column);",
+                                "CREATE INDEX IF NOT EXISTS idx_table_name_int_column_long_column_desc_partial ON table_name(int_column, long_column DESC) WHERE deleted = 0;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+                        }
+                }
+        });
+    }
+
+    @Override
+    protected QueryGenerator getGenerator() {
+        return generatorUnderTest;
+    }
+}
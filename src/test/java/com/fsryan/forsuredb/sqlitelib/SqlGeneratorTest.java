@@ -1,17 +1,36 @@
 package com.fsryan.forsuredb.sqlitelib;
 
+import com.fsryan.forsuredb.api.Finder;
+import com.fsryan.forsuredb.api.info.TableForeignKeyInfo;
+import com.fsryan.forsuredb.api.info.TableInfo;
+import com.fsryan.forsuredb.api.migration.MigrationSet;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static com.fsryan.forsuredb.sqlitelib.CollectionUtil.stringMapOf;
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.CURRENT_UTC_TIME;
 import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.EMPTY_SQL;
-import static com.fsryan.forsuredb.sqlitelib.TestData.TABLE_NAME;
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.SQLITE_MAX_COMPOUND_SELECT;
+import static com.fsryan.forsuredb.sqlitelib.SqlGenerator.SQLITE_MAX_VARIABLE_NUMBER;
+import static com.fsryan.forsuredb.sqlitelib.TestData.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class SqlGeneratorTest {
@@ -139,4 +158,881 @@ public class SqlGeneratorTest {
             assertTrue(sqlGenerator.newSingleRowInsertionSql(tableName, inputColumnValueMap).endsWith(";"));
         }
     }
+
+    @RunWith(Parameterized.class)
+    public static class PreparedInsertionQueryGeneration {
+
+        private final String tableName;
+        private final Map<String, String> inputColumnValueMap;
+        private final String expectedSql;
+        private final String[] expectedReplacements;
+
+        private SqlGenerator sqlGenerator;
+
+        public PreparedInsertionQueryGeneration(String tableName, Map<String, String> inputColumnValueMap, String expectedSql, String[] expectedReplacements) {
+            this.tableName = tableName;
+            this.inputColumnValueMap = inputColumnValueMap;
+            this.expectedSql = expectedSql;
+            this.expectedReplacements = expectedReplacements;
+        }
+
+        @Parameterized.Parameters
+        public static Iterable<Object[]> data() {
+            return Arrays.asList(new Object[][] {
+                    {   // 00: empty input map
+                            TABLE_NAME,
+                            stringMapOf(),
+                            EMPTY_SQL,
+                            new String[0]
+                    },
+                    {   // 01: null input table name
+                            null,
+                            stringMapOf("col1", "val1"),
+                            EMPTY_SQL,
+                            new String[0]
+                    },
+                    {   // 02: only excluded columns
+                            TABLE_NAME,
+                            stringMapOf("_id", "12345", "created", new Date().toString(), "modified", new Date().toString()),
+                            EMPTY_SQL,
+                            new String[0]
+                    },
+                    {   // 03: valid args, one column and one value
+                            TABLE_NAME,
+                            stringMapOf("col1", "val1"),
+                            "INSERT INTO test_table (col1) VALUES (?);",
+                            new String[] {"val1"}
+                    },
+                    {   // 04: valid args, columns are sorted regardless of map order
+                            TABLE_NAME,
+                            stringMapOf("col2", "val2", "col1", "val1"),
+                            "INSERT INTO test_table (col1, col2) VALUES (?, ?);",
+                            new String[] {"val1", "val2"}
+                    },
+                    {   // 05: valid args, attempt to insert _id, created, modified and an empty value
+                            TABLE_NAME,
+                            stringMapOf("_id", "12345", "created", new Date().toString(), "modified", new Date().toString(), "col1", "val1", "col2", "val2", "col3", ""),
+                            "INSERT INTO test_table (col1, col2) VALUES (?, ?);",
+                            new String[] {"val1", "val2"}
+                    },
+                    {   // 06: values are not inlined, so quotes need no escaping
+                            TABLE_NAME,
+                            stringMapOf("col1", "it's"),
+                            "INSERT INTO test_table (col1) VALUES (?);",
+                            new String[] {"it's"}
+                    }
+            });
+        }
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator();
+        }
+
+        @Test
+        public void shouldOutputCorrectSql() {
+            assertEquals(expectedSql, sqlGenerator.newSingleRowInsertionStatement(tableName, inputColumnValueMap).getSql());
+        }
+
+        @Test
+        public void shouldOutputReplacementsInPlaceholderOrder() {
+            assertArrayEquals(expectedReplacements, sqlGenerator.newSingleRowInsertionStatement(tableName, inputColumnValueMap).getReplacements());
+        }
+    }
+
+    public static class PreparedInsertionTemplateReuse {
+
+        @Test
+        public void shouldReuseTemplateForSameTableAndColumns() {
+            SqlForPreparedStatement first = new SqlGenerator().newSingleRowInsertionStatement(TABLE_NAME, stringMapOf("col1", "val1", "col2", "val2"));
+            SqlForPreparedStatement second = new SqlGenerator().newSingleRowInsertionStatement(TABLE_NAME, stringMapOf("col2", "other2", "col1", "other1"));
+            assertSame(first.getSql(), second.getSql());
+        }
+    }
+
+    public static class MultiRowInsertionQueryGeneration {
+
+        private SqlGenerator sqlGenerator;
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator();
+        }
+
+        @Test
+        public void shouldOutputNoStatementsWhenNoRows() {
+            assertEquals(0, sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, new ArrayList<Map<String, String>>()).size());
+            assertEquals(0, sqlGenerator.newMultiRowInsertionStatements(null, rowsOf(2, "col1")).size());
+        }
+
+        @Test
+        public void shouldCombineRowsWithSameColumnsIntoOneStatement() {
+            List<Map<String, String>> rows = Arrays.asList(
+                    stringMapOf("col2", "val2a", "col1", "val1a"),
+                    stringMapOf("_id", "12345", "col1", "val1b", "col2", "val2b")
+            );
+
+            List<SqlForPreparedStatement> actual = sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rows);
+
+            assertEquals(1, actual.size());
+            assertEquals("INSERT INTO test_table (col1, col2) VALUES (?, ?), (?, ?);", actual.get(0).getSql());
+            assertArrayEquals(new String[] {"val1a", "val2a", "val1b", "val2b"}, actual.get(0).getReplacements());
+        }
+
+        @Test
+        public void shouldSplitStatementsWhenColumnsChangeAndPreserveRowOrder() {
+            List<Map<String, String>> rows = Arrays.asList(
+                    stringMapOf("col1", "val1a"),
+                    stringMapOf("col1", "val1b", "col2", "val2b"),
+                    stringMapOf("col1", "val1c")
+            );
+
+            List<SqlForPreparedStatement> actual = sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rows);
+
+            assertEquals(3, actual.size());
+            assertEquals("INSERT INTO test_table (col1) VALUES (?);", actual.get(0).getSql());
+            assertEquals("INSERT INTO test_table (col1, col2) VALUES (?, ?);", actual.get(1).getSql());
+            assertEquals("INSERT INTO test_table (col1) VALUES (?);", actual.get(2).getSql());
+            assertArrayEquals(new String[] {"val1c"}, actual.get(2).getReplacements());
+        }
+
+        @Test
+        public void shouldLimitRowsPerStatementToMaxCompoundSelect() {
+            List<SqlForPreparedStatement> actual = sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rowsOf(SQLITE_MAX_COMPOUND_SELECT + 1, "col1"));
+
+            assertEquals(2, actual.size());
+            assertEquals(SQLITE_MAX_COMPOUND_SELECT, actual.get(0).getReplacements().length);
+            assertEquals(1, actual.get(1).getReplacements().length);
+            assertEquals("INSERT INTO test_table (col1) VALUES (?);", actual.get(1).getSql());
+        }
+
+        @Test
+        public void shouldLimitPlaceholdersPerStatementToMaxVariableNumber() {
+            final int rowsPerStatement = SQLITE_MAX_VARIABLE_NUMBER / 3;
+            List<SqlForPreparedStatement> actual = sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rowsOf(2 * rowsPerStatement + 1, "col1", "col2", "col3"));
+
+            assertEquals(3, actual.size());
+            assertEquals(3 * rowsPerStatement, actual.get(0).getReplacements().length);
+            assertEquals(3 * rowsPerStatement, actual.get(1).getReplacements().length);
+            assertEquals(3, actual.get(2).getReplacements().length);
+            for (SqlForPreparedStatement statement : actual) {
+                assertTrue(statement.getSql().endsWith(";"));
+                assertEquals(statement.getReplacements().length, countPlaceholders(statement.getSql()));
+            }
+        }
+
+        @Test
+        public void shouldInsertRowOfMaxVariableNumberColumnsInOneStatement() {
+            List<SqlForPreparedStatement> actual = sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rowsOf(2, columnNamesOf(SQLITE_MAX_VARIABLE_NUMBER)));
+
+            assertEquals(2, actual.size());
+            assertEquals(SQLITE_MAX_VARIABLE_NUMBER, actual.get(0).getReplacements().length);
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldNotInsertRowOfMoreThanMaxVariableNumberColumns() {
+            sqlGenerator.newMultiRowInsertionStatements(TABLE_NAME, rowsOf(1, columnNamesOf(SQLITE_MAX_VARIABLE_NUMBER + 1)));
+        }
+
+        private static String[] columnNamesOf(int count) {
+            String[] ret = new String[count];
+            for (int i = 0; i < count; i++) {
+                ret[i] = "col" + i;
+            }
+            return ret;
+        }
+
+        private static List<Map<String, String>> rowsOf(int count, String... columns) {
+            List<Map<String, String>> ret = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String[] kvPairs = new String[2 * columns.length];
+                for (int c = 0; c < columns.length; c++) {
+                    kvPairs[2 * c] = columns[c];
+                    kvPairs[2 * c + 1] = columns[c] + "_" + i;
+                }
+                ret.add(stringMapOf(kvPairs));
+            }
+            return ret;
+        }
+
+        private static int countPlaceholders(String sql) {
+            int ret = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                if (sql.charAt(i) == '?') {
+                    ret++;
+                }
+            }
+            return ret;
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class UpsertionQueryGeneration {
+
+        private final TableInfo table;
+        private final Map<String, String> inputColumnValueMap;
+        private final String expectedSql;
+        private final String[] expectedReplacements;
+
+        private SqlGenerator sqlGenerator;
+
+        public UpsertionQueryGeneration(TableInfo table, Map<String, String> inputColumnValueMap, String expectedSql, String[] expectedReplacements) {
+            this.table = table;
+            this.inputColumnValueMap = inputColumnValueMap;
+            this.expectedSql = expectedSql;
+            this.expectedReplacements = expectedReplacements;
+        }
+
+        @Parameterized.Parameters
+        public static Iterable<Object[]> data() {
+            return Arrays.asList(new Object[][] {
+                    {   // 00: null table
+                            null,
+                            stringMapOf("string_column", "val1"),
+                            EMPTY_SQL,
+                            new String[0]
+                    },
+                    {   // 01: default primary key and no unique columns--nothing to conflict on
+                            table().columnMap(columnMapOf(stringCol().build(), intCol().build())).build(),
+                            stringMapOf("string_column", "val1", "int_column", "1"),
+                            "INSERT INTO test_table (int_column, string_column) VALUES (?, ?);",
+                            new String[] {"1", "val1"}
+                    },
+                    {   // 02: non-default primary key is the conflict target
+                            table().primaryKey(setOf("string_column"))
+                                    .columnMap(columnMapOf(stringCol().primaryKey(true).build(), intCol().build()))
+                                    .build(),
+                            stringMapOf("string_column", "val1", "int_column", "1"),
+                            "INSERT INTO test_table (int_column, string_column) VALUES (?, ?) ON CONFLICT(string_column) DO UPDATE SET int_column=excluded.int_column;",
+                            new String[] {"1", "val1"}
+                    },
+                    {   // 03: composite primary key is the conflict target
+                            table().primaryKey(setOf("string_column", "int_column"))
+                                    .columnMap(columnMapOf(stringCol().build(), intCol().build(), longCol().build()))
+                                    .build(),
+                            stringMapOf("string_column", "val1", "int_column", "1", "long_column", "2"),
+                            "INSERT INTO test_table (int_column, long_column, string_column) VALUES (?, ?, ?) ON CONFLICT(int_column, string_column) DO UPDATE SET long_column=excluded.long_column;",
+                            new String[] {"1", "2", "val1"}
+                    },
+                    {   // 04: unique column is the conflict target when the primary key is not inserted
+                            table().columnMap(columnMapOf(stringCol().unique(true).build(), intCol().build())).build(),
+                            stringMapOf("_id", "12345", "string_column", "val1", "int_column", "1"),
+                            "INSERT INTO test_table (int_column, string_column) VALUES (?, ?) ON CONFLICT(string_column) DO UPDATE SET int_column=excluded.int_column;",
+                            new String[] {"1", "val1"}
+                    },
+                    {   // 05: only the conflict target is inserted
+                            table().columnMap(columnMapOf(stringCol().unique(true).build(), intCol().build())).build(),
+                            stringMapOf("string_column", "val1"),
+                            "INSERT INTO test_table (string_column) VALUES (?) ON CONFLICT(string_column) DO NOTHING;",
+                            new String[] {"val1"}
+                    }
+            });
+        }
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator();
+        }
+
+        @Test
+        public void shouldOutputCorrectSql() {
+            assertEquals(expectedSql, sqlGenerator.newSingleRowUpsertionStatement(table, inputColumnValueMap).getSql());
+        }
+
+        @Test
+        public void shouldOutputReplacementsInPlaceholderOrder() {
+            assertArrayEquals(expectedReplacements, sqlGenerator.newSingleRowUpsertionStatement(table, inputColumnValueMap).getReplacements());
+        }
+
+        @Test
+        public void batchedFormShouldMatchSingleRowFormForOneRow() {
+            List<SqlForPreparedStatement> batched = sqlGenerator.newMultiRowUpsertionStatements(table, Arrays.asList(inputColumnValueMap));
+            if (EMPTY_SQL.equals(expectedSql)) {
+                assertEquals(0, batched.size());
+            } else {
+                assertEquals(1, batched.size());
+                assertEquals(sqlGenerator.newSingleRowUpsertionStatement(table, inputColumnValueMap), batched.get(0));
+            }
+        }
+    }
+
+    public static class MultiRowUpsertionQueryGeneration {
+
+        @Test
+        public void shouldAppendUpsertClauseAfterAllRows() {
+            TableInfo table = table().columnMap(columnMapOf(stringCol().unique(true).build(), intCol().build())).build();
+            List<Map<String, String>> rows = Arrays.asList(
+                    stringMapOf("string_column", "val1", "int_column", "1"),
+                    stringMapOf("string_column", "val2", "int_column", "2")
+            );
+
+            List<SqlForPreparedStatement> actual = new SqlGenerator().newMultiRowUpsertionStatements(table, rows);
+
+            assertEquals(1, actual.size());
+            assertEquals("INSERT INTO test_table (int_column, string_column) VALUES (?, ?), (?, ?) ON CONFLICT(string_column) DO UPDATE SET int_column=excluded.int_column;", actual.get(0).getSql());
+            assertArrayEquals(new String[] {"1", "val1", "2", "val2"}, actual.get(0).getReplacements());
+        }
+    }
+
+    public static class EpochMillisDateStorage {
+
+        private SqlGenerator sqlGenerator;
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator(GenerationOptions.builder().dateStorage(DateStorage.EPOCH_MILLIS).build());
+        }
+
+        @Test
+        public void shouldFormatDateAsEpochMillis() {
+            assertEquals("1483228800123", sqlGenerator.formatDate(new Date(1483228800123L)));
+        }
+
+        @Test
+        public void shouldParseEpochMillis() {
+            assertEquals(new Date(1483228800123L), sqlGenerator.parseDate("1483228800123"));
+        }
+
+        @Test
+        public void shouldParseTextDatesWrittenBeforeConversion() {
+            Date date = new Date(1483228800123L);
+            assertEquals(date, sqlGenerator.parseDate(new SqlGenerator().formatDate(date)));
+        }
+
+        @Test
+        public void shouldGenerateConversionSqlForEachTableInNameOrder() {
+            Map<String, TableInfo> schema = tableMapOf(
+                    table().tableName("table_b").build(),
+                    table().tableName("table_a").build()
+            );
+
+            List<String> actual = sqlGenerator.generateDateStorageConversionSql(schema);
+
+            List<String> expected = new ArrayList<>(new DateStorageConversionGenerator("table_a", schema).generate());
+            expected.addAll(new DateStorageConversionGenerator("table_b", schema).generate());
+            assertEquals(expected, actual);
+        }
+
+        @Test
+        public void shouldNotGenerateConversionSqlWhenStoringDatesAsText() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("table_a").build());
+            assertTrue(new SqlGenerator().generateDateStorageConversionSql(schema).isEmpty());
+        }
+    }
+
+    public static class CreateCopyRenameMigration {
+
+        @Test
+        public void shouldRebuildTableOnceToAddLegacyForeignKey() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME)
+                    .build());
+
+            List<String> actual = sqlGenerator.generateMigrationSql(migrationSet);
+
+            assertEquals(Arrays.asList(
+                    "DROP TABLE IF EXISTS new_profile_info;",
+                    "CREATE TABLE new_profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), user_id INTEGER, binary_data BLOB, email_address TEXT, FOREIGN KEY(user_id) REFERENCES user(_id) ON UPDATE CASCADE ON DELETE CASCADE);",
+                    "INSERT INTO new_profile_info (_id, created, deleted, modified, binary_data, email_address) SELECT _id, created, deleted, modified, binary_data, email_address FROM profile_info;",
+                    "DROP TABLE IF EXISTS profile_info;",
+                    "ALTER TABLE new_profile_info RENAME TO profile_info;",
+                    "CREATE INDEX IF NOT EXISTS profile_info_user_id_fk_index ON profile_info(user_id);",
+                    "CREATE TRIGGER profile_info_updated_trigger AFTER UPDATE ON profile_info BEGIN UPDATE profile_info SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+            ), actual);
+        }
+
+        @Test
+        public void shouldTurnForeignKeysOffAndCheckThemWhenTableIsRebuiltInTransaction() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME)
+                    .build());
+
+            MigrationTransaction actual = sqlGenerator.generateMigrationTransaction(migrationSet);
+
+            assertEquals("PRAGMA foreign_keys=OFF;", actual.getPragmaSql().get(0));
+            assertTrue(actual.getTransactionSql().contains("DROP TABLE IF EXISTS profile_info;"));
+            assertEquals(Arrays.asList("PRAGMA foreign_key_check(profile_info);"), actual.getForeignKeyCheckQueries());
+        }
+    }
+
+    public static class AddForeignKeyReferenceMigration {
+
+        private static MigrationSet addForeignKeyMigrationSetWithPrimaryKey(String primaryKeyColumnName) throws Exception {
+            JsonObject json = new JsonParser().parse(resourceText("alter_table_add_foreign_key_migration.json")).getAsJsonObject();
+            JsonArray primaryKey = new JsonArray();
+            primaryKey.add(new JsonPrimitive(primaryKeyColumnName));
+            json.getAsJsonObject("target_schema").getAsJsonObject("profile_info").add("primary_key", primaryKey);
+            return new Gson().fromJson(json, MigrationSet.class);
+        }
+
+        @Test
+        public void shouldKeepTableWithoutRowidWithDefaultRebuildStrategy() throws Exception {
+            MigrationSet migrationSet = addForeignKeyMigrationSetWithPrimaryKey("email_address");
+            GenerationOptions options = GenerationOptions.builder().withoutRowid("profile_info").build();
+
+            List<String> actual = new SqlGenerator(options).generateMigrationSql(migrationSet);
+
+            String createTableQuery = new CreateTableGenerator("profile_info", migrationSet.getTargetSchema(), options).generate().get(0);
+            assertTrue(createTableQuery.endsWith(") WITHOUT ROWID;"));
+            assertTrue(actual.contains(createTableQuery));
+        }
+
+        @Test
+        public void shouldRecreateOptionsIndexAfterDataAreReloaded() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            GenerationOptions options = GenerationOptions.builder()
+                    .index(IndexInfo.builder("profile_info").column("email_address", true).where("deleted = 0").build())
+                    .build();
+
+            List<String> actual = new SqlGenerator(options).generateMigrationSql(migrationSet);
+
+            final String indexQuery = "CREATE INDEX IF NOT EXISTS idx_profile_info_email_address_desc_partial ON profile_info(email_address DESC) WHERE deleted = 0;";
+            assertTrue(actual.contains(indexQuery));
+            assertTrue(actual.indexOf(indexQuery) > actual.indexOf("INSERT INTO profile_info SELECT _id, created, deleted, modified, null AS user_id, binary_data, email_address FROM temp_profile_info;"));
+        }
+    }
+
+    public static class TransactionWrapping {
+
+        private SqlGenerator sqlGenerator;
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .wrapMigrationsInTransaction(true)
+                    .rebuildCacheSizeKiB(65536)
+                    .build());
+        }
+
+        @Test
+        public void shouldOnlyBeginAndCommitWhenNoTableIsRebuilt() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_column_migration.json"), MigrationSet.class);
+
+            List<String> actual = sqlGenerator.generateMigrationSql(migrationSet);
+
+            assertEquals(Arrays.asList(
+                    "BEGIN IMMEDIATE;",
+                    "ALTER TABLE user ADD COLUMN global_id INTEGER;",
+                    "COMMIT;"
+            ), actual);
+        }
+
+        @Test
+        public void shouldNeitherChangePragmasNorCheckForeignKeysWhenTableIsRebuilt() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            List<String> unwrapped = new SqlGenerator().generateMigrationSql(migrationSet);
+
+            List<String> actual = sqlGenerator.generateMigrationSql(migrationSet);
+
+            List<String> expected = new ArrayList<>();
+            expected.add("BEGIN IMMEDIATE;");
+            expected.addAll(unwrapped);
+            expected.add("COMMIT;");
+            assertEquals(expected, actual);
+        }
+
+        @Test
+        public void shouldReturnPragmasAndForeignKeyChecksOfRebuiltTablesSeparately() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            List<String> unwrapped = new SqlGenerator().generateMigrationSql(migrationSet);
+
+            MigrationTransaction actual = sqlGenerator.generateMigrationTransaction(migrationSet);
+
+            List<String> expectedTransactionSql = new ArrayList<>();
+            expectedTransactionSql.add("BEGIN IMMEDIATE;");
+            expectedTransactionSql.addAll(unwrapped);
+            assertEquals(Arrays.asList("foreign_keys", "cache_size", "temp_store"), actual.getChangedPragmaNames());
+            assertEquals(Arrays.asList(
+                    "PRAGMA foreign_keys=OFF;",
+                    "PRAGMA cache_size=-65536;",
+                    "PRAGMA temp_store=MEMORY;"
+            ), actual.getPragmaSql());
+            assertEquals(expectedTransactionSql, actual.getTransactionSql());
+            assertEquals(Arrays.asList("PRAGMA foreign_key_check(profile_info);"), actual.getForeignKeyCheckQueries());
+        }
+
+        @Test
+        public void shouldNotChangePragmasWhenNoTableIsRebuilt() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_column_migration.json"), MigrationSet.class);
+
+            MigrationTransaction actual = sqlGenerator.generateMigrationTransaction(migrationSet);
+
+            assertTrue(actual.getChangedPragmaNames().isEmpty());
+            assertTrue(actual.getPragmaSql().isEmpty());
+            assertTrue(actual.getForeignKeyCheckQueries().isEmpty());
+            assertEquals(Arrays.asList("BEGIN IMMEDIATE;", "ALTER TABLE user ADD COLUMN global_id INTEGER;"), actual.getTransactionSql());
+        }
+
+        @Test
+        public void shouldNotWrapEmptyMigration() {
+            assertTrue(sqlGenerator.generateMigrationSql(null).isEmpty());
+        }
+    }
+
+    public static class CachedMigrationSql {
+
+        private final Map<Long, List<String>> plans = new HashMap<>();
+        private int puts;
+        private final MigrationPlanCache planCache = new MigrationPlanCache() {
+            @Override
+            public List<String> get(long fingerprint) {
+                return plans.get(fingerprint);
+            }
+
+            @Override
+            public void put(long fingerprint, List<String> migrationSql) {
+                plans.put(fingerprint, migrationSql);
+                puts++;
+            }
+        };
+
+        @Test
+        public void shouldGenerateMigrationSqlOnceForSameMigrationSet() throws Exception {
+            SqlGenerator sqlGenerator = new SqlGenerator();
+            List<String> expected = sqlGenerator.generateMigrationSql(new Gson().fromJson(resourceText("migration_set_fixture.json"), MigrationSet.class));
+
+            assertEquals(expected, sqlGenerator.generateMigrationSql(new Gson().fromJson(resourceText("migration_set_fixture.json"), MigrationSet.class), planCache));
+            assertEquals(expected, sqlGenerator.generateMigrationSql(new Gson().fromJson(resourceText("migration_set_fixture.json"), MigrationSet.class), planCache));
+            assertEquals(1, puts);
+        }
+
+        @Test
+        public void shouldCachePlansOfDifferentOptionsSeparately() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_foreign_key_migration.json"), MigrationSet.class);
+            SqlGenerator createCopyRename = new SqlGenerator(GenerationOptions.builder()
+                    .rebuildStrategy(RebuildStrategy.CREATE_COPY_RENAME)
+                    .build());
+
+            new SqlGenerator().generateMigrationSql(migrationSet, planCache);
+
+            assertEquals(createCopyRename.generateMigrationSql(migrationSet), createCopyRename.generateMigrationSql(migrationSet, planCache));
+            assertEquals(2, puts);
+        }
+    }
+
+    public static class CompositeIndexMigration {
+
+        @Test
+        public void shouldCreateIndexDefinedInMigrationExtras() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("add_composite_index_migration.json"), MigrationSet.class);
+
+            List<String> actual = new SqlGenerator().generateMigrationSql(migrationSet);
+
+            assertEquals(Arrays.asList(
+                    "ALTER TABLE user ADD COLUMN global_id INTEGER;",
+                    "CREATE INDEX IF NOT EXISTS user_live_by_global_id ON user(global_id, created DESC, modified) WHERE deleted = 0;"
+            ), actual);
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldRejectIndexWithoutColumns() {
+            IndexInfo.fromJson("user", "{\"index_name\": \"no_columns\"}");
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldRejectUniqueIndexWithCoveringColumns() {
+            IndexInfo.fromJson("user", "{\"unique\": true, \"columns\": [{\"column_name\": \"global_id\"}], \"covering_columns\": [\"modified\"]}");
+        }
+
+        @Test
+        public void shouldGiveDifferentDefaultNamesToIndicesThatDifferInSortOrder() {
+            IndexInfo ascending = IndexInfo.builder("user").column("global_id").column("created").build();
+            IndexInfo descending = IndexInfo.builder("user").column("global_id").column("created", true).build();
+
+            assertNotEquals(ascending.getName(), descending.getName());
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldRejectDifferentIndicesWithTheSameName() {
+            GenerationOptions.builder()
+                    .index(IndexInfo.builder("user").name("user_index").column("global_id").build())
+                    .index(IndexInfo.builder("user").name("user_index").column("global_id", true).build());
+        }
+
+        @Test
+        public void shouldNotGiveSingleColumnIndexTheDefaultNameOfColumnIndex() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("user")
+                    .columnMap(columnMapOf(longCol().columnName("global_id").index(true).build()))
+                    .build());
+            GenerationOptions options = GenerationOptions.builder()
+                    .index(IndexInfo.builder("user").column("global_id", true).build())
+                    .build();
+
+            assertEquals(Arrays.asList(
+                    "CREATE INDEX IF NOT EXISTS user_global_id ON user(global_id);",
+                    "CREATE INDEX IF NOT EXISTS idx_user_global_id_desc ON user(global_id DESC);"
+            ), new CreateTableGenerator("user", schema, options).indexQueries());
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void shouldRejectIndexNamedLikeColumnIndex() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("user")
+                    .columnMap(columnMapOf(longCol().columnName("global_id").index(true).build()))
+                    .build());
+            GenerationOptions options = GenerationOptions.builder()
+                    .index(IndexInfo.builder("user").name("user_global_id").column("global_id").where("deleted = 0").build())
+                    .build();
+
+            new CompiledSchema(schema, options);
+        }
+    }
+
+    public static class ForeignKeyIndices {
+
+        @Test
+        public void shouldIndexForeignKeysThatAreNotAlreadyIndexed() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("child")
+                    .foreignKeys(setOf(foreignKeyTo("parent", "a"), foreignKeyTo("parent", "b"), foreignKeyTo("parent", "c"), foreignKeyTo("parent", "d", "e")))
+                    .primaryKey(setOf("_id"))
+                    .columnMap(columnMapOf(
+                            longCol().columnName("a").build(),
+                            longCol().columnName("b").unique(true).build(),
+                            longCol().columnName("c").index(true).build(),
+                            longCol().columnName("d").build(),
+                            longCol().columnName("e").build()))
+                    .build());
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .index(IndexInfo.builder("child").column("e", true).column("d").column("c").build())
+                    .index(IndexInfo.builder("child").column("a").where("deleted = 0").build())
+                    .build());
+
+            assertEquals(Arrays.asList(
+                    "CREATE INDEX IF NOT EXISTS child_a_fk_index ON child(a);"
+            ), sqlGenerator.generateForeignKeyIndexSql(schema));
+        }
+
+        @Test
+        public void shouldNotIndexForeignKeyThatLeadsPrimaryKey() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("child")
+                    .foreignKeys(setOf(foreignKeyTo("parent", "a"), foreignKeyTo("parent", "b")))
+                    .primaryKey(setOf("a", "b"))
+                    .columnMap(columnMapOf(longCol().columnName("a").build(), longCol().columnName("b").build()))
+                    .build());
+
+            assertEquals(Arrays.asList(
+                    "CREATE INDEX IF NOT EXISTS child_b_fk_index ON child(b);"
+            ), new SqlGenerator().generateForeignKeyIndexSql(schema));
+        }
+
+        @Test
+        public void shouldNotIndexForeignKeysWhenTurnedOff() {
+            Map<String, TableInfo> schema = tableMapOf(table().tableName("child")
+                    .foreignKeys(setOf(foreignKeyTo("parent", "a")))
+                    .primaryKey(setOf("_id"))
+                    .columnMap(columnMapOf(longCol().columnName("a").build()))
+                    .build());
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder().indexForeignKeys(false).build());
+
+            assertTrue(sqlGenerator.generateForeignKeyIndexSql(schema).isEmpty());
+        }
+
+        private static TableForeignKeyInfo foreignKeyTo(String foreignTableName, String... localColumnNames) {
+            TableForeignKeyInfo.Builder builder = new TableForeignKeyInfo.Builder()
+                    .foreignTableName(foreignTableName)
+                    .foreignTableApiClassName(ForeignKeyIndices.class.getName())
+                    .updateChangeAction("CASCADE")
+                    .deleteChangeAction("CASCADE");
+            for (String localColumnName : localColumnNames) {
+                builder.mapLocalToForeignColumn(localColumnName, "parent_" + localColumnName);
+            }
+            return builder.build();
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class UpdateQueryGeneration {
+
+        private static final GenerationOptions inline = GenerationOptions.builder()
+                .modifiedTimestampMode(ModifiedTimestampMode.INLINE)
+                .build();
+
+        private final GenerationOptions options;
+        private final Map<String, String> inputColumnValueMap;
+        private final String selection;
+        private final String[] selectionArgs;
+        private final String expectedSql;
+        private final String[] expectedReplacements;
+
+        public UpdateQueryGeneration(GenerationOptions options,
+                                     Map<String, String> inputColumnValueMap,
+                                     String selection,
+                                     String[] selectionArgs,
+                                     String expectedSql,
+                                     String[] expectedReplacements) {
+            this.options = options;
+            this.inputColumnValueMap = inputColumnValueMap;
+            this.selection = selection;
+            this.selectionArgs = selectionArgs;
+            this.expectedSql = expectedSql;
+            this.expectedReplacements = expectedReplacements;
+        }
+
+        @Parameterized.Parameters
+        public static Iterable<Object[]> data() {
+            return Arrays.asList(new Object[][] {
+                    {   // 00: nothing to update
+                            GenerationOptions.DEFAULT,
+                            stringMapOf("_id", "1", "created", "2017-01-01 00:00:00.000"),
+                            "_id = ?",
+                            new String[] {"1"},
+                            EMPTY_SQL,
+                            new String[0]
+                    },
+                    {   // 01: the trigger sets modified
+                            GenerationOptions.DEFAULT,
+                            stringMapOf("string_column", "val1", "int_column", "1"),
+                            "_id = ?",
+                            new String[] {"12"},
+                            "UPDATE test_table SET int_column=?, string_column=? WHERE _id = ?;",
+                            new String[] {"1", "val1", "12"}
+                    },
+                    {   // 02: modified is set inline, and null values set NULL
+                            inline,
+                            stringMapOf("string_column", null, "int_column", "1"),
+                            "int_column > ?",
+                            new String[] {"0"},
+                            "UPDATE test_table SET int_column=?, string_column=NULL, modified=" + CURRENT_UTC_TIME + " WHERE int_column > ?;",
+                            new String[] {"1", "0"}
+                    },
+                    {   // 03: modified that was passed in is not overwritten, and no selection updates every row
+                            GenerationOptions.builder().modifiedTimestampMode(ModifiedTimestampMode.GUARDED_TRIGGER).build(),
+                            stringMapOf("modified", "2017-01-01 00:00:00.000", "deleted", "1"),
+                            null,
+                            null,
+                            "UPDATE test_table SET deleted=?, modified=?;",
+                            new String[] {"1", "2017-01-01 00:00:00.000"}
+                    }
+            });
+        }
+
+        @Test
+        public void shouldOutputCorrectSql() {
+            SqlForPreparedStatement actual = new SqlGenerator(options).newUpdateStatement(TABLE_NAME, inputColumnValueMap, selection, selectionArgs);
+            assertEquals(expectedSql, actual.getSql());
+            assertArrayEquals(expectedReplacements, actual.getReplacements());
+        }
+    }
+
+    public static class ModifiedTimestampModes {
+
+        private static final Map<String, TableInfo> schema = tableMapOf(table().columnMap(columnMapOf(stringCol().unique(true).build(), intCol().build())).build());
+
+        @Test
+        public void shouldReplaceTriggerWithGuardedTrigger() {
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .modifiedTimestampMode(ModifiedTimestampMode.GUARDED_TRIGGER)
+                    .build());
+
+            assertEquals(Arrays.asList(
+                    "DROP TRIGGER IF EXISTS test_table_updated_trigger;",
+                    "CREATE TRIGGER test_table_updated_trigger AFTER UPDATE ON test_table WHEN NEW.modified IS OLD.modified BEGIN UPDATE test_table SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
+            ), sqlGenerator.generateModifiedTriggerSql(schema));
+        }
+
+        @Test
+        public void shouldSetModifiedWhenUpsertUpdatesRow() {
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .modifiedTimestampMode(ModifiedTimestampMode.GUARDED_TRIGGER)
+                    .build());
+
+            SqlForPreparedStatement actual = sqlGenerator.newSingleRowUpsertionStatement(schema.get(TABLE_NAME), stringMapOf("string_column", "val1", "int_column", "1"));
+
+            assertEquals("INSERT INTO test_table (int_column, string_column) VALUES (?, ?) ON CONFLICT(string_column) DO UPDATE SET int_column=excluded.int_column, modified=" + CURRENT_UTC_TIME + ";", actual.getSql());
+            assertEquals(
+                    "INSERT INTO test_table (int_column, string_column) VALUES (?, ?) ON CONFLICT(string_column) DO UPDATE SET int_column=excluded.int_column;",
+                    new SqlGenerator().newSingleRowUpsertionStatement(schema.get(TABLE_NAME), stringMapOf("string_column", "val1", "int_column", "1")).getSql()
+            );
+        }
+
+        @Test
+        public void shouldCreateTableWithoutTriggerWhenInline() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("create_table_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .modifiedTimestampMode(ModifiedTimestampMode.INLINE)
+                    .build());
+
+            assertEquals(Arrays.asList(
+                    "CREATE TABLE profile_info(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "));"
+            ), sqlGenerator.generateMigrationSql(migrationSet));
+        }
+
+        @Test
+        public void shouldDropExistingTriggersInMigrationWhenInline() throws Exception {
+            MigrationSet migrationSet = new Gson().fromJson(resourceText("alter_table_add_column_migration.json"), MigrationSet.class);
+            SqlGenerator sqlGenerator = new SqlGenerator(GenerationOptions.builder()
+                    .modifiedTimestampMode(ModifiedTimestampMode.INLINE)
+                    .build());
+
+            assertEquals(Arrays.asList(
+                    "ALTER TABLE user ADD COLUMN global_id INTEGER;",
+                    "DROP TRIGGER IF EXISTS user_updated_trigger;"
+            ), sqlGenerator.generateMigrationSql(migrationSet));
+        }
+    }
+
+    @RunWith(Parameterized.class)
+    public static class QueryFragmentAppending {
+
+        private final int operation;
+
+        private SqlGenerator sqlGenerator;
+
+        public QueryFragmentAppending(int operation) {
+            this.operation = operation;
+        }
+
+        @Parameterized.Parameters
+        public static Iterable<Object[]> data() {
+            return Arrays.asList(new Object[][] {
+                    {Finder.OP_EQ}, {Finder.OP_GE}, {Finder.OP_GT}, {Finder.OP_LE}, {Finder.OP_LIKE}, {Finder.OP_LT}, {Finder.OP_NE}, {-1}
+            });
+        }
+
+        @Before
+        public void setUp() {
+            sqlGenerator = new SqlGenerator();
+        }
+
+        @Test
+        public void appendedWhereOperationShouldMatchWhereOperation() {
+            StringBuilder buf = new StringBuilder("WHERE ");
+            sqlGenerator.appendWhereOperation(buf, TABLE_NAME, "int_column", operation);
+            assertEquals("WHERE " + sqlGenerator.whereOperation(TABLE_NAME, "int_column", operation), buf.toString());
+        }
+
+        @Test
+        public void appendedOrderByShouldMatchOrderBy() {
+            List<String> orderByList = Arrays.asList(
+                    sqlGenerator.orderByAsc(TABLE_NAME, "int_column"),
+                    sqlGenerator.orderByDesc(TABLE_NAME, "long_column")
+            );
+            StringBuilder buf = new StringBuilder();
+            sqlGenerator.appendOrderByAsc(buf, TABLE_NAME, "int_column").append(", ");
+            sqlGenerator.appendOrderByDesc(buf, TABLE_NAME, "long_column");
+
+            assertEquals("test_table.int_column ASC, test_table.long_column DESC", sqlGenerator.combineOrderByExpressions(orderByList));
+            assertEquals(sqlGenerator.combineOrderByExpressions(orderByList), buf.toString());
+            assertEquals(buf.toString(), sqlGenerator.appendCombinedOrderByExpressions(new StringBuilder(), orderByList).toString());
+        }
+
+        @Test
+        public void whereOperationShouldAcceptNullTableName() {
+            StringBuilder buf = new StringBuilder();
+            sqlGenerator.appendWhereOperation(buf, null, "int_column", operation);
+            assertEquals(buf.toString(), sqlGenerator.whereOperation(null, "int_column", operation));
+        }
+
+        @Test
+        public void orderByShouldAcceptNullTableName() {
+            assertEquals(sqlGenerator.unambiguousColumn(null, "int_column") + " ASC", sqlGenerator.orderByAsc(null, "int_column"));
+            assertEquals(sqlGenerator.unambiguousColumn(null, "int_column") + " DESC", sqlGenerator.orderByDesc(null, "int_column"));
+        }
+
+        @Test
+        public void combiningNoOrderByExpressionsShouldBeEmpty() {
+            assertEquals("", sqlGenerator.combineOrderByExpressions(new ArrayList<String>()));
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+   forsuredbsqlitelib, sqlite library for the forsuredb project
+
+   Copyright 2015 Ryan Scott
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.fsryan.forsuredb.sqlitelib;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StatementTemplateCacheTest {
+
+    @Test
+    public void shouldReturnPutTemplate() {
+        StatementTemplateCache cache = new StatementTemplateCache(2);
+        cache.put("key", "template");
+        assertEquals("template", cache.get("key"));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedTemplateWhenFull() {
+        StatementTemplateCache cache = new StatementTemplateCache(2);
+        cache.put("key1", "template1");
+        cache.put("key2", "template2");
+        cache.get("key1");  // <-- key2 is now the least recently used
+        cache.put("key3", "template3");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("key2"));
+        assertEquals("template1", cache.get("key1"));
+        assertEquals("template3", cache.get("key3"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldNotAllowNonPositiveMaxSize() {
+        new StatementTemplateCache(0);
+    }
+}
@@ -92,9 +92,10 @@ public class UpdateForeignKeysGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_referencing_table AS SELECT _id, created, deleted, modified FROM referencing_table;",
                                 "DROP TABLE IF EXISTS referencing_table;",
                                 "CREATE TABLE referencing_table(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), referencing_int_column INTEGER, referencing_long_column INTEGER, FOREIGN KEY(referencing_int_column, referencing_long_column) REFERENCES referenced_table(referenced_int_column, referenced_long_column) ON UPDATE CASCADE ON DELETE CASCADE);",
-                                "CREATE TRIGGER referencing_table_updated_trigger AFTER UPDATE ON referencing_table BEGIN UPDATE referencing_table SET modified=STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW') WHERE _id=NEW._id; END;",
                                 "INSERT INTO referencing_table SELECT _id, created, deleted, modified, null AS referencing_int_column, null AS referencing_long_column FROM temp_referencing_table;",
-                                "DROP TABLE IF EXISTS temp_referencing_table;"
+                                "DROP TABLE IF EXISTS temp_referencing_table;",
+                                "CREATE INDEX IF NOT EXISTS referencing_table_referencing_int_column_referencing_long_column_fk_index ON referencing_table(referencing_int_column, referencing_long_column);",
+                                "CREATE TRIGGER referencing_table_updated_trigger AFTER UPDATE ON referencing_table BEGIN UPDATE referencing_table SET modified=STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW') WHERE _id=NEW._id; END;"
                         }
                 },
         });
@@ -60,11 +60,10 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "DROP TABLE IF EXISTS temp_table_name;",
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, long_column FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
-                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "));",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;",
-                                "ALTER TABLE table_name ADD COLUMN long_column INTEGER;",
+                                "CREATE TABLE table_name(_id INTEGER PRIMARY KEY, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), long_column INTEGER);",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, long_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE _id=NEW._id; END;"
                         }
                 },
                 {   // 01: make existing column a primary key (when it wasn't before)
@@ -79,9 +78,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, long_column FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), long_column INTEGER PRIMARY KEY);",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE long_column=NEW.long_column; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, long_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE long_column=NEW.long_column; END;"
                         }
                 },
                 {   // 02: make new column a primary key
@@ -96,9 +95,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), long_column INTEGER PRIMARY KEY);",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE long_column=NEW.long_column; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, null AS long_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE long_column=NEW.long_column; END;"
                         }
                 },
                 {   // 03: non-default, non-composite primary key case with on conflict on an existing column
@@ -114,9 +113,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, string_column FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT PRIMARY KEY ON CONFLICT REPLACE);",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, string_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column; END;"
                         }
                 },
                 {   // 04: non-default, non-composite primary key case with on conflict on a new column
@@ -132,9 +131,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT PRIMARY KEY ON CONFLICT REPLACE);",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, null AS string_column FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column; END;"
                         }
                 },
                 {   // 05: non-default, composite primary key case with no on-conflict new columns
@@ -148,9 +147,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT, string_column_2 TEXT, PRIMARY KEY(string_column, string_column_2));",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, null AS string_column, null AS string_column_2 FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;"
                         }
                 },
                 {   // 06: non-default, composite primary key case with one of the columns existing and one not existing
@@ -164,9 +163,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, string_column FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT, string_column_2 TEXT, PRIMARY KEY(string_column, string_column_2));",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, string_column, null AS string_column_2 FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;"
                         }
                 },
                 {   // 07: non-default, composite primary key case with both columns existing
@@ -180,9 +179,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, string_column, string_column_2 FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(" + CURRENT_UTC_TIME + "), string_column TEXT, string_column_2 TEXT, PRIMARY KEY(string_column, string_column_2));",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, string_column, string_column_2 FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;"
                         }
                 },
                 {   // 08: non-default, composite primary key case with both columns existing and on conflict
@@ -197,9 +196,9 @@ public class UpdatePrimaryKeyGeneratorTest extends BaseSQLiteGeneratorTest {
                                 "CREATE TEMP TABLE temp_table_name AS SELECT _id, created, deleted, modified, string_column, string_column_2 FROM table_name;",
                                 "DROP TABLE IF EXISTS table_name;",
                                 "CREATE TABLE table_name(_id INTEGER, created DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), deleted INTEGER DEFAULT '0', modified DATETIME DEFAULT(STRFTIME('%Y-%m-%d %H:%M:%f', 'NOW')), string_column TEXT, string_column_2 TEXT, PRIMARY KEY(string_column, string_column_2) ON CONFLICT ROLLBACK);",
-                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;",
                                 "INSERT INTO table_name SELECT _id, created, deleted, modified, string_column, string_column_2 FROM temp_table_name;",
-                                "DROP TABLE IF EXISTS temp_table_name;"
+                                "DROP TABLE IF EXISTS temp_table_name;",
+                                "CREATE TRIGGER table_name_updated_trigger AFTER UPDATE ON table_name BEGIN UPDATE table_name SET modified=" + CURRENT_UTC_TIME + " WHERE string_column=NEW.string_column AND string_column_2=NEW.string_column_2; END;"
                         }
                 }
         });